@@ -28,6 +28,7 @@ package info.nordbyen.survivalheaven;
 
 import info.nordbyen.survivalheaven.api.mysql.IMysqlManager;
 import info.nordbyen.survivalheaven.api.playerdata.IPlayerDataManager;
+import info.nordbyen.survivalheaven.api.playerdata.bank.IBankManager;
 import info.nordbyen.survivalheaven.api.playerdata.note.INoteManager;
 import info.nordbyen.survivalheaven.api.playerdata.warning.IWarningManager;
 import info.nordbyen.survivalheaven.api.rankmanager.IRankManager;
@@ -68,6 +69,13 @@ public interface ISH {
 	 */
 	IAnnoSubPluginManager getAnnoSubPluginManager();
 
+	/**
+	 * Gets the bank manager.
+	 * 
+	 * @return the bank manager
+	 */
+	IBankManager getBankManager();
+
 	/**
 	 * Gets the block manager.
 	 * 
@@ -29,6 +29,7 @@ package info.nordbyen.survivalheaven;
 import info.nordbyen.survivalheaven.api.command.AbstractCommand;
 import info.nordbyen.survivalheaven.api.mysql.IMysqlManager;
 import info.nordbyen.survivalheaven.api.playerdata.IPlayerDataManager;
+import info.nordbyen.survivalheaven.api.playerdata.bank.IBankManager;
 import info.nordbyen.survivalheaven.api.playerdata.note.INoteManager;
 import info.nordbyen.survivalheaven.api.playerdata.warning.IWarningManager;
 import info.nordbyen.survivalheaven.api.rankmanager.IRankManager;
@@ -45,8 +46,12 @@ import info.nordbyen.survivalheaven.subplugins.blockprotection.BlockProtection;
 import info.nordbyen.survivalheaven.subplugins.bossbar.BossbarAPI;
 import info.nordbyen.survivalheaven.subplugins.loginmanager.LoginMessage;
 import info.nordbyen.survivalheaven.subplugins.merchant.Merchant;
+import info.nordbyen.survivalheaven.subplugins.mysql.H2Manager;
+import info.nordbyen.survivalheaven.subplugins.mysql.MySQLConfiguration;
 import info.nordbyen.survivalheaven.subplugins.mysql.MysqlManager;
+import info.nordbyen.survivalheaven.subplugins.mysql.MysqlPlugin;
 import info.nordbyen.survivalheaven.subplugins.old_stuff.OldStuff;
+import info.nordbyen.survivalheaven.subplugins.playerdata.BankManager;
 import info.nordbyen.survivalheaven.subplugins.playerdata.NoteManager;
 import info.nordbyen.survivalheaven.subplugins.playerdata.PlayerDataManager;
 import info.nordbyen.survivalheaven.subplugins.playerdata.PlayerDataManagerPlugin;
@@ -128,6 +133,8 @@ public class SH extends JavaPlugin implements ISH {
 	private IAnnoSubPluginManager annoSubPluginManager;
 	/** The region manager. */
 	private IRegionManager regionManager;
+	/** The bank manager. */
+	private IBankManager bankManager;
 
 	/**
 	 * Gets the manager.
@@ -189,6 +196,19 @@ public class SH extends JavaPlugin implements ISH {
 		return annoSubPluginManager;
 	}
 
+	/**
+	 * Gets the bank manager.
+	 * 
+	 * @return the bank manager
+	 */
+	@Override
+	public IBankManager getBankManager() {
+		if (bankManager == null) {
+			bankManager = new BankManager();
+		}
+		return bankManager;
+	}
+
 	/**
 	 * Gets the block manager.
 	 * 
@@ -210,7 +230,11 @@ public class SH extends JavaPlugin implements ISH {
 	@Override
 	public IMysqlManager getMysqlManager() {
 		if (mysqlManager == null) {
-			mysqlManager = new MysqlManager();
+			if ("h2".equalsIgnoreCase(MySQLConfiguration.getBackend())) {
+				mysqlManager = new H2Manager();
+			} else {
+				mysqlManager = new MysqlManager();
+			}
 		}
 		return mysqlManager;
 	}
@@ -341,6 +365,16 @@ public class SH extends JavaPlugin implements ISH {
 		return version;
 	}
 
+	/**
+	 * Close mysql. Runs after the subplugins are disabled so their final
+	 * writes still have a connection.
+	 */
+	private void closeMysql() {
+		if (mysqlManager != null) {
+			mysqlManager.close();
+		}
+	}
+
 	/**
 	 * Disable sub plugins.
 	 */
@@ -389,6 +423,7 @@ public class SH extends JavaPlugin implements ISH {
 				ChatColor.YELLOW + "STOPPER PLUGIN " + this.toString());
 		disableSubPlugins();
 		unregisterSubPlugins();
+		closeMysql();
 		saveTranslations();
 	}
 
@@ -430,6 +465,7 @@ public class SH extends JavaPlugin implements ISH {
 	 * Register sub plugins.
 	 */
 	private void registerSubPlugins() {
+		getSubPluginManager().addSubPlugin(new MysqlPlugin("MySQL"));
 		getSubPluginManager()
 				.addSubPlugin(new DenyPlayerMode("DenyPlayerMode"));
 		getSubPluginManager().addSubPlugin(new LoginMessage("LoginMessages"));
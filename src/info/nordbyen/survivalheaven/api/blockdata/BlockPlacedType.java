@@ -31,22 +31,27 @@ package info.nordbyen.survivalheaven.api.blockdata;
  */
 public enum BlockPlacedType {
 	/** The survival. */
-	SURVIVAL("SURVIVAL"),
+	SURVIVAL("SURVIVAL", 0),
 	/** The creative. */
-	CREATIVE("CREATIVE"),
+	CREATIVE("CREATIVE", 1),
 	/** The worldedit. */
-	WORLDEDIT("WORLDEDIT");
+	WORLDEDIT("WORLDEDIT", 2);
 
 	/** The name. */
 	public final String name;
+	/** The id stored in the database. Never reuse or change one. */
+	public final int id;
 
 	/**
 	 * Instantiates a new block placed type.
 	 * 
 	 * @param name
 	 *            the name
+	 * @param id
+	 *            the id stored in the database
 	 */
-	private BlockPlacedType(final String name) {
+	private BlockPlacedType(final String name, final int id) {
 		this.name = name;
+		this.id = id;
 	}
 }
@@ -0,0 +1,100 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.api.blockdata;
+
+/**
+ * Read-only view of the queue block owners are written through.
+ */
+public interface IOwnershipQueueStats {
+
+	/**
+	 * Gets the number of times the server thread had to wait for room in the
+	 * queue.
+	 * 
+	 * @return the blocked adds
+	 */
+	long getBlockedAdds();
+
+	/**
+	 * Gets the time the server thread has spent waiting for room in the
+	 * queue.
+	 * 
+	 * @return the blocked time in milliseconds
+	 */
+	double getBlockedMillis();
+
+	/**
+	 * Gets the number of blocked adds that found no room in time and were
+	 * handed to the write-behind queue instead.
+	 * 
+	 * @return the blocked timeouts
+	 */
+	long getBlockedTimeouts();
+
+	/**
+	 * Gets how many owners the queue can hold.
+	 * 
+	 * @return the capacity
+	 */
+	int getCapacity();
+
+	/**
+	 * Gets the number of owners waiting to be written.
+	 * 
+	 * @return the depth
+	 */
+	int getDepth();
+
+	/**
+	 * Gets the number of owners that were handed to the write-behind queue
+	 * instead, because a batch failed or the queue was closed.
+	 * 
+	 * @return the fallback rows
+	 */
+	long getFallbackRows();
+
+	/**
+	 * Gets the largest number of owners that have been waiting at once.
+	 * 
+	 * @return the max depth
+	 */
+	int getMaxDepth();
+
+	/**
+	 * Gets the number of statements sent to the database.
+	 * 
+	 * @return the statement count
+	 */
+	long getStatementCount();
+
+	/**
+	 * Gets the number of owners written to the database.
+	 * 
+	 * @return the written rows
+	 */
+	long getWrittenRows();
+}
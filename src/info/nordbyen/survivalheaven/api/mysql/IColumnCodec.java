@@ -0,0 +1,134 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.api.mysql;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.bukkit.Location;
+
+/**
+ * Converts the values stored in the database to and from their column
+ * encodings. Every method is safe to call from any thread.
+ */
+public interface IColumnCodec {
+
+	/**
+	 * Decodes a date stored as epoch milliseconds.
+	 * 
+	 * @param millis
+	 *            the epoch milliseconds
+	 * @return the date
+	 */
+	Date decodeDate(long millis);
+
+	/**
+	 * Decodes a comma separated list of integers. Empty and malformed entries
+	 * are skipped.
+	 * 
+	 * @param value
+	 *            the value, may be null
+	 * @return the integers
+	 */
+	List<Integer> decodeIntList(String value);
+
+	/**
+	 * Decodes a location stored as {@code world;x;y;z}. {@code NO} stands for
+	 * the spawn of the main world.
+	 * 
+	 * @param value
+	 *            the value
+	 * @return the location, with a null world if that world is not loaded
+	 */
+	Location decodeLocation(String value);
+
+	/**
+	 * Decodes a comma separated list of strings. Semicolons are accepted as
+	 * separators as well, since older rows used them. Empty entries are
+	 * skipped.
+	 * 
+	 * @param value
+	 *            the value, may be null
+	 * @return the strings
+	 */
+	List<String> decodeStringList(String value);
+
+	/**
+	 * Encodes a date as epoch milliseconds.
+	 * 
+	 * @param date
+	 *            the date, may be null
+	 * @return the epoch milliseconds, 0 for null
+	 */
+	long encodeDate(Date date);
+
+	/**
+	 * Encodes integers as a comma separated list.
+	 * 
+	 * @param values
+	 *            the values
+	 * @return the encoded list
+	 */
+	String encodeIntList(Collection<Integer> values);
+
+	/**
+	 * Encodes a location as {@code world;x;y;z}.
+	 * 
+	 * @param location
+	 *            the location
+	 * @return the encoded location
+	 */
+	String encodeLocation(Location location);
+
+	/**
+	 * Encodes strings as a comma separated list.
+	 * 
+	 * @param values
+	 *            the values, which must not contain commas
+	 * @return the encoded list
+	 */
+	String encodeStringList(Collection<String> values);
+
+	/**
+	 * Formats a date in the old {@code yyyy_MM_dd_HH_mm_ss_SSS} text format.
+	 * 
+	 * @param date
+	 *            the date
+	 * @return the formatted date
+	 */
+	String formatLegacyDate(Date date);
+
+	/**
+	 * Parses a date in the old {@code yyyy_MM_dd_HH_mm_ss_SSS} text format.
+	 * 
+	 * @param value
+	 *            the value
+	 * @return the date, or null if it could not be read
+	 */
+	Date parseLegacyDate(String value);
+}
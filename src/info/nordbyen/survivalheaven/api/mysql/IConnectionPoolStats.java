@@ -0,0 +1,90 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.api.mysql;
+
+/**
+ * Read-only view of the connection pool behind {@link IMysqlManager}.
+ */
+public interface IConnectionPoolStats {
+
+	/**
+	 * Gets the average time a borrow took, including the time spent waiting
+	 * for a free connection.
+	 * 
+	 * @return the average borrow time in milliseconds
+	 */
+	double getAverageBorrowMillis();
+
+	/**
+	 * Gets the number of successful borrows since the pool was opened.
+	 * 
+	 * @return the borrow count
+	 */
+	long getBorrowCount();
+
+	/**
+	 * Gets the number of borrows that gave up after the borrow timeout.
+	 * 
+	 * @return the borrow timeouts
+	 */
+	long getBorrowTimeouts();
+
+	/**
+	 * Gets the number of idle connections.
+	 * 
+	 * @return the idle connections
+	 */
+	int getIdleConnections();
+
+	/**
+	 * Gets the longest time a single borrow took.
+	 * 
+	 * @return the max borrow time in milliseconds
+	 */
+	double getMaxBorrowMillis();
+
+	/**
+	 * Gets the max size.
+	 * 
+	 * @return the max size
+	 */
+	int getMaxSize();
+
+	/**
+	 * Gets the number of open connections, borrowed or idle.
+	 * 
+	 * @return the open connections
+	 */
+	int getOpenConnections();
+
+	/**
+	 * Gets the number of threads currently waiting for a connection.
+	 * 
+	 * @return the waiting threads
+	 */
+	int getWaitingThreads();
+}
@@ -30,6 +30,9 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.bukkit.Location;
 
@@ -57,7 +60,8 @@ public interface IMysqlManager {
 	boolean clearTable(final String table);
 
 	/**
-	 * Close.
+	 * Waits for queued database work to finish, flushes the write-behind
+	 * queue, then closes the pool.
 	 */
 	void close();
 
@@ -71,14 +75,63 @@ public interface IMysqlManager {
 	boolean deleteTable(final String table);
 
 	/**
-	 * Gets the connection.
+	 * Queues a write for the write-behind queue. A pending write with the same
+	 * key is replaced, so the key must identify both the statement and the row
+	 * it changes.
+	 * 
+	 * @param key
+	 *            the key, or null if the write should never be coalesced
+	 * @param sql
+	 *            the sql
+	 * @param params
+	 *            the params
+	 */
+	void enqueue(final String key, final String sql, final Object... params);
+
+	/**
+	 * Queues writes that belong together, like {@link #enqueue} does each of
+	 * them. They are queued in one step, so they are sent in the same flush
+	 * and therefore the same transaction, unless that flush fails and has to
+	 * send its writes one at a time.
+	 * 
+	 * @param keys
+	 *            the key of each write, or null if it should never be
+	 *            coalesced
+	 * @param sql
+	 *            the sql of each write
+	 * @param params
+	 *            the params of each write
+	 */
+	void enqueueAll(final String[] keys, final String[] sql,
+			final Object[][] params);
+
+	/**
+	 * Sends every queued write to the database on the calling thread.
+	 * 
+	 * @return the number of writes sent
+	 */
+	int flushWrites();
+
+	/**
+	 * Gets the column codecs.
+	 * 
+	 * @return the codec
+	 */
+	IColumnCodec getCodec();
+
+	/**
+	 * Borrows a connection from the pool. It must be handed back with
+	 * {@link #releaseConnection(Connection)} when the caller is done with it.
 	 * 
 	 * @return the connection
+	 * @throws SQLException
+	 *             if no connection could be borrowed in time
 	 */
-	Connection getConnection();
+	Connection getConnection() throws SQLException;
 
 	/**
-	 * Gets the date.
+	 * Formats a date in the old text format. New columns store dates as epoch
+	 * milliseconds, see {@link IColumnCodec#encodeDate(Date)}.
 	 * 
 	 * @param date
 	 *            the date
@@ -87,7 +140,7 @@ public interface IMysqlManager {
 	String getDate(Date date);
 
 	/**
-	 * Gets the date.
+	 * Parses a date in the old text format. {@code NO} stands for now.
 	 * 
 	 * @param date
 	 *            the date
@@ -96,7 +149,7 @@ public interface IMysqlManager {
 	Date getDate(String date);
 
 	/**
-	 * Gets the location.
+	 * Encodes a location, see {@link IColumnCodec#encodeLocation(Location)}.
 	 * 
 	 * @param loc
 	 *            the loc
@@ -105,7 +158,7 @@ public interface IMysqlManager {
 	String getLocation(Location loc);
 
 	/**
-	 * Gets the location.
+	 * Decodes a location, see {@link IColumnCodec#decodeLocation(String)}.
 	 * 
 	 * @param loc
 	 *            the loc
@@ -113,6 +166,30 @@ public interface IMysqlManager {
 	 */
 	Location getLocation(String loc);
 
+	/**
+	 * Gets the connection pool statistics.
+	 * 
+	 * @return the pool stats
+	 */
+	IConnectionPoolStats getPoolStats();
+
+	/**
+	 * Gets the timing of the statement shapes that took the most time in
+	 * total, slowest first.
+	 * 
+	 * @param limit
+	 *            the maximum number of shapes
+	 * @return the query stats
+	 */
+	List<IQueryStats> getQueryStats(final int limit);
+
+	/**
+	 * Gets the write-behind queue statistics.
+	 * 
+	 * @return the write queue stats
+	 */
+	IWriteQueueStats getWriteQueueStats();
+
 	/**
 	 * Insert.
 	 * 
@@ -128,11 +205,25 @@ public interface IMysqlManager {
 			final Object[] value);
 
 	/**
-	 * Open.
+	 * Runs an INSERT with bind parameters and returns the generated key.
 	 * 
-	 * @return the connection
+	 * @param sql
+	 *            the sql, with a ? for each parameter
+	 * @param params
+	 *            the params
+	 * @return the generated key, or -1 if none was generated
+	 * @throws SQLException
+	 *             the SQL exception
 	 */
-	Connection open();
+	long insertAndGetKey(final String sql, final Object... params)
+			throws SQLException;
+
+	/**
+	 * Opens the connection pool.
+	 * 
+	 * @return true, if the database could be reached
+	 */
+	boolean open();
 
 	/**
 	 * Query.
@@ -157,4 +248,115 @@ public interface IMysqlManager {
 	 *             the SQL exception
 	 */
 	ResultSet query(final String query, final int ret) throws SQLException;
+
+	/**
+	 * Hands a connection from {@link #getConnection()} back to the pool.
+	 * 
+	 * @param connection
+	 *            the connection
+	 */
+	void releaseConnection(Connection connection);
+
+	/**
+	 * Forgets the timing of every statement.
+	 */
+	void resetQueryStats();
+
+	/**
+	 * Runs a SELECT with bind parameters. The statement is parsed once per
+	 * connection and reused for every later call with the same SQL text, so
+	 * the SQL must not be built from the values themselves.
+	 * 
+	 * @param sql
+	 *            the sql, with a ? for each parameter
+	 * @param params
+	 *            the params
+	 * @return the result set
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	ResultSet select(final String sql, final Object... params)
+			throws SQLException;
+
+	/**
+	 * Runs {@link #select(String, Object...)} on the database executor.
+	 * 
+	 * @param sql
+	 *            the sql, with a ? for each parameter
+	 * @param params
+	 *            the params
+	 * @return the future result set
+	 */
+	Future<ResultSet> selectAsync(final String sql, final Object... params);
+
+	/**
+	 * Runs a SELECT and hands each row to the handler while it is read from
+	 * the server, so only one fetch of rows is held in memory no matter how
+	 * large the result is. A connection is held until the last row has been
+	 * handled.
+	 * 
+	 * @param sql
+	 *            the sql, with a ? for each parameter
+	 * @param handler
+	 *            the handler
+	 * @param params
+	 *            the params
+	 * @return the number of rows handled
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	int stream(final String sql, final RowHandler handler,
+			final Object... params) throws SQLException;
+
+	/**
+	 * Runs database work on the database executor instead of the calling
+	 * thread.
+	 * 
+	 * @param <T>
+	 *            the result type
+	 * @param task
+	 *            the task
+	 * @return the future result
+	 */
+	<T> Future<T> submit(final Callable<T> task);
+
+	/**
+	 * Runs database work on the database executor and hands the outcome to the
+	 * callback on the server thread.
+	 * 
+	 * @param <T>
+	 *            the result type
+	 * @param task
+	 *            the task
+	 * @param callback
+	 *            the callback
+	 * @return the future result
+	 */
+	<T> Future<T> submit(final Callable<T> task,
+			final QueryCallback<T> callback);
+
+	/**
+	 * Runs an INSERT, UPDATE, REPLACE or DELETE with bind parameters, reusing
+	 * the prepared statement like {@link #select(String, Object...)}.
+	 * 
+	 * @param sql
+	 *            the sql, with a ? for each parameter
+	 * @param params
+	 *            the params
+	 * @return the number of affected rows
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	int update(final String sql, final Object... params) throws SQLException;
+
+	/**
+	 * Runs {@link #update(String, Object...)} on the database executor.
+	 * 
+	 * @param sql
+	 *            the sql, with a ? for each parameter
+	 * @param params
+	 *            the params
+	 * @return the future number of affected rows
+	 */
+	Future<Integer> updateAsync(final String sql, final Object... params);
 }
@@ -0,0 +1,79 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.api.mysql;
+
+/**
+ * Timing of one statement shape: the SQL with every literal replaced by a
+ * {@code ?}, so calls that only differ in their values are counted together.
+ * Times are measured by the caller, including the wait for a connection.
+ */
+public interface IQueryStats {
+
+	/**
+	 * Gets the number of times the statement ran.
+	 * 
+	 * @return the count
+	 */
+	long getCount();
+
+	/**
+	 * Gets the number of times the statement ran on the server thread.
+	 * 
+	 * @return the main thread count
+	 */
+	long getMainThreadCount();
+
+	/**
+	 * Gets the slowest run.
+	 * 
+	 * @return the max time in milliseconds
+	 */
+	double getMaxMillis();
+
+	/**
+	 * Gets a percentile of the most recent runs.
+	 * 
+	 * @param percentile
+	 *            the percentile, between 0 and 100
+	 * @return the time in milliseconds
+	 */
+	double getPercentileMillis(double percentile);
+
+	/**
+	 * Gets the normalized SQL.
+	 * 
+	 * @return the sql
+	 */
+	String getSql();
+
+	/**
+	 * Gets the time spent in all runs together.
+	 * 
+	 * @return the total time in milliseconds
+	 */
+	double getTotalMillis();
+}
@@ -0,0 +1,100 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.api.mysql;
+
+/**
+ * Read-only view of the write-behind queue behind {@link IMysqlManager}.
+ */
+public interface IWriteQueueStats {
+
+	/**
+	 * Gets the number of JDBC batches sent since the queue was created.
+	 * 
+	 * @return the batch count
+	 */
+	long getBatchCount();
+
+	/**
+	 * Gets the number of writes that replaced a pending write with the same
+	 * key instead of adding a new one.
+	 * 
+	 * @return the coalesced writes
+	 */
+	long getCoalescedWrites();
+
+	/**
+	 * Gets the number of writes that were dropped after failing too often or
+	 * because the journal was full.
+	 * 
+	 * @return the failed writes
+	 */
+	long getFailedWrites();
+
+	/**
+	 * Gets the number of writes sent to the database.
+	 * 
+	 * @return the flushed writes
+	 */
+	long getFlushedWrites();
+
+	/**
+	 * Gets the number of writes waiting in the journal for the database to
+	 * come back.
+	 * 
+	 * @return the journaled writes
+	 */
+	int getJournaledWrites();
+
+	/**
+	 * Gets the size of the journal.
+	 * 
+	 * @return the journal size in bytes
+	 */
+	long getJournalSize();
+
+	/**
+	 * Gets the time the last flush took.
+	 * 
+	 * @return the last flush time in milliseconds
+	 */
+	double getLastFlushMillis();
+
+	/**
+	 * Gets the number of writes waiting to be flushed.
+	 * 
+	 * @return the pending writes
+	 */
+	int getPendingWrites();
+
+	/**
+	 * Checks if the database is reachable, that is, calls are not failing
+	 * at once because of repeated connection errors.
+	 * 
+	 * @return true, if the database is available
+	 */
+	boolean isDatabaseAvailable();
+}
@@ -26,6 +26,8 @@
 
 package info.nordbyen.survivalheaven.api.playerdata;
 
+import java.util.List;
+
 import org.bukkit.entity.Player;
 
 /**
@@ -41,6 +43,64 @@ public interface IPlayerDataManager {
 	 */
 	void createPlayerData(Player p);
 
+	/**
+	 * Gets the other players that have used any of the addresses a player
+	 * has used.
+	 * 
+	 * @param pd
+	 *            the pd
+	 * @return the players, empty if there are none
+	 */
+	List<IPlayerData> getAlts(IPlayerData pd);
+
+	/**
+	 * Gets a page of a leaderboard, covering every known player. Takes
+	 * O(log n + limit) and is safe to call from any thread.
+	 * 
+	 * @param type
+	 *            the type
+	 * @param offset
+	 *            the number of places to skip
+	 * @param limit
+	 *            the max number of places
+	 * @return the entries, best first
+	 */
+	List<LeaderboardEntry> getLeaderboard(LeaderboardType type, int offset,
+			int limit);
+
+	/**
+	 * Gets the place of a player on a leaderboard. Takes O(log n) and is safe
+	 * to call from any thread.
+	 * 
+	 * @param type
+	 *            the type
+	 * @param uuid
+	 *            the uuid
+	 * @return the rank, starting at 1, or 0 if the player is unknown
+	 */
+	int getLeaderboardRank(LeaderboardType type, String uuid);
+
+	/**
+	 * Gets every name a player has used, oldest first.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @return the names, empty if the player is unknown
+	 */
+	List<String> getNameHistory(String uuid);
+
+	/**
+	 * Gets the current names of known players, online or not, that start
+	 * with a prefix, ignoring case.
+	 * 
+	 * @param prefix
+	 *            the prefix
+	 * @param limit
+	 *            the max number of names
+	 * @return the names in alphabetical order
+	 */
+	List<String> getNamesStartingWith(String prefix, int limit);
+
 	/**
 	 * Gets the player data.
 	 * 
@@ -50,6 +110,15 @@ public interface IPlayerDataManager {
 	 */
 	IPlayerData getPlayerData(String uuid);
 
+	/**
+	 * Gets the players that have used an address.
+	 * 
+	 * @param ip
+	 *            the IPv4 or IPv6 address
+	 * @return the players, empty if there are none or the address is invalid
+	 */
+	List<IPlayerData> getPlayerDataFromIp(String ip);
+
 	/**
 	 * Gets the player data from name.
 	 * 
@@ -59,8 +128,54 @@ public interface IPlayerDataManager {
 	 */
 	IPlayerData getPlayerDataFromName(String name);
 
+	/**
+	 * Gets the players that used to have a name but have since changed it.
+	 * 
+	 * @param name
+	 *            the name
+	 * @return the players, empty if there are none
+	 */
+	List<IPlayerData> getPlayerDataFromPreviousName(String name);
+
+	/**
+	 * Gets an immutable snapshot of a player, loading the player if needed.
+	 * Unlike {@link #getPlayerData(String)} this is safe to call from any
+	 * thread.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @return the snapshot, or null if the player is unknown
+	 */
+	IPlayerSnapshot getSnapshot(String uuid);
+
+	/**
+	 * Loads a player, or creates it if this is the first login, so the join
+	 * finds it already cached. Meant for the async pre-login, and safe to
+	 * call from any thread.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @param name
+	 *            the name
+	 * @param ip
+	 *            the ip
+	 * @return the player data, or null if the database could not be reached
+	 */
+	IPlayerData preparePlayerData(String uuid, String name, String ip);
+
 	/**
 	 * Save data to database.
 	 */
 	void saveDataToDatabase();
+
+	/**
+	 * Runs a change to a player on the server thread. Other threads must use
+	 * this instead of calling the setters themselves.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @param update
+	 *            the update
+	 */
+	void update(String uuid, PlayerDataUpdate update);
 }
@@ -0,0 +1,140 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.api.playerdata;
+
+import info.nordbyen.survivalheaven.api.util.Translator;
+
+import java.util.Date;
+import java.util.List;
+
+import org.bukkit.Location;
+
+/**
+ * An immutable copy of an {@link IPlayerData}, taken after its last change.
+ * Snapshots may be read from any thread without locking; a change to the
+ * player publishes a new snapshot instead of changing this one.
+ */
+public interface IPlayerSnapshot {
+
+	/**
+	 * Gets the badges.
+	 * 
+	 * @return the badges, unmodifiable
+	 */
+	List<Integer> getBadges();
+
+	/**
+	 * Gets the firstlogin.
+	 * 
+	 * @return the firstlogin
+	 */
+	Date getFirstlogin();
+
+	/**
+	 * Gets the gamemode.
+	 * 
+	 * @return the gamemode
+	 */
+	int getGamemode();
+
+	/**
+	 * Gets the id.
+	 * 
+	 * @return the id
+	 */
+	int getId();
+
+	/**
+	 * Gets the ips.
+	 * 
+	 * @return the ips, unmodifiable
+	 */
+	List<String> getIps();
+
+	/**
+	 * Gets the language.
+	 * 
+	 * @return the language
+	 */
+	Translator getLanguage();
+
+	/**
+	 * Gets the lastlocation.
+	 * 
+	 * @return a copy of the lastlocation
+	 */
+	Location getLastlocation();
+
+	/**
+	 * Gets the lastlogin.
+	 * 
+	 * @return the lastlogin
+	 */
+	Date getLastlogin();
+
+	/**
+	 * Gets the level.
+	 * 
+	 * @return the level
+	 */
+	int getLevel();
+
+	/**
+	 * Gets the money.
+	 * 
+	 * @return the money
+	 */
+	long getMoney();
+
+	/**
+	 * Gets the name.
+	 * 
+	 * @return the name
+	 */
+	String getName();
+
+	/**
+	 * Gets the rank.
+	 * 
+	 * @return the rank
+	 */
+	int getRank();
+
+	/**
+	 * Gets the timeplayed.
+	 * 
+	 * @return the timeplayed
+	 */
+	long getTimeplayed();
+
+	/**
+	 * Gets the uuid.
+	 * 
+	 * @return the uuid
+	 */
+	String getUUID();
+}
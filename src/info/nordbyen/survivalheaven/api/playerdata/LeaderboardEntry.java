@@ -0,0 +1,98 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.api.playerdata;
+
+/**
+ * One place on a leaderboard.
+ */
+public final class LeaderboardEntry {
+
+	/** The rank, starting at 1. */
+	private final int rank;
+	/** The uuid. */
+	private final String uuid;
+	/** The name. */
+	private final String name;
+	/** The value. */
+	private final long value;
+
+	/**
+	 * Instantiates a new leaderboard entry.
+	 * 
+	 * @param rank
+	 *            the rank
+	 * @param uuid
+	 *            the uuid
+	 * @param name
+	 *            the name
+	 * @param value
+	 *            the value
+	 */
+	public LeaderboardEntry(final int rank, final String uuid,
+			final String name, final long value) {
+		this.rank = rank;
+		this.uuid = uuid;
+		this.name = name;
+		this.value = value;
+	}
+
+	/**
+	 * Gets the name.
+	 * 
+	 * @return the name, or null if it is not known
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the rank.
+	 * 
+	 * @return the rank, starting at 1
+	 */
+	public int getRank() {
+		return rank;
+	}
+
+	/**
+	 * Gets the uuid.
+	 * 
+	 * @return the uuid
+	 */
+	public String getUUID() {
+		return uuid;
+	}
+
+	/**
+	 * Gets the value.
+	 * 
+	 * @return the value
+	 */
+	public long getValue() {
+		return value;
+	}
+}
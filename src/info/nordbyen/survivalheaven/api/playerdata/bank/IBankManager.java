@@ -0,0 +1,97 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.api.playerdata.bank;
+
+/**
+ * The Interface IBankManager.
+ * 
+ * Moves money in the players' bank accounts. Every method is atomic and safe
+ * to call from any thread, and every change is recorded in the transaction
+ * journal, which is saved in the same transaction as the new balances.
+ * Amounts must be positive.
+ */
+public interface IBankManager {
+
+	/**
+	 * Puts money into an account.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @param amount
+	 *            the amount
+	 * @param reason
+	 *            the reason, kept in the journal
+	 * @return true, if the money was added; false if the player is unknown or
+	 *         the balance would overflow
+	 */
+	boolean deposit(String uuid, long amount, String reason);
+
+	/**
+	 * Gets the balance of an account.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @return the balance, or 0 if the player is unknown
+	 */
+	long getBalance(String uuid);
+
+	/**
+	 * Moves money from one account to another. Both accounts are locked while
+	 * the money moves, so no other change of either balance, and no
+	 * {@link #getBalance(String)}, can happen in between.
+	 * 
+	 * @param from
+	 *            the uuid to take from
+	 * @param to
+	 *            the uuid to give to
+	 * @param amount
+	 *            the amount
+	 * @param reason
+	 *            the reason, kept in the journal
+	 * @return true, if the money was moved; false if a player is unknown, the
+	 *         accounts are the same, there is not enough money or the balance
+	 *         of the second account would overflow
+	 * @throws IllegalStateException
+	 *             if the money could not be put back after a failed transfer,
+	 *             which would mean a balance changed without its lock
+	 */
+	boolean transfer(String from, String to, long amount, String reason);
+
+	/**
+	 * Takes money out of an account, unless that would leave it negative.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @param amount
+	 *            the amount
+	 * @param reason
+	 *            the reason, kept in the journal
+	 * @return true, if the money was taken; false if the player is unknown or
+	 *         there is not enough money
+	 */
+	boolean withdraw(String uuid, long amount, String reason);
+}
@@ -60,7 +60,7 @@ public interface IWarningManager {
 			 *            the level
 			 * @return the level from int
 			 */
-			static Level getLevelFromInt(final int level) {
+			public static Level getLevelFromInt(final int level) {
 				if (level == 1)
 					return LOW;
 				if (level == 2)
@@ -0,0 +1,234 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.api.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * An IPv4 or IPv6 address as two longs, usable as a map key and as two
+ * {@code BIGINT} columns. IPv4 addresses are stored IPv4-mapped
+ * ({@code ::ffff:a.b.c.d}), so both kinds share one key space.
+ */
+public final class IpAddress {
+
+	/** The high word of an IPv4-mapped address. */
+	private static final long MAPPED_HIGH = 0L;
+	/** The low word prefix of an IPv4-mapped address. */
+	private static final long MAPPED_LOW = 0xffffL << 32;
+
+	/**
+	 * Parses an address literal. IPv4 is parsed by hand; IPv6 literals go
+	 * through {@link InetAddress}, which never does a lookup for them. A
+	 * leading slash, surrounding brackets, a trailing port and an IPv6 zone
+	 * are ignored.
+	 * 
+	 * @param text
+	 *            the text
+	 * @return the address, or null if the text is not an address literal
+	 */
+	public static IpAddress parse(final String text) {
+		if (text == null)
+			return null;
+		String s = text.trim();
+		if (s.startsWith("/")) {
+			s = s.substring(1);
+		}
+		if (s.startsWith("[")) {
+			final int end = s.indexOf(']');
+			if (end < 0)
+				return null;
+			s = s.substring(1, end);
+		} else if ((s.indexOf(':') >= 0) && (s.indexOf(':') == s.lastIndexOf(':'))) {
+			s = s.substring(0, s.indexOf(':'));
+		}
+		final int zone = s.indexOf('%');
+		if (zone >= 0) {
+			s = s.substring(0, zone);
+		}
+		if (s.indexOf(':') < 0) {
+			final long v4 = parseIpv4(s);
+			return (v4 < 0) ? null : new IpAddress(MAPPED_HIGH, MAPPED_LOW | v4);
+		}
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (!((c == ':') || (c == '.') || Character.digit(c, 16) >= 0))
+				return null;
+		}
+		final byte[] bytes;
+		try {
+			bytes = InetAddress.getByName(s).getAddress();
+		} catch (final UnknownHostException e) {
+			return null;
+		}
+		if (bytes.length == 4)
+			return new IpAddress(MAPPED_HIGH, MAPPED_LOW
+					| (toLong(bytes, 0, 4)));
+		return new IpAddress(toLong(bytes, 0, 8), toLong(bytes, 8, 8));
+	}
+
+	/**
+	 * Parses a dotted IPv4 address.
+	 * 
+	 * @param s
+	 *            the s
+	 * @return the address as an unsigned 32-bit value, or -1 if invalid
+	 */
+	private static long parseIpv4(final String s) {
+		long value = 0;
+		int octets = 0;
+		int octet = -1;
+		for (int i = 0; i <= s.length(); i++) {
+			if ((i == s.length()) || (s.charAt(i) == '.')) {
+				if ((octet < 0) || (++octets > 4))
+					return -1;
+				value = (value << 8) | octet;
+				octet = -1;
+				continue;
+			}
+			final int digit = s.charAt(i) - '0';
+			if ((digit < 0) || (digit > 9))
+				return -1;
+			octet = (octet < 0) ? digit : ((octet * 10) + digit);
+			if (octet > 255)
+				return -1;
+		}
+		return (octets == 4) ? value : -1;
+	}
+
+	/**
+	 * Reads big-endian bytes into a long.
+	 * 
+	 * @param bytes
+	 *            the bytes
+	 * @param offset
+	 *            the offset
+	 * @param length
+	 *            the length
+	 * @return the long
+	 */
+	private static long toLong(final byte[] bytes, final int offset,
+			final int length) {
+		long value = 0;
+		for (int i = offset; i < (offset + length); i++) {
+			value = (value << 8) | (bytes[i] & 0xff);
+		}
+		return value;
+	}
+
+	/** The high 64 bits. */
+	private final long high;
+	/** The low 64 bits. */
+	private final long low;
+
+	/**
+	 * Instantiates a new ip address.
+	 * 
+	 * @param high
+	 *            the high 64 bits
+	 * @param low
+	 *            the low 64 bits
+	 */
+	public IpAddress(final long high, final long low) {
+		this.high = high;
+		this.low = low;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof IpAddress))
+			return false;
+		final IpAddress other = (IpAddress) obj;
+		return (high == other.high) && (low == other.low);
+	}
+
+	/**
+	 * Gets the high 64 bits.
+	 * 
+	 * @return the high
+	 */
+	public long getHigh() {
+		return high;
+	}
+
+	/**
+	 * Gets the low 64 bits.
+	 * 
+	 * @return the low
+	 */
+	public long getLow() {
+		return low;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		final long h = high ^ (low * 31);
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Checks if this is an IPv4 address.
+	 * 
+	 * @return true, if it is IPv4-mapped
+	 */
+	public boolean isIpv4() {
+		return (high == MAPPED_HIGH) && ((low >>> 32) == 0xffffL);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		if (isIpv4())
+			return ((low >>> 24) & 0xff) + "." + ((low >>> 16) & 0xff) + "."
+					+ ((low >>> 8) & 0xff) + "." + (low & 0xff);
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 7; i >= 0; i--) {
+			final long word = (((i >= 4) ? high : low) >>> ((i % 4) * 16)) & 0xffff;
+			sb.append(Long.toHexString(word));
+			if (i > 0) {
+				sb.append(':');
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -27,9 +27,13 @@
 package info.nordbyen.survivalheaven.subplugins.blockdata;
 
 import info.nordbyen.survivalheaven.api.blockdata.BlockPlacedType;
+import info.nordbyen.survivalheaven.api.blockdata.IOwnershipQueueStats;
 import info.nordbyen.survivalheaven.api.playerdata.IPlayerData;
 import info.nordbyen.survivalheaven.subplugins.playerdata.PlayerData;
 
+import java.util.Collection;
+import java.util.Map;
+
 import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
 
@@ -47,6 +51,23 @@ public interface IBlockManager {
 	 */
 	public IPlayerData getOwner(Block b);
 
+	/**
+	 * Gets the owners of many blocks at once, which is much cheaper than
+	 * asking for each block.
+	 * 
+	 * @param blocks
+	 *            the blocks
+	 * @return the blocks that have an owner, with their owners
+	 */
+	public Map<Block, IPlayerData> getOwners(Collection<Block> blocks);
+
+	/**
+	 * Gets the stats of the queue block owners are written through.
+	 * 
+	 * @return the queue stats, or null if block protection is not enabled
+	 */
+	public IOwnershipQueueStats getQueueStats();
+
 	/**
 	 * Sets the block owner.
 	 * 
@@ -27,10 +27,15 @@
 package info.nordbyen.survivalheaven.subplugins.blockprotection;
 
 import info.nordbyen.survivalheaven.api.blockdata.BlockPlacedType;
+import info.nordbyen.survivalheaven.api.blockdata.IOwnershipQueueStats;
 import info.nordbyen.survivalheaven.api.playerdata.IPlayerData;
 import info.nordbyen.survivalheaven.subplugins.blockdata.IBlockManager;
 import info.nordbyen.survivalheaven.subplugins.playerdata.PlayerData;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
 import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
 
@@ -60,6 +65,36 @@ public class BlockManager implements IBlockManager {
 		return bp.getWhoPlaced(b);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.subplugins.blockdata.IBlockManager#getOwners
+	 * (java.util.Collection)
+	 */
+	@Override
+	public Map<Block, IPlayerData> getOwners(final Collection<Block> blocks) {
+		final BlockProtection bp = BlockProtection.getInstance();
+		if (bp == null)
+			return Collections.emptyMap();
+		return bp.getOwners(blocks);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.subplugins.blockdata.IBlockManager#getQueueStats
+	 * ()
+	 */
+	@Override
+	public IOwnershipQueueStats getQueueStats() {
+		final BlockProtection bp = BlockProtection.getInstance();
+		if (bp == null)
+			return null;
+		return bp.getQueueStats();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
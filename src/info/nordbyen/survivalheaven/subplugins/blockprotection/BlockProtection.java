@@ -28,17 +28,22 @@ package info.nordbyen.survivalheaven.subplugins.blockprotection;
 
 import info.nordbyen.survivalheaven.SH;
 import info.nordbyen.survivalheaven.api.blockdata.BlockPlacedType;
+import info.nordbyen.survivalheaven.api.blockdata.IOwnershipQueueStats;
 import info.nordbyen.survivalheaven.api.playerdata.IPlayerData;
 import info.nordbyen.survivalheaven.api.subplugin.SubPlugin;
 import info.nordbyen.survivalheaven.subplugins.blockprotection.listeners.BlockProtectionListener;
 import info.nordbyen.survivalheaven.subplugins.blockprotection.worldedit.MyEventHandler;
-import info.nordbyen.survivalheaven.subplugins.playerdata.PlayerData;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 
@@ -46,6 +51,13 @@ import com.sk89q.worldedit.WorldEdit;
 
 /**
  * The Class BlockProtection.
+ * 
+ * Owners are looked up in an {@link OwnershipCache} first. A miss reads the
+ * whole chunk into the cache in the background and answers this one lookup
+ * with a query. Chunks are also read as the server loads them, so a miss is
+ * rare, and dropped from the cache when the server unloads them. New owners
+ * are written in batches by an {@link OwnershipWriter}, to the tables
+ * described in {@link OwnershipSchema}.
  */
 public final class BlockProtection extends SubPlugin {
 
@@ -64,6 +76,12 @@ public final class BlockProtection extends SubPlugin {
 	/** The registered worlds. */
 	private final ArrayList<String> registeredWorlds = new ArrayList<String>();
 
+	/** The queue the owners are written through. */
+	private final OwnershipWriter writer = new OwnershipWriter();
+
+	/** The owners of the blocks looked up or placed so far. */
+	private final OwnershipCache cache = new OwnershipCache(writer);
+
 	/**
 	 * Instantiates a new block protection.
 	 * 
@@ -75,6 +93,34 @@ public final class BlockProtection extends SubPlugin {
 		instance = this;
 	}
 
+	/**
+	 * Reads the owners of a chunk the server has loaded.
+	 * 
+	 * @param chunk
+	 *            the chunk
+	 * @param generated
+	 *            whether the chunk was just generated
+	 */
+	void chunkLoaded(final Chunk chunk, final boolean generated) {
+		final String world = chunk.getWorld().getName();
+		if (generated) {
+			cache.markEmpty(world, chunk.getX(), chunk.getZ());
+			return;
+		}
+		createWorldTable(world);
+		cache.load(world, chunk.getX(), chunk.getZ());
+	}
+
+	/**
+	 * Drops the owners of a chunk the server has unloaded.
+	 * 
+	 * @param chunk
+	 *            the chunk
+	 */
+	void chunkUnloaded(final Chunk chunk) {
+		cache.evict(chunk.getWorld().getName(), chunk.getX(), chunk.getZ());
+	}
+
 	/**
 	 * Creates the tables.
 	 */
@@ -94,60 +140,7 @@ public final class BlockProtection extends SubPlugin {
 		if (registeredWorlds.contains(world))
 			return;
 		try {
-			SH.getManager()
-					.getMysqlManager()
-					.query("CREATE TABLE IF NOT EXISTS `blocks_"
-							+ BlockPlacedType.SURVIVAL.name
-							+ "_"
-							+ world
-							+ "` ("
-							+ "`id` INT(22) NOT NULL AUTO_INCREMENT, "
-							+ "`name` VARCHAR(255) NOT NULL, "
-							+ "`uuid` VARCHAR(255) NOT NULL, "
-							+ "`x` INT(11) NOT NULL, "
-							+ "`y` INT(11) NOT NULL, "
-							+ "`z` INT(11) NOT NULL, "
-							+ "`time` BIGINT NOT NULL, "
-							+ "PRIMARY KEY (`id`), "
-							+ "UNIQUE KEY idx_table_x_y_z ( x, y, z )"
-							+ ") "
-							+ "ENGINE=InnoDB AUTO_INCREMENT=0 DEFAULT CHARSET=utf8;");
-			SH.getManager()
-					.getMysqlManager()
-					.query("CREATE TABLE IF NOT EXISTS `blocks_"
-							+ BlockPlacedType.CREATIVE.name
-							+ "_"
-							+ world
-							+ "` ("
-							+ "`id` INT(22) NOT NULL AUTO_INCREMENT, "
-							+ "`name` VARCHAR(255) NOT NULL, "
-							+ "`uuid` VARCHAR(255) NOT NULL, "
-							+ "`x` INT(11) NOT NULL, "
-							+ "`y` INT(11) NOT NULL, "
-							+ "`z` INT(11) NOT NULL, "
-							+ "`time` BIGINT NOT NULL, "
-							+ "PRIMARY KEY (`id`), "
-							+ "UNIQUE KEY idx_table_x_y_z ( x, y, z )"
-							+ ") "
-							+ "ENGINE=InnoDB AUTO_INCREMENT=0 DEFAULT CHARSET=utf8;");
-			SH.getManager()
-					.getMysqlManager()
-					.query("CREATE TABLE IF NOT EXISTS `blocks_"
-							+ BlockPlacedType.WORLDEDIT.name
-							+ "_"
-							+ world
-							+ "` ("
-							+ "`id` INT(22) NOT NULL AUTO_INCREMENT, "
-							+ "`name` VARCHAR(255) NOT NULL, "
-							+ "`uuid` VARCHAR(255) NOT NULL, "
-							+ "`x` INT(11) NOT NULL, "
-							+ "`y` INT(11) NOT NULL, "
-							+ "`z` INT(11) NOT NULL, "
-							+ "`time` BIGINT NOT NULL, "
-							+ "PRIMARY KEY (`id`), "
-							+ "UNIQUE KEY idx_table_x_y_z ( x, y, z )"
-							+ ") "
-							+ "ENGINE=InnoDB AUTO_INCREMENT=0 DEFAULT CHARSET=utf8;");
+			OwnershipSchema.create(world);
 			registeredWorlds.add(world);
 		} catch (final SQLException e) {
 			e.printStackTrace();
@@ -161,6 +154,7 @@ public final class BlockProtection extends SubPlugin {
 	 */
 	@Override
 	protected void disable() {
+		writer.close();
 	}
 
 	/*
@@ -170,12 +164,75 @@ public final class BlockProtection extends SubPlugin {
 	 */
 	@Override
 	protected void enable() {
+		try {
+			OwnershipSchema.migrateLegacy();
+		} catch (final SQLException e) {
+			e.printStackTrace();
+		}
 		createTables();
+		writer.start();
+		for (final World world : Bukkit.getWorlds()) {
+			for (final Chunk chunk : world.getLoadedChunks()) {
+				chunkLoaded(chunk, false);
+			}
+		}
 		Bukkit.getPluginManager().registerEvents(new BlockProtectionListener(),
 				SH.getPlugin());
+		Bukkit.getPluginManager().registerEvents(new ChunkListener(this),
+				SH.getPlugin());
 		WorldEdit.getInstance().getEventBus().register(new MyEventHandler());
 	}
 
+	/**
+	 * Gets the owners of many blocks at once. Cached blocks are answered from
+	 * the cache, and the rest with one query per world.
+	 * 
+	 * @param blocks
+	 *            the blocks
+	 * @return the owned blocks and their owners
+	 */
+	Map<Block, IPlayerData> getOwners(final Collection<Block> blocks) {
+		final HashMap<Block, IPlayerData> owners = new HashMap<Block, IPlayerData>();
+		final HashMap<String, IPlayerData> players = new HashMap<String, IPlayerData>();
+		HashMap<String, List<Block>> misses = null;
+		for (final Block b : blocks) {
+			final String w = b.getWorld().getName();
+			final int owner = cache.get(w, b.getX(), b.getY(), b.getZ());
+			if (owner == OwnershipCache.NONE) {
+				continue;
+			}
+			if (owner != OwnershipCache.UNKNOWN) {
+				putOwner(owners, players, b, cache.getUuid(owner));
+				continue;
+			}
+			if (misses == null) {
+				misses = new HashMap<String, List<Block>>();
+			}
+			List<Block> list = misses.get(w);
+			if (list == null) {
+				list = new ArrayList<Block>();
+				misses.put(w, list);
+			}
+			list.add(b);
+		}
+		if (misses != null) {
+			for (final Map.Entry<String, List<Block>> entry : misses
+					.entrySet()) {
+				lookup(entry.getKey(), entry.getValue(), owners, players);
+			}
+		}
+		return owners;
+	}
+
+	/**
+	 * Gets the stats of the queue the owners are written through.
+	 * 
+	 * @return the queue stats
+	 */
+	IOwnershipQueueStats getQueueStats() {
+		return writer;
+	}
+
 	/**
 	 * Gets the who placed.
 	 * 
@@ -185,42 +242,113 @@ public final class BlockProtection extends SubPlugin {
 	 */
 	IPlayerData getWhoPlaced(final Block b) {
 		final String w = b.getWorld().getName();
+		final int x = b.getX();
+		final int y = b.getY();
+		final int z = b.getZ();
+		final int owner = cache.get(w, x, y, z);
+		if (owner == OwnershipCache.NONE)
+			return null;
+		if (owner != OwnershipCache.UNKNOWN)
+			return SH.getManager().getPlayerDataManager()
+					.getPlayerData(cache.getUuid(owner));
 		createWorldTable(w);
+		cache.load(w, x >> 4, z >> 4);
 		try {
 			final ResultSet rs = SH
 					.getManager()
 					.getMysqlManager()
-					.query("(SELECT uuid, time FROM `blocks_"
-							+ BlockPlacedType.SURVIVAL.name + "_" + w
-							+ "` WHERE x = \"" + b.getX() + "\" AND y = \""
-							+ b.getY() + "\" AND z = \"" + b.getZ()
-							+ "\") UNION (SELECT uuid, time FROM `blocks_"
-							+ BlockPlacedType.CREATIVE.name + "_" + w
-							+ "` WHERE x = \"" + b.getX() + "\" AND y = \""
-							+ b.getY() + "\" AND z = \"" + b.getZ()
-							+ "\") UNION (SELECT uuid, time FROM `blocks_"
-							+ BlockPlacedType.WORLDEDIT.name + "_" + w
-							+ "` WHERE x = \"" + b.getX() + "\" AND y = \""
-							+ b.getY() + "\" AND z = \"" + b.getZ() + "\")");
-			String uuid = null;
-			long time = -1;
-			while (rs.next()) {
-				final String uuid_ = rs.getString("uuid");
-				final Long time_ = rs.getLong("time");
-				if (time_ > time) {
-					time = time_;
-					uuid = uuid_;
-				}
-			}
-			if (time == -1)
+					.select("SELECT p.uuid FROM `" + OwnershipSchema.table(w)
+							+ "` o JOIN `players` p ON p.id = o.owner "
+							+ "WHERE o.pos = ?",
+							OwnershipSchema.position(x, y, z));
+			if (!rs.next())
 				return null;
-			return SH.getManager().getPlayerDataManager().getPlayerData(uuid);
+			return SH.getManager().getPlayerDataManager()
+					.getPlayerData(rs.getString(1));
 		} catch (final SQLException e) {
 			e.printStackTrace();
 		}
 		return null;
 	}
 
+	/**
+	 * Reads the owners of blocks that are not cached, in one query, and
+	 * starts reading their chunks into the cache.
+	 * 
+	 * @param world
+	 *            the world of the blocks
+	 * @param blocks
+	 *            the blocks
+	 * @param owners
+	 *            the owners found so far, which the owned blocks are added to
+	 * @param players
+	 *            the players found so far, by uuid
+	 */
+	private void lookup(final String world, final List<Block> blocks,
+			final Map<Block, IPlayerData> owners,
+			final Map<String, IPlayerData> players) {
+		createWorldTable(world);
+		final LongObjectMap<Block> positions = new LongObjectMap<Block>();
+		for (final Block b : blocks) {
+			cache.load(world, b.getX() >> 4, b.getZ() >> 4);
+			positions.put(
+					OwnershipSchema.position(b.getX(), b.getY(), b.getZ()), b);
+		}
+		for (int i = 0; i < blocks.size(); i += OwnershipSchema.MAX_ROWS) {
+			final int n = Math.min(blocks.size() - i, OwnershipSchema.MAX_ROWS);
+			final StringBuilder sql = new StringBuilder(
+					"SELECT o.pos, p.uuid FROM `")
+					.append(OwnershipSchema.table(world))
+					.append("` o JOIN `players` p ON p.id = o.owner ")
+					.append("WHERE o.pos IN (");
+			final Object[] params = new Object[n];
+			for (int j = 0; j < n; j++) {
+				final Block b = blocks.get(i + j);
+				sql.append((j == 0) ? "?" : ", ?");
+				params[j] = OwnershipSchema.position(b.getX(), b.getY(),
+						b.getZ());
+			}
+			sql.append(')');
+			try {
+				final ResultSet rs = SH.getManager().getMysqlManager()
+						.select(sql.toString(), params);
+				while (rs.next()) {
+					final Block b = positions.get(rs.getLong(1));
+					if (b != null) {
+						putOwner(owners, players, b, rs.getString(2));
+					}
+				}
+			} catch (final SQLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Adds the owner of a block, if the owner is a known player.
+	 * 
+	 * @param owners
+	 *            the owners, by block
+	 * @param players
+	 *            the players found so far, by uuid
+	 * @param b
+	 *            the b
+	 * @param uuid
+	 *            the owner's uuid
+	 */
+	private void putOwner(final Map<Block, IPlayerData> owners,
+			final Map<String, IPlayerData> players, final Block b,
+			final String uuid) {
+		IPlayerData pd = players.get(uuid);
+		if ((pd == null) && !players.containsKey(uuid)) {
+			pd = SH.getManager().getPlayerDataManager().getPlayerData(uuid);
+			players.put(uuid, pd);
+		}
+		if (pd != null) {
+			owners.put(b, pd);
+		}
+	}
+
 	/**
 	 * Sets the who placed.
 	 * 
@@ -231,13 +359,19 @@ public final class BlockProtection extends SubPlugin {
 	 * @param type
 	 *            the type
 	 */
-	void setWhoPlaced(final PlayerData p, final Block b,
+	void setWhoPlaced(final IPlayerData p, final Block b,
 			final BlockPlacedType type) {
-		setWhoPlaced(p.getUUID(), p.getName(), b, type);
+		final String w = b.getWorld().getName();
+		createWorldTable(w);
+		final long seq = writer.add(OwnershipSchema.table(w),
+				OwnershipSchema.position(b.getX(), b.getY(), b.getZ()),
+				p.getId(), type);
+		cache.set(w, b.getX(), b.getY(), b.getZ(), p.getUUID(), seq);
 	}
 
 	/**
-	 * Sets the who placed.
+	 * Sets the who placed. Players that are not in the database cannot own
+	 * blocks, so they are ignored.
 	 * 
 	 * @param uuid
 	 *            the uuid
@@ -250,24 +384,20 @@ public final class BlockProtection extends SubPlugin {
 	 */
 	void setWhoPlaced(final String uuid, final String name, final Block b,
 			final BlockPlacedType type) {
-		new Thread() {
+		final IPlayerData p = SH.getManager().getPlayerDataManager()
+				.getPlayerData(uuid);
+		if (p != null) {
+			setWhoPlaced(p, b, type);
+		}
+	}
 
-			@Override
-			public void run() {
-				try {
-					SH.getManager()
-							.getMysqlManager()
-							.query("REPLACE INTO blocks_" + type.name + "_"
-									+ b.getWorld().getName()
-									+ " ( name, uuid, x, y, z, time ) "
-									+ "VALUES ( \"" + name + "\", \"" + uuid
-									+ "\", " + b.getX() + ", " + b.getY()
-									+ ", " + b.getZ() + ", "
-									+ System.currentTimeMillis() + " );");
-				} catch (final SQLException e) {
-					e.printStackTrace();
-				}
-			}
-		}.start();
+	/**
+	 * Drops the owners of a world the server has unloaded.
+	 * 
+	 * @param world
+	 *            the world
+	 */
+	void worldUnloaded(final World world) {
+		cache.evictWorld(world.getName());
 	}
 }
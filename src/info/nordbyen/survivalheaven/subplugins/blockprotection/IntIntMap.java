@@ -0,0 +1,184 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.blockprotection;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from int to int without boxing, using open addressing with
+ * linear probing. Keys must not be {@link Integer#MIN_VALUE}, which marks an
+ * empty slot. Not thread safe.
+ */
+final class IntIntMap {
+
+	/** The key of an empty slot. */
+	private static final int EMPTY = Integer.MIN_VALUE;
+
+	/**
+	 * Spreads the bits of a key.
+	 * 
+	 * @param key
+	 *            the key
+	 * @return the hash
+	 */
+	private static int hash(final int key) {
+		final int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/** The keys. */
+	private int[] keys;
+	/** The values. */
+	private int[] values;
+	/** The number of entries. */
+	private int size = 0;
+
+	/**
+	 * Instantiates a new map.
+	 * 
+	 * @param expected
+	 *            the number of entries to make room for
+	 */
+	IntIntMap(final int expected) {
+		int capacity = 8;
+		while ((capacity * 3) / 4 < expected) {
+			capacity <<= 1;
+		}
+		keys = new int[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	/**
+	 * Gets the value of a key.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param missing
+	 *            the value to return if the key is not in the map
+	 * @return the value
+	 */
+	int get(final int key, final int missing) {
+		final int mask = keys.length - 1;
+		for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+			if (keys[i] == key)
+				return values[i];
+			if (keys[i] == EMPTY)
+				return missing;
+		}
+	}
+
+	/**
+	 * Sets the value of a key.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value
+	 */
+	void put(final int key, final int value) {
+		put(key, value, true);
+	}
+
+	/**
+	 * Sets the value of a key.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value
+	 * @param replace
+	 *            whether to replace an existing value
+	 * @return true, if the key was not in the map before
+	 */
+	private boolean put(final int key, final int value, final boolean replace) {
+		final int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (keys[i] != EMPTY) {
+			if (keys[i] == key) {
+				if (replace) {
+					values[i] = value;
+				}
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size > ((keys.length * 3) / 4)) {
+			rehash(keys.length << 1);
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the value of a key unless it already has one.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value
+	 * @return true, if the value was set
+	 */
+	boolean putIfAbsent(final int key, final int value) {
+		return put(key, value, false);
+	}
+
+	/**
+	 * Moves every entry into new arrays.
+	 * 
+	 * @param capacity
+	 *            the new capacity, a power of two
+	 */
+	private void rehash(final int capacity) {
+		final int[] oldKeys = keys;
+		final int[] oldValues = values;
+		keys = new int[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		final int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldKeys[j] != EMPTY) {
+				int i = hash(oldKeys[j]) & mask;
+				while (keys[i] != EMPTY) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of entries.
+	 * 
+	 * @return the size
+	 */
+	int size() {
+		return size;
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.blockprotection;
+
+/**
+ * A hash map from long to object without boxing the keys, using open
+ * addressing with linear probing. Values must not be null, which marks an
+ * empty slot. Not thread safe.
+ * 
+ * @param <V>
+ *            the value type
+ */
+final class LongObjectMap<V> {
+
+	/**
+	 * Spreads the bits of a key.
+	 * 
+	 * @param key
+	 *            the key
+	 * @return the hash
+	 */
+	private static int hash(final long key) {
+		final long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/** The keys. */
+	private long[] keys = new long[16];
+	/** The values, null for an empty slot. */
+	private Object[] values = new Object[16];
+	/** The number of entries. */
+	private int size = 0;
+
+	/**
+	 * Removes everything.
+	 */
+	void clear() {
+		keys = new long[16];
+		values = new Object[16];
+		size = 0;
+	}
+
+	/**
+	 * Gets the value of a key.
+	 * 
+	 * @param key
+	 *            the key
+	 * @return the value, or null if the key is not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	V get(final long key) {
+		final int mask = keys.length - 1;
+		for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key)
+				return (V) values[i];
+		}
+		return null;
+	}
+
+	/**
+	 * Sets the value of a key.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value, not null
+	 */
+	void put(final long key, final V value) {
+		final int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (values[i] != null) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size > ((keys.length * 3) / 4)) {
+			rehash(keys.length << 1);
+		}
+	}
+
+	/**
+	 * Moves every entry into new arrays.
+	 * 
+	 * @param capacity
+	 *            the new capacity, a power of two
+	 */
+	private void rehash(final int capacity) {
+		final long[] oldKeys = keys;
+		final Object[] oldValues = values;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		final int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] != null) {
+				int i = hash(oldKeys[j]) & mask;
+				while (values[i] != null) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	/**
+	 * Removes a key, shifting later entries of its probe run back so no
+	 * lookup stops early.
+	 * 
+	 * @param key
+	 *            the key
+	 * @return the old value, or null if the key was not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	V remove(final long key) {
+		final int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (values[i] != null) {
+			if (keys[i] == key) {
+				final V old = (V) values[i];
+				int gap = i;
+				for (int j = (i + 1) & mask; values[j] != null; j = (j + 1)
+						& mask) {
+					final int home = hash(keys[j]) & mask;
+					/* Move j into the gap unless its home lies after the gap */
+					if (((j - home) & mask) >= ((j - gap) & mask)) {
+						keys[gap] = keys[j];
+						values[gap] = values[j];
+						gap = j;
+					}
+				}
+				values[gap] = null;
+				size--;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the number of entries.
+	 * 
+	 * @return the size
+	 */
+	int size() {
+		return size;
+	}
+}
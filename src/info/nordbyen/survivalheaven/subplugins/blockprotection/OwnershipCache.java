@@ -0,0 +1,482 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.blockprotection;
+
+import info.nordbyen.survivalheaven.SH;
+import info.nordbyen.survivalheaven.api.mysql.QueryCallback;
+import info.nordbyen.survivalheaven.api.mysql.RowHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+
+/**
+ * Who placed each block, cached in memory so a break check is a hash lookup
+ * instead of a query.
+ * 
+ * The cache is sharded by world and chunk. Each chunk maps the block's packed
+ * position in the chunk to a small owner id, and the ids map to uuids, so
+ * neither level boxes its keys. A chunk is read from the database in one
+ * range query on the database executor and merged in on the server thread.
+ * Until that is done only the blocks placed since are known. Chunks are read
+ * as the server loads them and dropped when it unloads them, so the cache
+ * holds about as much as the worlds do. Only the server thread may use the
+ * cache.
+ * 
+ * Owners the writer has not written yet are also kept by chunk until it has,
+ * and put back into a chunk that is loaded again before then. A read of the
+ * chunk never has to wait for the writer that way.
+ */
+final class OwnershipCache {
+
+	/**
+	 * An owner the writer has not written yet.
+	 */
+	private static final class Pending {
+
+		/** The world. */
+		private final String world;
+		/** The packed chunk coordinates. */
+		private final long chunk;
+		/** The packed position in the chunk. */
+		private final int key;
+		/** The owner id. */
+		private final int owner;
+		/** The writer's sequence number. */
+		private final long seq;
+
+		/**
+		 * Instantiates a new pending owner.
+		 * 
+		 * @param world
+		 *            the world
+		 * @param chunk
+		 *            the packed chunk coordinates
+		 * @param key
+		 *            the packed position in the chunk
+		 * @param owner
+		 *            the owner id
+		 * @param seq
+		 *            the writer's sequence number
+		 */
+		private Pending(final String world, final long chunk, final int key,
+				final int owner, final long seq) {
+			this.world = world;
+			this.chunk = chunk;
+			this.key = key;
+			this.owner = owner;
+			this.seq = seq;
+		}
+	}
+
+	/**
+	 * The cached owners of one chunk.
+	 */
+	private static final class Shard {
+
+		/** The owner id of each block, by packed position. */
+		private final IntIntMap owners = new IntIntMap(16);
+		/** Whether every owner in the chunk has been read. */
+		private boolean loaded = false;
+		/** Whether the chunk is being read. */
+		private boolean loading = false;
+	}
+
+	/**
+	 * The owner rows of one chunk.
+	 */
+	private static final class Rows {
+
+		/** The packed positions. */
+		private int[] keys = new int[16];
+		/** The uuids. */
+		private String[] uuids = new String[16];
+		/** The number of rows. */
+		private int size = 0;
+
+		/**
+		 * Adds a row.
+		 * 
+		 * @param key
+		 *            the packed position
+		 * @param uuid
+		 *            the uuid
+		 */
+		private void add(final int key, final String uuid) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				uuids = Arrays.copyOf(uuids, size * 2);
+			}
+			keys[size] = key;
+			uuids[size] = uuid;
+			size++;
+		}
+	}
+
+	/** The owner of a block that is known to have none. */
+	static final int NONE = -1;
+	/** The owner of a block that is not cached. */
+	static final int UNKNOWN = -2;
+
+	/**
+	 * Packs the position of a block within its chunk.
+	 * 
+	 * @param x
+	 *            the x
+	 * @param y
+	 *            the y
+	 * @param z
+	 *            the z
+	 * @return the packed position
+	 */
+	static int blockKey(final int x, final int y, final int z) {
+		return (y << 8) | ((z & 15) << 4) | (x & 15);
+	}
+
+	/**
+	 * Packs the coordinates of a chunk.
+	 * 
+	 * @param cx
+	 *            the chunk x
+	 * @param cz
+	 *            the chunk z
+	 * @return the packed coordinates
+	 */
+	static long chunkKey(final int cx, final int cz) {
+		return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+	}
+
+	/** The writer the owners are written through. */
+	private final OwnershipWriter writer;
+	/** The chunks of each world, by name. */
+	private final HashMap<String, LongObjectMap<Shard>> worlds = new HashMap<String, LongObjectMap<Shard>>();
+	/** The uuid of each owner id. */
+	private final ArrayList<String> uuids = new ArrayList<String>();
+	/** The owner id of each uuid. */
+	private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+	/** The unwritten owners of each chunk of each world, oldest first. */
+	private final HashMap<String, LongObjectMap<ArrayDeque<Pending>>> pending = new HashMap<String, LongObjectMap<ArrayDeque<Pending>>>();
+	/** Every unwritten owner, oldest first. */
+	private final ArrayDeque<Pending> unwritten = new ArrayDeque<Pending>();
+
+	/**
+	 * Instantiates a new ownership cache.
+	 * 
+	 * @param writer
+	 *            the writer the owners are written through
+	 */
+	OwnershipCache(final OwnershipWriter writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Drops a chunk. A read that is still on its way is thrown away when it
+	 * arrives.
+	 * 
+	 * @param world
+	 *            the world
+	 * @param cx
+	 *            the chunk x
+	 * @param cz
+	 *            the chunk z
+	 */
+	void evict(final String world, final int cx, final int cz) {
+		prune();
+		final LongObjectMap<Shard> chunks = worlds.get(world);
+		if (chunks == null)
+			return;
+		chunks.remove(chunkKey(cx, cz));
+		if (chunks.size() == 0) {
+			worlds.remove(world);
+		}
+	}
+
+	/**
+	 * Drops every chunk of a world.
+	 * 
+	 * @param world
+	 *            the world
+	 */
+	void evictWorld(final String world) {
+		worlds.remove(world);
+	}
+
+	/**
+	 * Gets the owner of a block.
+	 * 
+	 * @param world
+	 *            the world
+	 * @param x
+	 *            the x
+	 * @param y
+	 *            the y
+	 * @param z
+	 *            the z
+	 * @return the owner id, {@link #NONE} or {@link #UNKNOWN}
+	 */
+	int get(final String world, final int x, final int y, final int z) {
+		final Shard shard = shard(world, x >> 4, z >> 4, false);
+		if (shard == null)
+			return UNKNOWN;
+		final int owner = shard.owners.get(blockKey(x, y, z), UNKNOWN);
+		if (owner != UNKNOWN)
+			return owner;
+		return shard.loaded ? NONE : UNKNOWN;
+	}
+
+	/**
+	 * Gets the uuid of an owner id.
+	 * 
+	 * @param id
+	 *            the id
+	 * @return the uuid
+	 */
+	String getUuid(final int id) {
+		return uuids.get(id);
+	}
+
+	/**
+	 * Gets the owner id of a uuid, adding it if it is new.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @return the id
+	 */
+	private int id(final String uuid) {
+		final Integer id = ids.get(uuid);
+		if (id != null)
+			return id;
+		uuids.add(uuid);
+		ids.put(uuid, uuids.size() - 1);
+		return uuids.size() - 1;
+	}
+
+	/**
+	 * Starts reading a chunk from the database, unless it is read already or
+	 * on its way.
+	 * 
+	 * @param world
+	 *            the world
+	 * @param cx
+	 *            the chunk x
+	 * @param cz
+	 *            the chunk z
+	 */
+	void load(final String world, final int cx, final int cz) {
+		final Shard shard = shard(world, cx, cz, true);
+		if (shard.loaded || shard.loading)
+			return;
+		shard.loading = true;
+		SH.getManager().getMysqlManager().submit(new Callable<Rows>() {
+
+			@Override
+			public Rows call() throws Exception {
+				return query(world, cx, cz);
+			}
+		}, new QueryCallback<Rows>() {
+
+			@Override
+			public void onFailure(final Exception e) {
+				shard.loading = false;
+				e.printStackTrace();
+			}
+
+			@Override
+			public void onSuccess(final Rows rows) {
+				shard.loading = false;
+				if (shard(world, cx, cz, false) != shard)
+					return;
+				/* Blocks placed during the read win */
+				for (int i = 0; i < rows.size; i++) {
+					shard.owners.putIfAbsent(rows.keys[i], id(rows.uuids[i]));
+				}
+				shard.loaded = true;
+			}
+		});
+	}
+
+	/**
+	 * Marks a chunk as read without asking the database. Used for chunks the
+	 * server has just generated, which nobody can have built in.
+	 * 
+	 * @param world
+	 *            the world
+	 * @param cx
+	 *            the chunk x
+	 * @param cz
+	 *            the chunk z
+	 */
+	void markEmpty(final String world, final int cx, final int cz) {
+		final Shard shard = shard(world, cx, cz, true);
+		if (!shard.loading) {
+			shard.loaded = true;
+		}
+	}
+
+	/**
+	 * Forgets the unwritten owners the writer is done with.
+	 */
+	private void prune() {
+		final long done = writer.getDone();
+		Pending head;
+		while (((head = unwritten.peek()) != null) && (head.seq <= done)) {
+			unwritten.poll();
+			final LongObjectMap<ArrayDeque<Pending>> chunks = pending
+					.get(head.world);
+			final ArrayDeque<Pending> owners = chunks.get(head.chunk);
+			owners.poll();
+			if (owners.isEmpty()) {
+				chunks.remove(head.chunk);
+				if (chunks.size() == 0) {
+					pending.remove(head.world);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the owners of a chunk. Runs on the database executor. The chunk
+	 * is one range of the primary key, see {@link OwnershipSchema}.
+	 * 
+	 * @param world
+	 *            the world
+	 * @param cx
+	 *            the chunk x
+	 * @param cz
+	 *            the chunk z
+	 * @return the rows
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	private Rows query(final String world, final int cx, final int cz)
+			throws SQLException {
+		final long start = OwnershipSchema.chunkStart(cx, cz);
+		final Rows rows = new Rows();
+		SH.getManager()
+				.getMysqlManager()
+				.stream("SELECT o.pos, p.uuid FROM `"
+						+ OwnershipSchema.table(world)
+						+ "` o JOIN `players` p ON p.id = o.owner "
+						+ "WHERE o.pos BETWEEN ? AND ?", new RowHandler() {
+
+					@Override
+					public void handleRow(final ResultSet row)
+							throws SQLException {
+						rows.add((int) (row.getLong(1) & 0xFFFF),
+								row.getString(2));
+					}
+				}, start, start + 0xFFFF);
+		return rows;
+	}
+
+	/**
+	 * Records who placed a block.
+	 * 
+	 * @param world
+	 *            the world
+	 * @param x
+	 *            the x
+	 * @param y
+	 *            the y
+	 * @param z
+	 *            the z
+	 * @param uuid
+	 *            the uuid
+	 * @param seq
+	 *            the writer's sequence number, or 0 if it is written already
+	 */
+	void set(final String world, final int x, final int y, final int z,
+			final String uuid, final long seq) {
+		prune();
+		final int key = blockKey(x, y, z);
+		final int owner = id(uuid);
+		shard(world, x >> 4, z >> 4, true).owners.put(key, owner);
+		if (seq <= writer.getDone())
+			return;
+		final long chunk = chunkKey(x >> 4, z >> 4);
+		LongObjectMap<ArrayDeque<Pending>> chunks = pending.get(world);
+		if (chunks == null) {
+			chunks = new LongObjectMap<ArrayDeque<Pending>>();
+			pending.put(world, chunks);
+		}
+		ArrayDeque<Pending> owners = chunks.get(chunk);
+		if (owners == null) {
+			owners = new ArrayDeque<Pending>();
+			chunks.put(chunk, owners);
+		}
+		final Pending p = new Pending(world, chunk, key, owner, seq);
+		owners.add(p);
+		unwritten.add(p);
+	}
+
+	/**
+	 * Gets the shard of a chunk. A new shard starts out with the chunk's
+	 * unwritten owners, which the rows read later do not replace.
+	 * 
+	 * @param world
+	 *            the world
+	 * @param cx
+	 *            the chunk x
+	 * @param cz
+	 *            the chunk z
+	 * @param create
+	 *            whether to create it if it is missing
+	 * @return the shard, or null if it is missing and not created
+	 */
+	private Shard shard(final String world, final int cx, final int cz,
+			final boolean create) {
+		LongObjectMap<Shard> chunks = worlds.get(world);
+		if (chunks == null) {
+			if (!create)
+				return null;
+			chunks = new LongObjectMap<Shard>();
+			worlds.put(world, chunks);
+		}
+		final long key = chunkKey(cx, cz);
+		Shard shard = chunks.get(key);
+		if ((shard == null) && create) {
+			shard = new Shard();
+			chunks.put(key, shard);
+			prune();
+			final LongObjectMap<ArrayDeque<Pending>> unwrittenChunks = pending
+					.get(world);
+			if (unwrittenChunks != null) {
+				final ArrayDeque<Pending> owners = unwrittenChunks.get(key);
+				if (owners != null) {
+					for (final Pending p : owners) {
+						shard.owners.put(p.key, p.owner);
+					}
+				}
+			}
+		}
+		return shard;
+	}
+}
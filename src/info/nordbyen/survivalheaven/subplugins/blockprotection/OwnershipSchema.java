@@ -0,0 +1,329 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.blockprotection;
+
+import info.nordbyen.survivalheaven.SH;
+import info.nordbyen.survivalheaven.api.blockdata.BlockPlacedType;
+import info.nordbyen.survivalheaven.api.mysql.IMysqlManager;
+import info.nordbyen.survivalheaven.api.mysql.RowHandler;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The tables block owners are stored in.
+ * 
+ * Each world has one table keyed by the block's packed position. The chunk
+ * takes the high bits and the position in the chunk the low sixteen, so a
+ * block is one primary key lookup and a chunk one primary key range. The
+ * owner is the player's id in {@code players} and the type the
+ * {@link BlockPlacedType#id}.
+ * 
+ * Worlds used to have three tables, one per type, keyed by the coordinates
+ * and holding the owner's name and uuid. {@link #migrateLegacy()} copies them
+ * into the new tables once, when the plugin is enabled, and then renames them
+ * with the {@link #LEGACY_PREFIX} so nothing is lost. Owners without a row in
+ * {@code players} cannot be copied; they are counted and stay in the renamed
+ * tables.
+ */
+final class OwnershipSchema {
+
+	/**
+	 * Copies the owners of one world from its old tables, a batch at a time.
+	 * The batches are written on a second connection while the rows stream
+	 * in, so only one batch is held in memory.
+	 */
+	private static final class LegacyCopy {
+
+		/** The table to copy to. */
+		private final String table;
+		/** The params of the rows waiting to be written. */
+		private final Object[] params = new Object[MAX_ROWS * 4];
+		/** The number of rows waiting to be written. */
+		private int size = 0;
+		/** The rows copied. */
+		private int copied = 0;
+		/** The rows whose owner has no player. */
+		private int unmatched = 0;
+
+		/**
+		 * Instantiates a new legacy copy.
+		 * 
+		 * @param table
+		 *            the table to copy to
+		 */
+		private LegacyCopy(final String table) {
+			this.table = table;
+		}
+
+		/**
+		 * Adds a row, writing the batch once it is full.
+		 * 
+		 * @param position
+		 *            the position
+		 * @param owner
+		 *            the owner
+		 * @param type
+		 *            the type
+		 * @param time
+		 *            the time
+		 * @throws SQLException
+		 *             the SQL exception
+		 */
+		private void add(final long position, final int owner,
+				final int type, final long time) throws SQLException {
+			params[size * 4] = position;
+			params[(size * 4) + 1] = owner;
+			params[(size * 4) + 2] = type;
+			params[(size * 4) + 3] = time;
+			if (++size == MAX_ROWS) {
+				flush();
+			}
+		}
+
+		/**
+		 * Writes the rows waiting to be written.
+		 * 
+		 * @throws SQLException
+		 *             the SQL exception
+		 */
+		private void flush() throws SQLException {
+			if (size == 0)
+				return;
+			SH.getManager().getMysqlManager()
+					.update(replace(table, size),
+							Arrays.copyOf(params, size * 4));
+			copied += size;
+			size = 0;
+		}
+	}
+
+	/** The prefix the old tables are renamed with once they are copied. */
+	static final String LEGACY_PREFIX = "legacy_";
+	/** The most rows written by one statement. */
+	static final int MAX_ROWS = 512;
+
+	/**
+	 * Gets the first packed position of a chunk. The chunk holds the 65536
+	 * positions from there on.
+	 * 
+	 * @param cx
+	 *            the chunk x
+	 * @param cz
+	 *            the chunk z
+	 * @return the first position
+	 */
+	static long chunkStart(final int cx, final int cz) {
+		return ((long) cx << 38) | ((long) (cz & 0x3FFFFF) << 16);
+	}
+
+	/**
+	 * Creates the table of a world, unless it exists.
+	 * 
+	 * @param world
+	 *            the world
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	static void create(final String world) throws SQLException {
+		SH.getManager()
+				.getMysqlManager()
+				.update("CREATE TABLE IF NOT EXISTS `" + table(world) + "` ("
+						+ "`pos` BIGINT NOT NULL, " + "`owner` INT NOT NULL, "
+						+ "`type` TINYINT NOT NULL, "
+						+ "`time` BIGINT NOT NULL, " + "PRIMARY KEY (`pos`)"
+						+ ") " + "ENGINE=InnoDB DEFAULT CHARSET=utf8;");
+	}
+
+	/**
+	 * Finds the old tables, by world and then type.
+	 * 
+	 * @return the tables
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	private static Map<String, Map<BlockPlacedType, String>> findLegacy()
+			throws SQLException {
+		final Map<String, Map<BlockPlacedType, String>> worlds = new TreeMap<String, Map<BlockPlacedType, String>>();
+		final IMysqlManager mysql = SH.getManager().getMysqlManager();
+		final Connection connection = mysql.getConnection();
+		try {
+			final DatabaseMetaData meta = connection.getMetaData();
+			final String escape = meta.getSearchStringEscape();
+			final ResultSet rs = meta.getTables(connection.getCatalog(), null,
+					"blocks" + escape + "_%", null);
+			try {
+				while (rs.next()) {
+					final String name = rs.getString("TABLE_NAME");
+					for (final BlockPlacedType type : BlockPlacedType
+							.values()) {
+						final String prefix = "blocks_" + type.name + "_";
+						if ((name.length() <= prefix.length())
+								|| !name.regionMatches(true, 0, prefix, 0,
+										prefix.length())) {
+							continue;
+						}
+						final String world = name.substring(prefix.length());
+						Map<BlockPlacedType, String> tables = worlds.get(world);
+						if (tables == null) {
+							tables = new EnumMap<BlockPlacedType, String>(
+									BlockPlacedType.class);
+							worlds.put(world, tables);
+						}
+						tables.put(type, name);
+					}
+				}
+			} finally {
+				rs.close();
+			}
+		} finally {
+			mysql.releaseConnection(connection);
+		}
+		return worlds;
+	}
+
+	/**
+	 * Copies the owners in the old tables of every world into the new
+	 * tables, then renames the old tables with the {@link #LEGACY_PREFIX}.
+	 * The rows are copied oldest first, so a block that is in more than one
+	 * old table gets its newest owner. Run once when the plugin is enabled;
+	 * a copy that was interrupted simply runs again, since the old tables
+	 * are only renamed at the end.
+	 * 
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	static void migrateLegacy() throws SQLException {
+		final IMysqlManager mysql = SH.getManager().getMysqlManager();
+		for (final Map.Entry<String, Map<BlockPlacedType, String>> entry : findLegacy()
+				.entrySet()) {
+			final String world = entry.getKey();
+			create(world);
+			final StringBuilder union = new StringBuilder();
+			for (final Map.Entry<BlockPlacedType, String> old : entry
+					.getValue().entrySet()) {
+				if (union.length() > 0) {
+					union.append(" UNION ALL ");
+				}
+				union.append("SELECT uuid, x, y, z, time, ")
+						.append(old.getKey().id).append(" AS type FROM `")
+						.append(old.getValue()).append('`');
+			}
+			final LegacyCopy copy = new LegacyCopy(table(world));
+			mysql.stream("SELECT p.id, b.x, b.y, b.z, b.type, b.time FROM ("
+					+ union + ") b LEFT JOIN `players` p ON p.uuid = b.uuid "
+					+ "ORDER BY b.time", new RowHandler() {
+
+				@Override
+				public void handleRow(final ResultSet row)
+						throws SQLException {
+					final int owner = row.getInt(1);
+					if (row.wasNull()) {
+						copy.unmatched++;
+						return;
+					}
+					copy.add(
+							position(row.getInt(2), row.getInt(3),
+									row.getInt(4)), owner, row.getInt(5),
+							row.getLong(6));
+				}
+			});
+			copy.flush();
+			for (final String old : entry.getValue().values()) {
+				mysql.update("ALTER TABLE `" + old + "` RENAME TO `"
+						+ LEGACY_PREFIX + old + "`");
+			}
+			System.out.println("[SurvivalHeaven] Flyttet " + copy.copied
+					+ " blokkeiere i " + world + " til " + table(world));
+			if (copy.unmatched > 0) {
+				System.out.println("[SurvivalHeaven] " + copy.unmatched
+						+ " blokkeiere i " + world
+						+ " har ingen spiller og ble ikke flyttet; de ligger"
+						+ " fortsatt i " + LEGACY_PREFIX + "blocks_*_"
+						+ world);
+			}
+		}
+	}
+
+	/**
+	 * Packs the position of a block. The low sixteen bits are the
+	 * {@link OwnershipCache#blockKey(int, int, int)} of the block.
+	 * 
+	 * @param x
+	 *            the x
+	 * @param y
+	 *            the y
+	 * @param z
+	 *            the z
+	 * @return the packed position
+	 */
+	static long position(final int x, final int y, final int z) {
+		return chunkStart(x >> 4, z >> 4) | OwnershipCache.blockKey(x, y, z);
+	}
+
+	/**
+	 * Builds a statement writing rows of {@code pos, owner, type, time} to a
+	 * table, replacing the rows already there.
+	 * 
+	 * @param table
+	 *            the table
+	 * @param rows
+	 *            the number of rows
+	 * @return the sql
+	 */
+	static String replace(final String table, final int rows) {
+		final StringBuilder sql = new StringBuilder("REPLACE INTO `")
+				.append(table).append("` ( pos, owner, type, time ) VALUES ");
+		for (int i = 0; i < rows; i++) {
+			sql.append((i == 0) ? "( ?, ?, ?, ? )" : ", ( ?, ?, ?, ? )");
+		}
+		return sql.toString();
+	}
+
+	/**
+	 * Gets the table of a world.
+	 * 
+	 * @param world
+	 *            the world
+	 * @return the table
+	 */
+	static String table(final String world) {
+		return "block_owners_" + world;
+	}
+
+	/**
+	 * Instantiates a new ownership schema.
+	 */
+	private OwnershipSchema() {
+	}
+}
@@ -0,0 +1,440 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.blockprotection;
+
+import info.nordbyen.survivalheaven.SH;
+import info.nordbyen.survivalheaven.api.blockdata.BlockPlacedType;
+import info.nordbyen.survivalheaven.api.blockdata.IOwnershipQueueStats;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes who placed each block through one bounded queue.
+ * 
+ * The server thread adds owners to the queue and a single worker thread
+ * drains it, writing each table's owners with multi-row {@code REPLACE}
+ * statements. A block placed twice in one drain is only written once. The
+ * statements hold a power of two rows, so each table only ever needs a
+ * handful of distinct statements. When the queue is full the server thread
+ * waits up to {@link #ADD_TIMEOUT} for room, which slows building down rather
+ * than dropping owners, and then hands the owner to the write-behind queue,
+ * so a slow database cannot freeze the server. Owners that cannot be written
+ * are handed to the write-behind queue as well, which journals them until
+ * the database is back.
+ */
+final class OwnershipWriter implements IOwnershipQueueStats, Runnable {
+
+	/**
+	 * An owner waiting to be written.
+	 */
+	private static final class Placement {
+
+		/** The table. */
+		private final String table;
+		/** The packed position. */
+		private final long position;
+		/** The owner's player id. */
+		private final int owner;
+		/** The type id. */
+		private final int type;
+		/** The time. */
+		private final long time;
+
+		/**
+		 * Instantiates a new placement.
+		 * 
+		 * @param table
+		 *            the table
+		 * @param position
+		 *            the packed position
+		 * @param owner
+		 *            the owner's player id
+		 * @param type
+		 *            the type id
+		 * @param time
+		 *            the time
+		 */
+		private Placement(final String table, final long position,
+				final int owner, final int type, final long time) {
+			this.table = table;
+			this.position = position;
+			this.owner = owner;
+			this.type = type;
+			this.time = time;
+		}
+	}
+
+	/** How many owners the queue holds. */
+	private static final int CAPACITY = 16384;
+	/** How many owners the worker takes from the queue at a time. */
+	private static final int DRAIN_SIZE = 2048;
+	/** How long an add waits for room in a full queue, in milliseconds. */
+	private static final long ADD_TIMEOUT = 50L;
+	/** How long {@link #close()} waits for the worker to drain the queue. */
+	private static final long CLOSE_TIMEOUT = 10000L;
+	/** Tells the worker to stop. */
+	private static final Placement STOP = new Placement(null, 0L, 0, 0, 0L);
+
+	/** The queue. */
+	private final ArrayBlockingQueue<Placement> queue = new ArrayBlockingQueue<Placement>(
+			CAPACITY);
+	/** The worker. */
+	private Thread worker;
+	/** Whether the writer is closed. */
+	private volatile boolean closed = false;
+	/** The owners added, written only by the server thread. */
+	private final AtomicLong added = new AtomicLong();
+	/** The owners the worker is done with, written only by the worker. */
+	private volatile long done = 0L;
+	/** The blocked adds. */
+	private final AtomicLong blockedAdds = new AtomicLong();
+	/** The blocked time in nanoseconds. */
+	private final AtomicLong blockedNanos = new AtomicLong();
+	/** The blocked adds that timed out. */
+	private final AtomicLong blockedTimeouts = new AtomicLong();
+	/** The fallback rows. */
+	private final AtomicLong fallbackRows = new AtomicLong();
+	/** The statement count. */
+	private final AtomicLong statementCount = new AtomicLong();
+	/** The written rows. */
+	private final AtomicLong writtenRows = new AtomicLong();
+	/** The max depth. */
+	private volatile int maxDepth = 0;
+
+	/**
+	 * Queues an owner. Waits up to {@link #ADD_TIMEOUT} for room if the queue
+	 * is full, and writes through the write-behind queue if there is still
+	 * none or the writer is closed. Only the server thread may add owners.
+	 * 
+	 * The owner gets the next sequence number. The worker is done with it
+	 * once {@link #getDone()} has reached that number.
+	 * 
+	 * @param table
+	 *            the table
+	 * @param position
+	 *            the packed position
+	 * @param owner
+	 *            the owner's player id
+	 * @param type
+	 *            the type
+	 * @return the sequence number, or 0 if the owner was handed to the
+	 *         write-behind queue
+	 */
+	long add(final String table, final long position, final int owner,
+			final BlockPlacedType type) {
+		final Placement placement = new Placement(table, position, owner,
+				type.id, System.currentTimeMillis());
+		if (closed || (worker == null)) {
+			fallback(placement);
+			return 0L;
+		}
+		if (!queue.offer(placement)) {
+			blockedAdds.incrementAndGet();
+			final long start = System.nanoTime();
+			boolean queued = false;
+			try {
+				queued = queue.offer(placement, ADD_TIMEOUT,
+						TimeUnit.MILLISECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				blockedNanos.addAndGet(System.nanoTime() - start);
+			}
+			if (!queued) {
+				blockedTimeouts.incrementAndGet();
+				fallback(placement);
+				return 0L;
+			}
+		}
+		final long seq = added.incrementAndGet();
+		final int depth = queue.size();
+		if (depth > maxDepth) {
+			maxDepth = depth;
+		}
+		return seq;
+	}
+
+	/**
+	 * Stops the worker once it has written everything in the queue. What it
+	 * has not written in time is handed to the write-behind queue.
+	 */
+	void close() {
+		if (closed || (worker == null))
+			return;
+		closed = true;
+		try {
+			queue.put(STOP);
+			worker.join(CLOSE_TIMEOUT);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		final ArrayList<Placement> rest = new ArrayList<Placement>();
+		queue.drainTo(rest);
+		for (final Placement placement : rest) {
+			if (placement != STOP) {
+				fallback(placement);
+			}
+		}
+		worker = null;
+	}
+
+	/**
+	 * Hands an owner to the write-behind queue.
+	 * 
+	 * @param placement
+	 *            the placement
+	 */
+	private void fallback(final Placement placement) {
+		fallbackRows.incrementAndGet();
+		SH.getManager()
+				.getMysqlManager()
+				.enqueue(placement.table + ":" + placement.position,
+						OwnershipSchema.replace(placement.table, 1),
+						placement.position, placement.owner, placement.type,
+						placement.time);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.blockdata.IOwnershipQueueStats#
+	 * getBlockedAdds()
+	 */
+	@Override
+	public long getBlockedAdds() {
+		return blockedAdds.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.blockdata.IOwnershipQueueStats#
+	 * getBlockedMillis()
+	 */
+	@Override
+	public double getBlockedMillis() {
+		return blockedNanos.get() / 1000000.0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.blockdata.IOwnershipQueueStats#
+	 * getBlockedTimeouts()
+	 */
+	@Override
+	public long getBlockedTimeouts() {
+		return blockedTimeouts.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.blockdata.IOwnershipQueueStats#getCapacity
+	 * ()
+	 */
+	@Override
+	public int getCapacity() {
+		return CAPACITY;
+	}
+
+	/**
+	 * Gets how many owners the worker is done with, written or handed to the
+	 * write-behind queue. Owners are done in the order they were added.
+	 * 
+	 * @return the count
+	 */
+	long getDone() {
+		return done;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.blockdata.IOwnershipQueueStats#getDepth()
+	 */
+	@Override
+	public int getDepth() {
+		return queue.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.blockdata.IOwnershipQueueStats#
+	 * getFallbackRows()
+	 */
+	@Override
+	public long getFallbackRows() {
+		return fallbackRows.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.blockdata.IOwnershipQueueStats#getMaxDepth
+	 * ()
+	 */
+	@Override
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.blockdata.IOwnershipQueueStats#
+	 * getStatementCount()
+	 */
+	@Override
+	public long getStatementCount() {
+		return statementCount.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.blockdata.IOwnershipQueueStats#
+	 * getWrittenRows()
+	 */
+	@Override
+	public long getWrittenRows() {
+		return writtenRows.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		final ArrayList<Placement> batch = new ArrayList<Placement>(DRAIN_SIZE);
+		boolean stop = false;
+		while (!stop) {
+			try {
+				batch.add(queue.take());
+			} catch (final InterruptedException e) {
+				break;
+			}
+			queue.drainTo(batch, DRAIN_SIZE - 1);
+			if (batch.remove(STOP)) {
+				stop = true;
+			}
+			try {
+				write(batch);
+			} catch (final RuntimeException e) {
+				e.printStackTrace();
+			}
+			done += batch.size();
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Starts the worker.
+	 */
+	void start() {
+		if (worker != null)
+			return;
+		closed = false;
+		worker = new Thread(this, "SurvivalHeaven-BlockProtection");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Writes a drained batch, one table at a time.
+	 * 
+	 * @param batch
+	 *            the batch
+	 */
+	private void write(final List<Placement> batch) {
+		final LinkedHashMap<String, LinkedHashMap<Long, Placement>> tables = new LinkedHashMap<String, LinkedHashMap<Long, Placement>>();
+		for (final Placement placement : batch) {
+			LinkedHashMap<Long, Placement> rows = tables.get(placement.table);
+			if (rows == null) {
+				rows = new LinkedHashMap<Long, Placement>();
+				tables.put(placement.table, rows);
+			}
+			rows.put(placement.position, placement);
+		}
+		for (final Map.Entry<String, LinkedHashMap<Long, Placement>> entry : tables
+				.entrySet()) {
+			final ArrayList<Placement> rows = new ArrayList<Placement>(entry
+					.getValue().values());
+			int i = 0;
+			while (i < rows.size()) {
+				final int n = Integer.highestOneBit(Math.min(rows.size() - i,
+						OwnershipSchema.MAX_ROWS));
+				write(entry.getKey(), rows.subList(i, i + n));
+				i += n;
+			}
+		}
+	}
+
+	/**
+	 * Writes rows of one table in a single statement, or hands them to the
+	 * write-behind queue if that fails.
+	 * 
+	 * @param table
+	 *            the table
+	 * @param rows
+	 *            the rows
+	 */
+	private void write(final String table, final List<Placement> rows) {
+		final Object[] params = new Object[rows.size() * 4];
+		int i = 0;
+		for (final Placement placement : rows) {
+			params[i++] = placement.position;
+			params[i++] = placement.owner;
+			params[i++] = placement.type;
+			params[i++] = placement.time;
+		}
+		try {
+			SH.getManager().getMysqlManager()
+					.update(OwnershipSchema.replace(table, rows.size()), params);
+			statementCount.incrementAndGet();
+			writtenRows.addAndGet(rows.size());
+		} catch (final SQLException e) {
+			e.printStackTrace();
+			for (final Placement placement : rows) {
+				fallback(placement);
+			}
+		}
+	}
+}
@@ -31,6 +31,10 @@ import info.nordbyen.survivalheaven.api.blockdata.BlockPlacedType;
 import info.nordbyen.survivalheaven.api.playerdata.IPlayerData;
 import info.nordbyen.survivalheaven.api.util.FancyMessages;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import org.bukkit.ChatColor;
 import org.bukkit.GameMode;
 import org.bukkit.Material;
@@ -40,7 +44,10 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
 
 /**
  * The listener interface for receiving blockProtection events. The class that
@@ -55,6 +62,34 @@ import org.bukkit.event.block.BlockPlaceEvent;
  */
 public class BlockProtectionListener implements Listener {
 
+	/**
+	 * Checks if a piston would move blocks owned by someone other than the
+	 * owner of the piston. All the owners are looked up at once.
+	 * 
+	 * @param piston
+	 *            the piston
+	 * @param moved
+	 *            the blocks the piston moves
+	 * @return true, if it would
+	 */
+	private boolean movesProtectedBlocks(final Block piston,
+			final List<Block> moved) {
+		if (moved.isEmpty())
+			return false;
+		final List<Block> blocks = new ArrayList<Block>(moved.size() + 1);
+		blocks.add(piston);
+		blocks.addAll(moved);
+		final Map<Block, IPlayerData> owners = SH.getManager()
+				.getBlockManager().getOwners(blocks);
+		final IPlayerData pistonOwner = owners.remove(piston);
+		for (final IPlayerData owner : owners.values()) {
+			if ((pistonOwner == null)
+					|| !owner.getUUID().equals(pistonOwner.getUUID()))
+				return true;
+		}
+		return false;
+	}
+
 	/**
 	 * On break.
 	 * 
@@ -93,6 +128,49 @@ public class BlockProtectionListener implements Listener {
 		}
 	}
 
+	/**
+	 * On explode. Owned blocks are taken out of the explosion.
+	 * 
+	 * @param e
+	 *            the e
+	 */
+	@EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+	public void onExplode(final EntityExplodeEvent e) {
+		if (e.blockList().isEmpty())
+			return;
+		final Map<Block, IPlayerData> owners = SH.getManager()
+				.getBlockManager().getOwners(e.blockList());
+		if (!owners.isEmpty()) {
+			e.blockList().removeAll(owners.keySet());
+		}
+	}
+
+	/**
+	 * On piston extend.
+	 * 
+	 * @param e
+	 *            the e
+	 */
+	@EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+	public void onPistonExtend(final BlockPistonExtendEvent e) {
+		if (movesProtectedBlocks(e.getBlock(), e.getBlocks())) {
+			e.setCancelled(true);
+		}
+	}
+
+	/**
+	 * On piston retract.
+	 * 
+	 * @param e
+	 *            the e
+	 */
+	@EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+	public void onPistonRetract(final BlockPistonRetractEvent e) {
+		if (movesProtectedBlocks(e.getBlock(), e.getBlocks())) {
+			e.setCancelled(true);
+		}
+	}
+
 	/**
 	 * On place.
 	 * 
@@ -0,0 +1,973 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import info.nordbyen.survivalheaven.SH;
+import info.nordbyen.survivalheaven.api.mysql.IColumnCodec;
+import info.nordbyen.survivalheaven.api.mysql.IConnectionPoolStats;
+import info.nordbyen.survivalheaven.api.mysql.IMysqlManager;
+import info.nordbyen.survivalheaven.api.mysql.IQueryStats;
+import info.nordbyen.survivalheaven.api.mysql.IWriteQueueStats;
+import info.nordbyen.survivalheaven.api.mysql.QueryCallback;
+import info.nordbyen.survivalheaven.api.mysql.RowHandler;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+
+/**
+ * The base of the SQL backends behind {@link IMysqlManager}. Subclasses only
+ * name the JDBC driver, URL and credentials and the few statements whose
+ * syntax differs; everything else is shared.
+ * 
+ * The schema is brought up to date by {@link SchemaMigrator} whenever the
+ * pool is opened, or by the first flush after the database comes back if it
+ * could not be reached then.
+ * 
+ * Every call borrows a connection from the {@link ConnectionPool} and hands it
+ * back before returning, so result sets are copied into a disconnected
+ * {@link CachedRowSet} first. Statements with bind parameters are prepared
+ * once per connection and reused, see {@link PooledConnection}. Work handed to
+ * {@link #submit(Callable)} runs on a dedicated executor with one thread per
+ * pooled connection. Every statement is timed by {@link QueryStats}.
+ * 
+ * A {@link CircuitBreaker} makes every call fail at once while the database
+ * is unreachable; queued writes go to the {@link WriteJournal} meanwhile.
+ */
+public abstract class AbstractSqlManager implements IMysqlManager {
+
+	/** The circuit breaker. */
+	private volatile CircuitBreaker breaker = new CircuitBreaker(1, 0L);
+	/** The column codecs. */
+	private final ColumnCodec codec = new ColumnCodec();
+	/** The connection pool. */
+	private ConnectionPool pool = null;
+	/** The connections handed out by {@link #getConnection()}. */
+	private final Map<Connection, PooledConnection> lent = new ConcurrentHashMap<Connection, PooledConnection>();
+	/** The row set factory. */
+	private volatile RowSetFactory rowSetFactory = null;
+	/** The number of rows fetched at a time by stream. */
+	private int fetchSize = 1000;
+	/** The database executor. */
+	private volatile ExecutorService executor = null;
+	/** The write-behind queue. */
+	private volatile WriteBehindQueue writeQueue = null;
+	/** The statement timings. */
+	private final QueryStats stats = new QueryStats();
+	/** Whether the schema is up to date since the pool was opened. */
+	private volatile boolean migrated = false;
+
+	/**
+	 * Binds the parameters to a prepared statement.
+	 * 
+	 * @param statement
+	 *            the statement
+	 * @param params
+	 *            the params
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	static void bind(final PreparedStatement statement, final Object[] params)
+			throws SQLException {
+		if (params == null)
+			return;
+		for (int i = 0; i < params.length; i++) {
+			if (params[i] == null) {
+				statement.setNull(i + 1, Types.NULL);
+			} else {
+				statement.setObject(i + 1, params[i]);
+			}
+		}
+	}
+
+	/**
+	 * Borrows a connection from the pool, failing at once while the circuit
+	 * breaker is open.
+	 * 
+	 * @return the pooled connection
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	PooledConnection borrow() throws SQLException {
+		if (pool == null)
+			throw new SQLException("Not connected to the database",
+					CircuitBreaker.NO_CONNECTION_STATE);
+		if (!breaker.allowRequest())
+			throw new SQLException("The database is unreachable",
+					CircuitBreaker.SQL_STATE);
+		final PooledConnection pc;
+		try {
+			pc = pool.borrow();
+		} catch (final SQLException e) {
+			if (CircuitBreaker.isConnectionError(e)) {
+				breaker.recordFailure();
+			}
+			throw e;
+		}
+		breaker.recordSuccess();
+		return pc;
+	}
+
+	/**
+	 * Copies a result set into a disconnected row set so the statement and
+	 * connection behind it can be released.
+	 * 
+	 * @param rs
+	 *            the rs
+	 * @return the result set
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	private ResultSet cache(final ResultSet rs) throws SQLException {
+		if (rs == null)
+			return null;
+		try {
+			if (rowSetFactory == null) {
+				rowSetFactory = RowSetProvider.newFactory();
+			}
+			final CachedRowSet crs = rowSetFactory.createCachedRowSet();
+			crs.populate(rs);
+			return crs;
+		} finally {
+			rs.close();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#checkConnection()
+	 */
+	@Override
+	public boolean checkConnection() throws SQLException {
+		final Connection connection = getConnection();
+		try {
+			return connection.isValid(5);
+		} finally {
+			releaseConnection(connection);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#clearTable(java.lang
+	 * .String)
+	 */
+	@Override
+	public boolean clearTable(final String table) {
+		try {
+			final String query = "DELETE FROM " + table;
+			SH.getManager().debug(query);
+			executeUpdate(query);
+			return true;
+		} catch (final SQLException e) {
+			return false;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.mysql.IMysqlManager#close()
+	 */
+	@Override
+	public void close() {
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+					System.out.print("Database-arbeid ble ikke ferdig i tide");
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			executor = null;
+		}
+		if (writeQueue != null) {
+			writeQueue.flush();
+			writeQueue.close();
+		}
+		if (pool != null) {
+			pool.close();
+		}
+	}
+
+	/**
+	 * Closes a statement, ignoring errors.
+	 * 
+	 * @param statement
+	 *            the statement
+	 */
+	private void closeQuietly(final Statement statement) {
+		if (statement == null)
+			return;
+		try {
+			statement.close();
+		} catch (final SQLException e) {
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#deleteTable(java
+	 * .lang .String)
+	 */
+	@Override
+	public boolean deleteTable(final String table) {
+		try {
+			SH.getManager().debug("DROP TABLE " + table);
+			executeUpdate("DROP TABLE " + table);
+			return true;
+		} catch (final SQLException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#enqueue(java.lang
+	 * .String, java.lang.String, java.lang.Object[])
+	 */
+	@Override
+	public void enqueue(final String key, final String sql,
+			final Object... params) {
+		if (writeQueue == null)
+			throw new IllegalStateException("The write queue is not open");
+		writeQueue.enqueue(key, sql, params);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#enqueueAll(java.lang
+	 * .String[], java.lang.String[], java.lang.Object[][])
+	 */
+	@Override
+	public void enqueueAll(final String[] keys, final String[] sql,
+			final Object[][] params) {
+		if (writeQueue == null)
+			throw new IllegalStateException("The write queue is not open");
+		writeQueue.enqueueAll(keys, sql, params);
+	}
+
+	/**
+	 * Executes a statement that returns no rows.
+	 * 
+	 * @param query
+	 *            the query
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	void executeUpdate(final String query) throws SQLException {
+		final long start = System.nanoTime();
+		final PooledConnection pc = borrow();
+		Statement statement = null;
+		try {
+			statement = pc.getConnection().createStatement();
+			statement.executeUpdate(query);
+		} finally {
+			closeQuietly(statement);
+			release(pc);
+			stats.record(query, start);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.mysql.IMysqlManager#flushWrites()
+	 */
+	@Override
+	public int flushWrites() {
+		return (writeQueue == null) ? 0 : writeQueue.flush();
+	}
+
+	/**
+	 * Forgets a cached world after it has unloaded.
+	 * 
+	 * @param name
+	 *            the world name
+	 */
+	void forgetWorld(final String name) {
+		codec.forgetWorld(name);
+	}
+
+	/**
+	 * Gets the circuit breaker.
+	 * 
+	 * @return the breaker
+	 */
+	CircuitBreaker getBreaker() {
+		return breaker;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.mysql.IMysqlManager#getCodec()
+	 */
+	@Override
+	public IColumnCodec getCodec() {
+		return codec;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.mysql.IMysqlManager#getConnection()
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		final PooledConnection pc = borrow();
+		lent.put(pc.getConnection(), pc);
+		return pc.getConnection();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#getDate(java.util.
+	 * Date)
+	 */
+	@Override
+	public String getDate(final Date date) {
+		return codec.formatLegacyDate(date);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#getDate(java.lang.
+	 * String)
+	 */
+	@Override
+	public Date getDate(final String date) {
+		if (date.equalsIgnoreCase("no"))
+			return new Date();
+		return codec.parseLegacyDate(date);
+	}
+
+	/**
+	 * Gets the JDBC driver class name.
+	 * 
+	 * @return the driver class
+	 */
+	protected abstract String getDriverClass();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#getLocation(org.
+	 * bukkit .Location)
+	 */
+	@Override
+	public String getLocation(final Location loc) {
+		return codec.encodeLocation(loc);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#getLocation(java
+	 * .lang .String)
+	 */
+	@Override
+	public Location getLocation(final String loc) {
+		return codec.decodeLocation(loc);
+	}
+
+	/**
+	 * Gets the password.
+	 * 
+	 * @return the password
+	 */
+	protected abstract String getPassword();
+
+	/**
+	 * Gets the pool.
+	 * 
+	 * @return the pool
+	 */
+	ConnectionPool getPool() {
+		return pool;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.mysql.IMysqlManager#getPoolStats()
+	 */
+	@Override
+	public IConnectionPoolStats getPoolStats() {
+		return pool;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#getQueryStats(int)
+	 */
+	@Override
+	public List<IQueryStats> getQueryStats(final int limit) {
+		return stats.getTop(limit);
+	}
+
+	/**
+	 * Gets the statement that renames a column, keeping its type.
+	 * 
+	 * @param table
+	 *            the table
+	 * @param column
+	 *            the column
+	 * @param newName
+	 *            the new name
+	 * @param type
+	 *            the column type
+	 * @return the sql
+	 */
+	protected abstract String getRenameColumnSql(String table, String column,
+			String newName, String type);
+
+	/**
+	 * Gets the JDBC url.
+	 * 
+	 * @return the url
+	 */
+	protected abstract String getUrl();
+
+	/**
+	 * Gets the user name.
+	 * 
+	 * @return the user name
+	 */
+	protected abstract String getUsername();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#getWriteQueueStats()
+	 */
+	@Override
+	public IWriteQueueStats getWriteQueueStats() {
+		return writeQueue;
+	}
+
+	/**
+	 * Rethrows mySQL syntax errors with a shortened message and prints
+	 * anything else.
+	 * 
+	 * @param e
+	 *            the e
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	private void handleException(final SQLException e) throws SQLException {
+		if ((e.getMessage() != null)
+				&& e.getMessage().startsWith("Du har en feil i mySQL-syntaxen;")) {
+			String temp = (e.getMessage().split(";")[0].substring(0, 36) + e
+					.getMessage().split(";")[1].substring(91));
+			temp = temp.substring(0, temp.lastIndexOf("'"));
+			throw new SQLException(temp);
+		}
+		e.printStackTrace();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#insert(java.lang
+	 * .String , java.lang.Object[], java.lang.Object[])
+	 */
+	@Override
+	public boolean insert(final String table, final Object[] column,
+			final Object[] value) {
+		final StringBuilder columns = new StringBuilder();
+		final StringBuilder values = new StringBuilder();
+		for (int i = 0; i < column.length; i++) {
+			if (i > 0) {
+				columns.append(',');
+				values.append(',');
+			}
+			columns.append(column[i]);
+			values.append('?');
+		}
+		try {
+			update("INSERT INTO " + table + "(" + columns + ") VALUES ("
+					+ values + ")", value);
+			return true;
+		} catch (final SQLException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#insertAndGetKey(java
+	 * .lang.String, java.lang.Object[])
+	 */
+	@Override
+	public long insertAndGetKey(final String sql, final Object... params)
+			throws SQLException {
+		final long start = System.nanoTime();
+		final PooledConnection pc = borrow();
+		ResultSet keys = null;
+		try {
+			final PreparedStatement statement = pc.prepare(sql, true);
+			bind(statement, params);
+			SH.getManager().debug(sql); /* Debug */
+			statement.executeUpdate();
+			keys = statement.getGeneratedKeys();
+			if (keys.next())
+				return keys.getLong(1);
+			return -1;
+		} finally {
+			if (keys != null) {
+				keys.close();
+			}
+			release(pc);
+			stats.record(sql, start);
+		}
+	}
+
+	/**
+	 * Brings the schema up to date unless that was already done since the
+	 * pool was opened.
+	 * 
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	void migrateSchema() throws SQLException {
+		if (migrated)
+			return;
+		synchronized (this) {
+			if (!migrated) {
+				new SchemaMigrator(this).migrate();
+				migrated = true;
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.mysql.IMysqlManager#open()
+	 */
+	@Override
+	public boolean open() {
+		try {
+			Class.forName(getDriverClass());
+		} catch (final ClassNotFoundException e) {
+			System.out.print("Finner ikke JDBC Driver");
+			e.printStackTrace();
+			return false;
+		}
+		if (pool != null) {
+			pool.close();
+		}
+		final int maxSize = MySQLConfiguration.getPoolMaxSize();
+		fetchSize = Math.max(1, MySQLConfiguration.getStreamFetchSize());
+		stats.setSlowThreshold(MySQLConfiguration.getSlowQueryThreshold());
+		breaker = new CircuitBreaker(
+				MySQLConfiguration.getBreakerFailureThreshold(),
+				MySQLConfiguration.getBreakerRetryInterval());
+		migrated = false;
+		pool = new ConnectionPool(getUrl(), getUsername(), getPassword(), maxSize,
+				MySQLConfiguration.getPoolIdleTimeout() * 1000L,
+				MySQLConfiguration.getPoolBorrowTimeout());
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(maxSize,
+					new ThreadFactory() {
+
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(final Runnable r) {
+							final Thread thread = new Thread(r,
+									"SurvivalHeaven-Database-"
+											+ count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+		if (writeQueue == null) {
+			writeQueue = new WriteBehindQueue(this,
+					MySQLConfiguration.getWriteBatchSize(), new WriteJournal(
+							new File(MySQLConfiguration.getJournalFile()),
+							MySQLConfiguration.getJournalMaxSize() * 1024L * 1024L));
+		}
+		try {
+			if (!checkConnection())
+				return false;
+		} catch (final SQLException e) {
+			System.out.print("Kan ikke koble til databasen!");
+			e.printStackTrace();
+			return false;
+		}
+		try {
+			migrateSchema();
+			return true;
+		} catch (final SQLException e) {
+			System.out.print("Kunne ikke oppdatere databaseskjemaet!");
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#query(java.lang.
+	 * String )
+	 */
+	@Override
+	public ResultSet query(final String query) throws SQLException {
+		final long start = System.nanoTime();
+		PooledConnection pc = null;
+		Statement statement = null;
+		try {
+			pc = borrow();
+			statement = pc.getConnection().createStatement();
+			SH.getManager().debug(query); /* Debug */
+			if (statement.execute(query))
+				return cache(statement.getResultSet());
+		} catch (final SQLException e) {
+			handleException(e);
+		} finally {
+			closeQuietly(statement);
+			release(pc);
+			stats.record(query, start);
+		}
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#query(java.lang.
+	 * String , int)
+	 */
+	@Override
+	public ResultSet query(final String query, final int ret)
+			throws SQLException {
+		final long start = System.nanoTime();
+		PooledConnection pc = null;
+		PreparedStatement statement = null;
+		try {
+			pc = borrow();
+			statement = pc.getConnection().prepareStatement(query, ret);
+			SH.getManager().debug(query); /* Debug */
+			statement.executeUpdate();
+			return cache(statement.getGeneratedKeys());
+		} catch (final SQLException e) {
+			handleException(e);
+		} finally {
+			closeQuietly(statement);
+			release(pc);
+			stats.record(query, start);
+		}
+		return null;
+	}
+
+	/**
+	 * Records the time a statement took that did not go through one of the
+	 * methods here.
+	 * 
+	 * @param sql
+	 *            the sql
+	 * @param start
+	 *            the {@link System#nanoTime()} when the call started
+	 */
+	void recordQuery(final String sql, final long start) {
+		stats.record(sql, start);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#releaseConnection
+	 * (java.sql.Connection)
+	 */
+	@Override
+	public void releaseConnection(final Connection connection) {
+		if (connection != null) {
+			release(lent.remove(connection));
+		}
+	}
+
+	/**
+	 * Hands a connection back to the pool that owns it.
+	 * 
+	 * @param pc
+	 *            the pc, may be null
+	 */
+	static void release(final PooledConnection pc) {
+		if (pc != null) {
+			pc.release();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.mysql.IMysqlManager#resetQueryStats()
+	 */
+	@Override
+	public void resetQueryStats() {
+		stats.reset();
+	}
+
+	/**
+	 * Runs a task on the server thread. While the plugin is disabling the
+	 * scheduler refuses new tasks, so the task then runs right away.
+	 * 
+	 * @param task
+	 *            the task
+	 */
+	private void runOnMainThread(final Runnable task) {
+		try {
+			Bukkit.getScheduler().runTask(SH.getPlugin(), task);
+		} catch (final RuntimeException e) {
+			task.run();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#select(java.lang.
+	 * String, java.lang.Object[])
+	 */
+	@Override
+	public ResultSet select(final String sql, final Object... params)
+			throws SQLException {
+		final long start = System.nanoTime();
+		final PooledConnection pc = borrow();
+		try {
+			final PreparedStatement statement = pc.prepare(sql, false);
+			bind(statement, params);
+			SH.getManager().debug(sql); /* Debug */
+			return cache(statement.executeQuery());
+		} finally {
+			release(pc);
+			stats.record(sql, start);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#selectAsync(java.
+	 * lang.String, java.lang.Object[])
+	 */
+	@Override
+	public Future<ResultSet> selectAsync(final String sql,
+			final Object... params) {
+		return submit(new Callable<ResultSet>() {
+
+			@Override
+			public ResultSet call() throws Exception {
+				return select(sql, params);
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#stream(java.lang.
+	 * String, info.nordbyen.survivalheaven.api.mysql.RowHandler,
+	 * java.lang.Object[])
+	 */
+	@Override
+	public int stream(final String sql, final RowHandler handler,
+			final Object... params) throws SQLException {
+		final long start = System.nanoTime();
+		final PooledConnection pc = borrow();
+		PreparedStatement statement = null;
+		try {
+			statement = pc.getConnection().prepareStatement(sql,
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			statement.setFetchSize(fetchSize);
+			bind(statement, params);
+			SH.getManager().debug(sql); /* Debug */
+			final ResultSet rs = statement.executeQuery();
+			int rows = 0;
+			while (rs.next()) {
+				handler.handleRow(rs);
+				rows++;
+			}
+			return rows;
+		} finally {
+			closeQuietly(statement);
+			release(pc);
+			stats.record(sql, start);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#submit(java.util.
+	 * concurrent.Callable)
+	 */
+	@Override
+	public <T> Future<T> submit(final Callable<T> task) {
+		if (executor == null)
+			throw new IllegalStateException("The database executor is closed");
+		return executor.submit(task);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#submit(java.util.
+	 * concurrent.Callable,
+	 * info.nordbyen.survivalheaven.api.mysql.QueryCallback)
+	 */
+	@Override
+	public <T> Future<T> submit(final Callable<T> task,
+			final QueryCallback<T> callback) {
+		return submit(new Callable<T>() {
+
+			@Override
+			public T call() throws Exception {
+				try {
+					final T result = task.call();
+					runOnMainThread(new Runnable() {
+
+						@Override
+						public void run() {
+							callback.onSuccess(result);
+						}
+					});
+					return result;
+				} catch (final Exception e) {
+					runOnMainThread(new Runnable() {
+
+						@Override
+						public void run() {
+							callback.onFailure(e);
+						}
+					});
+					throw e;
+				}
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#update(java.lang.
+	 * String, java.lang.Object[])
+	 */
+	@Override
+	public int update(final String sql, final Object... params)
+			throws SQLException {
+		final long start = System.nanoTime();
+		final PooledConnection pc = borrow();
+		try {
+			final PreparedStatement statement = pc.prepare(sql, false);
+			bind(statement, params);
+			SH.getManager().debug(sql); /* Debug */
+			return statement.executeUpdate();
+		} finally {
+			release(pc);
+			stats.record(sql, start);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IMysqlManager#updateAsync(java.
+	 * lang.String, java.lang.Object[])
+	 */
+	@Override
+	public Future<Integer> updateAsync(final String sql,
+			final Object... params) {
+		return submit(new Callable<Integer>() {
+
+			@Override
+			public Integer call() throws Exception {
+				return update(sql, params);
+			}
+		});
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+
+import org.bukkit.Bukkit;
+
+/**
+ * Stops callers from waiting on a database that is not there.
+ * 
+ * After {@code threshold} connection failures in a row the breaker opens and
+ * every borrow fails at once instead of waiting for the pool to time out.
+ * Once {@code retryInterval} milliseconds have passed a single borrow is let
+ * through as a probe; if it succeeds the breaker closes again, otherwise it
+ * stays open for another interval. Probes are never made from the server
+ * thread, so it is the write-behind flush that finds out the database is
+ * back.
+ */
+final class CircuitBreaker {
+
+	/** The SQL state used for borrows refused by an open breaker. */
+	static final String SQL_STATE = "08000";
+	/** The SQL state used when there is no pool to borrow from. */
+	static final String NO_CONNECTION_STATE = "08003";
+
+	/**
+	 * Checks whether an exception means the database could not be reached,
+	 * rather than that the statement itself was wrong. Only the connection
+	 * exception class {@code 08} counts; an exception without a state, such
+	 * as a borrow that timed out because the pool was busy, does not.
+	 * 
+	 * @param e
+	 *            the e
+	 * @return true, if it is a connection error
+	 */
+	static boolean isConnectionError(final SQLException e) {
+		if ((e instanceof SQLTransientConnectionException)
+				|| (e instanceof SQLNonTransientConnectionException))
+			return true;
+		final String state = e.getSQLState();
+		return (state != null) && state.startsWith("08");
+	}
+
+	/** The number of failures in a row that opens the breaker. */
+	private final int threshold;
+	/** How long the breaker stays open before a probe, in milliseconds. */
+	private final long retryInterval;
+	/** The failures in a row, guarded by this. */
+	private int failures = 0;
+	/** When the next probe may be made, guarded by this. */
+	private long retryAt = 0L;
+	/** Whether a probe is running, guarded by this. */
+	private boolean probing = false;
+
+	/**
+	 * Instantiates a new circuit breaker.
+	 * 
+	 * @param threshold
+	 *            the number of failures in a row that opens the breaker
+	 * @param retryInterval
+	 *            the retry interval in milliseconds
+	 */
+	CircuitBreaker(final int threshold, final long retryInterval) {
+		this.threshold = Math.max(1, threshold);
+		this.retryInterval = Math.max(0L, retryInterval);
+	}
+
+	/**
+	 * Checks whether a caller may try the database now.
+	 * 
+	 * @return true, if the caller may go ahead
+	 */
+	synchronized boolean allowRequest() {
+		if (failures < threshold)
+			return true;
+		if (probing || (System.currentTimeMillis() < retryAt)
+				|| Bukkit.isPrimaryThread())
+			return false;
+		probing = true;
+		return true;
+	}
+
+	/**
+	 * Checks if the breaker is open.
+	 * 
+	 * @return true, if the database is treated as unreachable
+	 */
+	synchronized boolean isOpen() {
+		return failures >= threshold;
+	}
+
+	/**
+	 * Records a failed attempt to reach the database.
+	 */
+	synchronized void recordFailure() {
+		probing = false;
+		if (++failures == threshold) {
+			System.out.println("Databasen svarer ikke; skrivinger lagres i journalen til den er tilbake");
+		}
+		if (failures >= threshold) {
+			retryAt = System.currentTimeMillis() + retryInterval;
+		}
+	}
+
+	/**
+	 * Records a successful attempt to reach the database.
+	 */
+	synchronized void recordSuccess() {
+		if (failures >= threshold) {
+			System.out.println("Databasen er tilgjengelig igjen");
+		}
+		failures = 0;
+		probing = false;
+	}
+}
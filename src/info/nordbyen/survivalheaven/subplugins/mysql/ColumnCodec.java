@@ -0,0 +1,373 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import info.nordbyen.survivalheaven.api.mysql.IColumnCodec;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+/**
+ * The column codecs behind {@link IColumnCodec}.
+ * 
+ * Lists and legacy dates are parsed by walking the characters instead of
+ * splitting on a regular expression or going through a
+ * {@link java.text.SimpleDateFormat}; the one {@link Calendar} each thread
+ * needs is kept in a {@link ThreadLocal}. Worlds are looked up once by name
+ * and then shared by every decoded location until the world unloads, see
+ * {@link #forgetWorld(String)}.
+ */
+final class ColumnCodec implements IColumnCodec {
+
+	/** The calendar of each thread. */
+	private static final ThreadLocal<Calendar> CALENDAR = new ThreadLocal<Calendar>() {
+
+		@Override
+		protected Calendar initialValue() {
+			final Calendar calendar = Calendar.getInstance();
+			calendar.setLenient(false);
+			return calendar;
+		}
+	};
+	/** The length of a legacy date, yyyy_MM_dd_HH_mm_ss_SSS. */
+	private static final int LEGACY_DATE_LENGTH = 23;
+
+	/**
+	 * Appends a number padded with zeros.
+	 * 
+	 * @param sb
+	 *            the string builder
+	 * @param value
+	 *            the value
+	 * @param width
+	 *            the width
+	 */
+	private static void pad(final StringBuilder sb, final int value,
+			final int width) {
+		for (int limit = 10, i = 1; i < width; i++, limit *= 10) {
+			if (value < limit) {
+				sb.append('0');
+			}
+		}
+		sb.append(value);
+	}
+
+	/**
+	 * Reads a run of digits.
+	 * 
+	 * @param value
+	 *            the value
+	 * @param start
+	 *            the index of the first digit
+	 * @param length
+	 *            the number of digits
+	 * @return the number, or -1 if a character was not a digit
+	 */
+	private static int readDigits(final String value, final int start,
+			final int length) {
+		int n = 0;
+		for (int i = start; i < (start + length); i++) {
+			final char c = value.charAt(i);
+			if ((c < '0') || (c > '9'))
+				return -1;
+			n = (n * 10) + (c - '0');
+		}
+		return n;
+	}
+
+	/** The worlds by name. */
+	private final ConcurrentHashMap<String, World> worlds = new ConcurrentHashMap<String, World>();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IColumnCodec#decodeDate(long)
+	 */
+	@Override
+	public Date decodeDate(final long millis) {
+		return new Date(millis);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IColumnCodec#decodeIntList(java
+	 * .lang.String)
+	 */
+	@Override
+	public List<Integer> decodeIntList(final String value) {
+		final List<Integer> list = new ArrayList<Integer>();
+		if (value == null)
+			return list;
+		int n = 0;
+		boolean digits = false;
+		boolean negative = false;
+		boolean malformed = false;
+		for (int i = 0; i <= value.length(); i++) {
+			final char c = (i < value.length()) ? value.charAt(i) : ',';
+			if ((c == ',') || (c == ';')) {
+				if (digits && !malformed) {
+					list.add(negative ? -n : n);
+				}
+				n = 0;
+				digits = false;
+				negative = false;
+				malformed = false;
+			} else if ((c >= '0') && (c <= '9')) {
+				n = (n * 10) + (c - '0');
+				digits = true;
+			} else if ((c == '-') && !digits && !negative) {
+				negative = true;
+			} else if (c != ' ') {
+				malformed = true;
+			}
+		}
+		return list;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IColumnCodec#decodeLocation(java
+	 * .lang.String)
+	 */
+	@Override
+	public Location decodeLocation(final String value) {
+		if ((value == null) || value.equalsIgnoreCase("no"))
+			return Bukkit.getWorlds().get(0).getSpawnLocation();
+		final int x = value.indexOf(';');
+		final int y = value.indexOf(';', x + 1);
+		final int z = value.indexOf(';', y + 1);
+		if ((x < 0) || (y < 0) || (z < 0))
+			return null;
+		int end = value.indexOf(';', z + 1);
+		if (end < 0) {
+			end = value.length();
+		}
+		try {
+			return new Location(getWorld(value.substring(0, x)),
+					Double.parseDouble(value.substring(x + 1, y)),
+					Double.parseDouble(value.substring(y + 1, z)),
+					Double.parseDouble(value.substring(z + 1, end)));
+		} catch (final NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IColumnCodec#decodeStringList(
+	 * java.lang.String)
+	 */
+	@Override
+	public List<String> decodeStringList(final String value) {
+		final List<String> list = new ArrayList<String>();
+		if (value == null)
+			return list;
+		int start = 0;
+		for (int i = 0; i <= value.length(); i++) {
+			if ((i == value.length()) || (value.charAt(i) == ',')
+					|| (value.charAt(i) == ';')) {
+				if (i > start) {
+					list.add(value.substring(start, i));
+				}
+				start = i + 1;
+			}
+		}
+		return list;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IColumnCodec#encodeDate(java.util
+	 * .Date)
+	 */
+	@Override
+	public long encodeDate(final Date date) {
+		return (date == null) ? 0L : date.getTime();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IColumnCodec#encodeIntList(java
+	 * .util.Collection)
+	 */
+	@Override
+	public String encodeIntList(final Collection<Integer> values) {
+		final StringBuilder sb = new StringBuilder(values.size() * 4);
+		for (final Integer value : values) {
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(value.intValue());
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IColumnCodec#encodeLocation(org
+	 * .bukkit.Location)
+	 */
+	@Override
+	public String encodeLocation(final Location location) {
+		return new StringBuilder(64).append(location.getWorld().getName())
+				.append(';').append(location.getX()).append(';')
+				.append(location.getY()).append(';').append(location.getZ())
+				.toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IColumnCodec#encodeStringList(
+	 * java.util.Collection)
+	 */
+	@Override
+	public String encodeStringList(final Collection<String> values) {
+		final StringBuilder sb = new StringBuilder(values.size() * 16);
+		for (final String value : values) {
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(value);
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IColumnCodec#formatLegacyDate(
+	 * java.util.Date)
+	 */
+	@Override
+	public String formatLegacyDate(final Date date) {
+		final Calendar calendar = CALENDAR.get();
+		calendar.setTime(date);
+		final StringBuilder sb = new StringBuilder(LEGACY_DATE_LENGTH);
+		pad(sb, calendar.get(Calendar.YEAR), 4);
+		sb.append('_');
+		pad(sb, calendar.get(Calendar.MONTH) + 1, 2);
+		sb.append('_');
+		pad(sb, calendar.get(Calendar.DAY_OF_MONTH), 2);
+		sb.append('_');
+		pad(sb, calendar.get(Calendar.HOUR_OF_DAY), 2);
+		sb.append('_');
+		pad(sb, calendar.get(Calendar.MINUTE), 2);
+		sb.append('_');
+		pad(sb, calendar.get(Calendar.SECOND), 2);
+		sb.append('_');
+		pad(sb, calendar.get(Calendar.MILLISECOND), 3);
+		return sb.toString();
+	}
+
+	/**
+	 * Forgets a world, so a world loaded later under the same name is looked
+	 * up again.
+	 * 
+	 * @param name
+	 *            the world name
+	 */
+	void forgetWorld(final String name) {
+		worlds.remove(name);
+	}
+
+	/**
+	 * Gets a loaded world by name.
+	 * 
+	 * @param name
+	 *            the name
+	 * @return the world, or null if it is not loaded
+	 */
+	private World getWorld(final String name) {
+		World world = worlds.get(name);
+		if (world == null) {
+			world = Bukkit.getWorld(name);
+			if (world != null) {
+				worlds.put(name, world);
+			}
+		}
+		return world;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IColumnCodec#parseLegacyDate(java
+	 * .lang.String)
+	 */
+	@Override
+	public Date parseLegacyDate(final String value) {
+		if ((value == null) || (value.length() != LEGACY_DATE_LENGTH))
+			return null;
+		for (int i = 4; i < 20; i += 3) {
+			if (value.charAt(i) != '_')
+				return null;
+		}
+		final int year = readDigits(value, 0, 4);
+		final int month = readDigits(value, 5, 2);
+		final int day = readDigits(value, 8, 2);
+		final int hour = readDigits(value, 11, 2);
+		final int minute = readDigits(value, 14, 2);
+		final int second = readDigits(value, 17, 2);
+		final int millis = readDigits(value, 20, 3);
+		if ((year | month | day | hour | minute | second | millis) < 0)
+			return null;
+		final Calendar calendar = CALENDAR.get();
+		calendar.clear();
+		calendar.set(year, month - 1, day, hour, minute, second);
+		calendar.set(Calendar.MILLISECOND, millis);
+		try {
+			return calendar.getTime();
+		} catch (final IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
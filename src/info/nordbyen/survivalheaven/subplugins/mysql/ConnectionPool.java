@@ -0,0 +1,376 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import info.nordbyen.survivalheaven.api.mysql.IConnectionPoolStats;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded JDBC connection pool.
+ * 
+ * At most {@code maxSize} connections are open at any time; a borrower that
+ * finds every connection in use waits up to {@code borrowTimeout}
+ * milliseconds before giving up. Idle connections are kept in LIFO order so
+ * the hot ones stay hot and the cold ones drift to the tail, where
+ * {@link #evictIdle()} closes them after {@code idleTimeout} milliseconds.
+ * Connections are validated on borrow unless they were handed back less than
+ * {@link #VALIDATION_BYPASS} milliseconds ago.
+ */
+final class ConnectionPool implements IConnectionPoolStats {
+
+	/** Connections returned this recently are not re-validated. */
+	private static final long VALIDATION_BYPASS = 500L;
+	/** The validation timeout in seconds. */
+	private static final int VALIDATION_TIMEOUT = 5;
+	/** The url. */
+	private final String url;
+	/** The username. */
+	private final String username;
+	/** The password. */
+	private final String password;
+	/** The max size. */
+	private final int maxSize;
+	/** The idle timeout in milliseconds. */
+	private final long idleTimeout;
+	/** The borrow timeout in milliseconds. */
+	private final long borrowTimeout;
+	/** One permit per connection that may be handed out. */
+	private final Semaphore permits;
+	/** The idle connections, most recently used first. */
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+	/** The borrowed connections. */
+	private final Map<Connection, PooledConnection> borrowed = new ConcurrentHashMap<Connection, PooledConnection>();
+	/** The open connections. */
+	private final AtomicInteger open = new AtomicInteger();
+	/** The borrow count. */
+	private final AtomicLong borrowCount = new AtomicLong();
+	/** The total borrow time in nanoseconds. */
+	private final AtomicLong borrowNanos = new AtomicLong();
+	/** The max borrow time in nanoseconds. */
+	private final AtomicLong maxBorrowNanos = new AtomicLong();
+	/** The borrow timeouts. */
+	private final AtomicLong borrowTimeouts = new AtomicLong();
+	/** The closed. */
+	private volatile boolean closed = false;
+
+	/**
+	 * Instantiates a new connection pool.
+	 * 
+	 * @param url
+	 *            the url
+	 * @param username
+	 *            the username
+	 * @param password
+	 *            the password
+	 * @param maxSize
+	 *            the max size
+	 * @param idleTimeout
+	 *            the idle timeout in milliseconds
+	 * @param borrowTimeout
+	 *            the borrow timeout in milliseconds
+	 */
+	ConnectionPool(final String url, final String username,
+			final String password, final int maxSize, final long idleTimeout,
+			final long borrowTimeout) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("maxSize must be at least 1");
+		this.url = url;
+		this.username = username;
+		this.password = password;
+		this.maxSize = maxSize;
+		this.idleTimeout = idleTimeout;
+		this.borrowTimeout = borrowTimeout;
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * Borrows a connection. It must be handed back with
+	 * {@link #release(PooledConnection)}.
+	 * 
+	 * @return the pooled connection
+	 * @throws SQLException
+	 *             if no connection could be opened or the borrow timed out
+	 */
+	PooledConnection borrow() throws SQLException {
+		if (closed)
+			throw new SQLException("The connection pool is closed",
+					CircuitBreaker.NO_CONNECTION_STATE);
+		final long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+				borrowTimeouts.incrementAndGet();
+				throw new SQLException("Timed out after " + borrowTimeout
+						+ "ms waiting for a database connection");
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection");
+		}
+		try {
+			final PooledConnection pc = take();
+			borrowed.put(pc.getConnection(), pc);
+			recordBorrow(System.nanoTime() - start);
+			return pc;
+		} catch (final SQLException e) {
+			permits.release();
+			throw e;
+		} catch (final RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes every idle connection and refuses new borrows. Borrowed
+	 * connections are closed as they are handed back.
+	 */
+	void close() {
+		closed = true;
+		PooledConnection pc;
+		while ((pc = idle.pollFirst()) != null) {
+			discard(pc);
+		}
+	}
+
+	/**
+	 * Discards a connection.
+	 * 
+	 * @param pc
+	 *            the pc
+	 */
+	private void discard(final PooledConnection pc) {
+		open.decrementAndGet();
+		pc.closeQuietly();
+	}
+
+	/**
+	 * Closes connections that have been idle longer than the idle timeout.
+	 */
+	void evictIdle() {
+		final long now = System.currentTimeMillis();
+		final Iterator<PooledConnection> it = idle.descendingIterator();
+		while (it.hasNext()) {
+			final PooledConnection pc = it.next();
+			if ((now - pc.getLastUsed()) < idleTimeout) {
+				break;
+			}
+			if (idle.removeLastOccurrence(pc)) {
+				discard(pc);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.mysql.IConnectionPoolStats#
+	 * getAverageBorrowMillis()
+	 */
+	@Override
+	public double getAverageBorrowMillis() {
+		final long count = borrowCount.get();
+		if (count == 0)
+			return 0;
+		return (borrowNanos.get() / (double) count) / 1000000D;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IConnectionPoolStats#getBorrowCount
+	 * ()
+	 */
+	@Override
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.mysql.IConnectionPoolStats#
+	 * getBorrowTimeouts()
+	 */
+	@Override
+	public long getBorrowTimeouts() {
+		return borrowTimeouts.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.mysql.IConnectionPoolStats#
+	 * getIdleConnections()
+	 */
+	@Override
+	public int getIdleConnections() {
+		return idle.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IConnectionPoolStats#getMaxBorrowMillis
+	 * ()
+	 */
+	@Override
+	public double getMaxBorrowMillis() {
+		return maxBorrowNanos.get() / 1000000D;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IConnectionPoolStats#getMaxSize()
+	 */
+	@Override
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.mysql.IConnectionPoolStats#
+	 * getOpenConnections()
+	 */
+	@Override
+	public int getOpenConnections() {
+		return open.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.mysql.IConnectionPoolStats#
+	 * getWaitingThreads()
+	 */
+	@Override
+	public int getWaitingThreads() {
+		return permits.getQueueLength();
+	}
+
+	/**
+	 * Records a borrow.
+	 * 
+	 * @param nanos
+	 *            the nanos
+	 */
+	private void recordBorrow(final long nanos) {
+		borrowCount.incrementAndGet();
+		borrowNanos.addAndGet(nanos);
+		long max = maxBorrowNanos.get();
+		while ((nanos > max) && !maxBorrowNanos.compareAndSet(max, nanos)) {
+			max = maxBorrowNanos.get();
+		}
+	}
+
+	/**
+	 * Hands a borrowed connection back to the pool. A connection that is
+	 * closed is discarded, one left in a transaction is rolled back.
+	 * 
+	 * @param pc
+	 *            the pc
+	 */
+	void release(final PooledConnection pc) {
+		if ((pc == null) || (borrowed.remove(pc.getConnection()) == null))
+			return;
+		final Connection connection = pc.getConnection();
+		try {
+			boolean reusable = !closed && !connection.isClosed();
+			if (reusable && !connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			if (reusable) {
+				pc.touch();
+				idle.offerFirst(pc);
+			} else {
+				discard(pc);
+			}
+		} catch (final SQLException e) {
+			discard(pc);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Takes a valid idle connection or opens a new one. The caller must hold a
+	 * permit.
+	 * 
+	 * @return the pooled connection
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	private PooledConnection take() throws SQLException {
+		PooledConnection pc;
+		while ((pc = idle.pollFirst()) != null) {
+			final long idleFor = System.currentTimeMillis() - pc.getLastUsed();
+			if (idleFor >= idleTimeout) {
+				discard(pc);
+				continue;
+			}
+			if ((idleFor < VALIDATION_BYPASS) || validate(pc))
+				return pc;
+			discard(pc);
+		}
+		final Connection connection = DriverManager.getConnection(url,
+				username, password);
+		open.incrementAndGet();
+		return new PooledConnection(this, connection);
+	}
+
+	/**
+	 * Validates a connection.
+	 * 
+	 * @param pc
+	 *            the pc
+	 * @return true, if the connection is still usable
+	 */
+	private boolean validate(final PooledConnection pc) {
+		try {
+			return pc.getConnection().isValid(VALIDATION_TIMEOUT);
+		} catch (final SQLException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,222 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Converts date columns stored as {@code yyyy_MM_dd_HH_mm_ss_SSS} strings to
+ * epoch milliseconds in a {@code BIGINT} column.
+ * 
+ * The table stays in use while it runs: a {@code <column>_ms} column is added,
+ * filled by id in batches of {@link #BATCH_SIZE} rows with one short
+ * transaction per batch, and only then swapped in for the old column. Rows
+ * already converted are skipped, so an interrupted conversion picks up where
+ * it stopped.
+ */
+final class DateColumnMigration extends Migration {
+
+	/** The number of rows converted per transaction. */
+	private static final int BATCH_SIZE = 1000;
+	/** The format the dates were stored in, see {@link ColumnCodec}. */
+	private static final String DATE_FORMAT = "yyyy_MM_dd_HH_mm_ss_SSS";
+	/** The table. */
+	private final String table;
+	/** The columns. */
+	private final String[] columns;
+
+	/**
+	 * Instantiates a new date column migration.
+	 * 
+	 * @param version
+	 *            the version
+	 * @param description
+	 *            the description
+	 * @param table
+	 *            the table
+	 * @param columns
+	 *            the columns
+	 */
+	DateColumnMigration(final int version, final String description,
+			final String table, final String... columns) {
+		super(version, description);
+		this.table = table;
+		this.columns = columns;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.subplugins.mysql.Migration#apply(info.nordbyen
+	 * .survivalheaven.subplugins.mysql.AbstractSqlManager)
+	 */
+	@Override
+	void apply(final AbstractSqlManager manager) throws SQLException {
+		for (final String column : columns) {
+			convert(manager, column);
+		}
+	}
+
+	/**
+	 * Converts one column.
+	 * 
+	 * @param manager
+	 *            the manager
+	 * @param column
+	 *            the column
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	private void convert(final AbstractSqlManager manager, final String column)
+			throws SQLException {
+		final String temp = column + "_ms";
+		if (getColumnType(manager, temp) == null) {
+			final Integer type = getColumnType(manager, column);
+			if ((type == null) || (type == Types.BIGINT))
+				return;
+			manager.executeUpdate("ALTER TABLE `" + table + "` ADD COLUMN `"
+					+ temp + "` BIGINT NULL");
+		}
+		if (getColumnType(manager, column) != null) {
+			fill(manager, column, temp);
+			manager.executeUpdate("ALTER TABLE `" + table + "` DROP COLUMN `"
+					+ column + "`");
+		}
+		manager.executeUpdate(manager.getRenameColumnSql(table, temp, column,
+				"BIGINT"));
+	}
+
+	/**
+	 * Copies every row not yet converted from the old column to the new one.
+	 * 
+	 * @param manager
+	 *            the manager
+	 * @param column
+	 *            the old column
+	 * @param temp
+	 *            the new column
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	private void fill(final AbstractSqlManager manager, final String column,
+			final String temp) throws SQLException {
+		long lastId = 0;
+		int converted = 0;
+		while (true) {
+			final List<long[]> rows = new ArrayList<long[]>();
+			final ResultSet rs = manager.select("SELECT `id`, `" + column
+					+ "` FROM `" + table + "` WHERE `id` > ? AND `" + temp
+					+ "` IS NULL ORDER BY `id` LIMIT " + BATCH_SIZE, lastId);
+			while (rs.next()) {
+				lastId = rs.getLong(1);
+				final Date date = manager.getCodec().parseLegacyDate(
+						rs.getString(2));
+				rows.add(new long[] { lastId,
+						manager.getCodec().encodeDate(date) });
+			}
+			if (rows.isEmpty()) {
+				break;
+			}
+			final Connection connection = manager.getConnection();
+			try {
+				connection.setAutoCommit(false);
+				final PreparedStatement statement = connection
+						.prepareStatement("UPDATE `" + table + "` SET `" + temp
+								+ "` = ? WHERE `id` = ?");
+				try {
+					for (final long[] row : rows) {
+						statement.setLong(1, row[1]);
+						statement.setLong(2, row[0]);
+						statement.addBatch();
+					}
+					statement.executeBatch();
+					connection.commit();
+				} finally {
+					statement.close();
+				}
+			} finally {
+				manager.releaseConnection(connection);
+			}
+			converted += rows.size();
+			System.out.println("[SurvivalHeaven] " + table + "." + column
+					+ ": " + converted + " rader konvertert");
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.subplugins.mysql.Migration#getChecksum()
+	 */
+	@Override
+	long getChecksum() {
+		final StringBuilder sb = new StringBuilder(table);
+		for (final String column : columns) {
+			sb.append(',').append(column);
+		}
+		return checksum(sb.append(':').append(DATE_FORMAT).toString());
+	}
+
+	/**
+	 * Gets the JDBC type of a column.
+	 * 
+	 * @param manager
+	 *            the manager
+	 * @param column
+	 *            the column
+	 * @return the type from {@link Types}, or null if there is no such column
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	private Integer getColumnType(final AbstractSqlManager manager,
+			final String column) throws SQLException {
+		final Connection connection = manager.getConnection();
+		try {
+			final DatabaseMetaData meta = connection.getMetaData();
+			final String escape = meta.getSearchStringEscape();
+			final ResultSet rs = meta.getColumns(connection.getCatalog(), null,
+					table.replace("_", escape + "_"),
+					column.replace("_", escape + "_"));
+			try {
+				return rs.next() ? rs.getInt("DATA_TYPE") : null;
+			} finally {
+				rs.close();
+			}
+		} finally {
+			manager.releaseConnection(connection);
+		}
+	}
+}
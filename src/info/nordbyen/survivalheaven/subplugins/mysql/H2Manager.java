@@ -0,0 +1,122 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import java.io.File;
+
+/**
+ * An embedded, file-backed database running inside the server process.
+ * 
+ * H2 runs in its MySQL compatibility mode with lower case identifiers, so the
+ * same schema and queries work as against a MySQL server. The H2 jar must be
+ * on the server class path.
+ */
+public final class H2Manager extends AbstractSqlManager {
+
+	/** The database file, without extension. */
+	private final String file;
+
+	/**
+	 * Instantiates a new h2 manager using the file from the configuration.
+	 */
+	public H2Manager() {
+		this(MySQLConfiguration.getEmbeddedFile());
+	}
+
+	/**
+	 * Instantiates a new h2 manager.
+	 * 
+	 * @param file
+	 *            the database file, without extension
+	 */
+	public H2Manager(final String file) {
+		this.file = new File(file).getAbsolutePath();
+		open();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.subplugins.mysql.AbstractSqlManager#getDriverClass
+	 * ()
+	 */
+	@Override
+	protected String getDriverClass() {
+		return "org.h2.Driver";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.subplugins.mysql.AbstractSqlManager#getPassword
+	 * ()
+	 */
+	@Override
+	protected String getPassword() {
+		return "";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.subplugins.mysql.AbstractSqlManager#
+	 * getRenameColumnSql(java.lang.String, java.lang.String,
+	 * java.lang.String, java.lang.String)
+	 */
+	@Override
+	protected String getRenameColumnSql(final String table,
+			final String column, final String newName, final String type) {
+		return "ALTER TABLE `" + table + "` ALTER COLUMN `" + column
+				+ "` RENAME TO `" + newName + "`";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.subplugins.mysql.AbstractSqlManager#getUrl()
+	 */
+	@Override
+	protected String getUrl() {
+		return "jdbc:h2:" + file + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE"
+				+ ";CASE_INSENSITIVE_IDENTIFIERS=TRUE";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.subplugins.mysql.AbstractSqlManager#getUsername
+	 * ()
+	 */
+	@Override
+	protected String getUsername() {
+		return "sa";
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A migration that creates one index with a plain {@code CREATE INDEX}.
+ * 
+ * The index is only created if the table does not have it yet. The DDL
+ * commits on its own, so a run that was interrupted before it was recorded
+ * would otherwise fail on the index it had already made. The checksum is that
+ * of a {@link SqlMigration} of the same statement, so a migration that was a
+ * {@link SqlMigration} when it was applied can become an index migration
+ * without changing.
+ */
+final class IndexMigration extends Migration {
+
+	/** The table. */
+	private final String table;
+	/** The index. */
+	private final String index;
+	/** The statement. */
+	private final SqlMigration statement;
+
+	/**
+	 * Instantiates a new index migration.
+	 * 
+	 * @param version
+	 *            the version
+	 * @param description
+	 *            the description
+	 * @param table
+	 *            the table
+	 * @param index
+	 *            the index the statement creates
+	 * @param statement
+	 *            the statement
+	 */
+	IndexMigration(final int version, final String description,
+			final String table, final String index, final String statement) {
+		super(version, description);
+		this.table = table;
+		this.index = index;
+		this.statement = new SqlMigration(version, description, statement);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.subplugins.mysql.Migration#apply(info.nordbyen
+	 * .survivalheaven.subplugins.mysql.AbstractSqlManager)
+	 */
+	@Override
+	void apply(final AbstractSqlManager manager) throws SQLException {
+		if (!exists(manager)) {
+			statement.apply(manager);
+		}
+	}
+
+	/**
+	 * Checks whether the table has the index.
+	 * 
+	 * @param manager
+	 *            the manager
+	 * @return true, if it has
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	private boolean exists(final AbstractSqlManager manager)
+			throws SQLException {
+		final Connection connection = manager.getConnection();
+		try {
+			final DatabaseMetaData meta = connection.getMetaData();
+			final ResultSet rs = meta.getIndexInfo(connection.getCatalog(),
+					null, table, false, false);
+			try {
+				while (rs.next()) {
+					if (index.equalsIgnoreCase(rs.getString("INDEX_NAME")))
+						return true;
+				}
+				return false;
+			} finally {
+				rs.close();
+			}
+		} finally {
+			manager.releaseConnection(connection);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.subplugins.mysql.Migration#getChecksum()
+	 */
+	@Override
+	long getChecksum() {
+		return statement.getChecksum();
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import info.nordbyen.survivalheaven.api.util.IpAddress;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates the {@code player_ips} table, the reverse index from address to
+ * player, and fills it from the {@code ips} column of {@code players}.
+ * 
+ * Addresses are stored as two {@code BIGINT} columns, see {@link IpAddress}.
+ * The table is dropped and created again before it is filled, so an
+ * interrupted run is simply started over. Players are read by id in batches of {@link #BATCH_SIZE}
+ * with one short transaction per batch.
+ */
+final class IpIndexMigration extends Migration {
+
+	/** The number of players indexed per transaction. */
+	private static final int BATCH_SIZE = 1000;
+	/** The statements that create the table. */
+	private static final String[] DDL = {
+			"CREATE TABLE IF NOT EXISTS `player_ips` ("
+					+ "`ip_high` BIGINT NOT NULL, "
+					+ "`ip_low` BIGINT NOT NULL, "
+					+ "`playeruuid` VARCHAR(255) NOT NULL, "
+					+ "`first_seen` BIGINT NOT NULL, "
+					+ "`last_seen` BIGINT NOT NULL, "
+					+ "PRIMARY KEY (`ip_high`, `ip_low`, `playeruuid`) );",
+			"CREATE INDEX `idx_player_ips_playeruuid` "
+					+ "ON `player_ips` (`playeruuid`)" };
+
+	/**
+	 * Instantiates a new ip index migration.
+	 * 
+	 * @param version
+	 *            the version
+	 * @param description
+	 *            the description
+	 */
+	IpIndexMigration(final int version, final String description) {
+		super(version, description);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.subplugins.mysql.Migration#apply(info.nordbyen
+	 * .survivalheaven.subplugins.mysql.AbstractSqlManager)
+	 */
+	@Override
+	void apply(final AbstractSqlManager manager) throws SQLException {
+		manager.executeUpdate("DROP TABLE IF EXISTS `player_ips`");
+		for (final String statement : DDL) {
+			manager.executeUpdate(statement);
+		}
+		long lastId = 0;
+		int indexed = 0;
+		while (true) {
+			final List<Object[]> rows = new ArrayList<Object[]>();
+			final ResultSet rs = manager.select("SELECT `id`, `uuid`, `ips`, "
+					+ "`firstlogin`, `lastlogin` FROM `players` WHERE `id` > ? "
+					+ "ORDER BY `id` LIMIT " + BATCH_SIZE, lastId);
+			int players = 0;
+			while (rs.next()) {
+				lastId = rs.getLong(1);
+				players++;
+				final List<IpAddress> seen = new ArrayList<IpAddress>();
+				for (final String ip : manager.getCodec().decodeStringList(
+						rs.getString(3))) {
+					final IpAddress address = IpAddress.parse(ip);
+					if ((address == null) || seen.contains(address)) {
+						continue;
+					}
+					seen.add(address);
+					rows.add(new Object[] { address.getHigh(),
+							address.getLow(), rs.getString(2), rs.getLong(4),
+							rs.getLong(5) });
+				}
+			}
+			if (players == 0) {
+				break;
+			}
+			final Connection connection = manager.getConnection();
+			try {
+				connection.setAutoCommit(false);
+				final PreparedStatement statement = connection
+						.prepareStatement("INSERT INTO `player_ips` ( "
+								+ "`ip_high`, `ip_low`, `playeruuid`, "
+								+ "`first_seen`, `last_seen` ) "
+								+ "VALUES ( ?, ?, ?, ?, ? )");
+				try {
+					for (final Object[] row : rows) {
+						AbstractSqlManager.bind(statement, row);
+						statement.addBatch();
+					}
+					statement.executeBatch();
+					connection.commit();
+				} finally {
+					statement.close();
+				}
+			} finally {
+				manager.releaseConnection(connection);
+			}
+			indexed += players;
+			System.out.println("[SurvivalHeaven] player_ips: " + indexed
+					+ " spillere indeksert");
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.subplugins.mysql.Migration#getChecksum()
+	 */
+	@Override
+	long getChecksum() {
+		final StringBuilder sb = new StringBuilder();
+		for (final String statement : DDL) {
+			sb.append(statement).append(";\n");
+		}
+		return checksum(sb.toString());
+	}
+}
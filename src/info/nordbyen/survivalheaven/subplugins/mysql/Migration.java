@@ -0,0 +1,112 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import java.io.UnsupportedEncodingException;
+import java.sql.SQLException;
+import java.util.zip.CRC32;
+
+/**
+ * One numbered step of the database schema, applied once by
+ * {@link SchemaMigrator} and recorded in the {@code schema_version} table with
+ * its checksum. A migration must never change after it has been released;
+ * the checksum is there to catch it if one does.
+ */
+abstract class Migration {
+
+	/**
+	 * Computes a checksum of a text.
+	 * 
+	 * @param text
+	 *            the text
+	 * @return the checksum
+	 */
+	static long checksum(final String text) {
+		final CRC32 crc = new CRC32();
+		try {
+			crc.update(text.getBytes("UTF-8"));
+		} catch (final UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		return crc.getValue();
+	}
+
+	/** The version. */
+	private final int version;
+	/** The description. */
+	private final String description;
+
+	/**
+	 * Instantiates a new migration.
+	 * 
+	 * @param version
+	 *            the version
+	 * @param description
+	 *            the description
+	 */
+	Migration(final int version, final String description) {
+		this.version = version;
+		this.description = description;
+	}
+
+	/**
+	 * Applies the migration. A migration that is interrupted half way is run
+	 * again from the start on the next startup, so every step must be safe to
+	 * repeat.
+	 * 
+	 * @param manager
+	 *            the manager
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	abstract void apply(AbstractSqlManager manager) throws SQLException;
+
+	/**
+	 * Gets the checksum of what the migration does.
+	 * 
+	 * @return the checksum
+	 */
+	abstract long getChecksum();
+
+	/**
+	 * Gets the description.
+	 * 
+	 * @return the description
+	 */
+	String getDescription() {
+		return description;
+	}
+
+	/**
+	 * Gets the version.
+	 * 
+	 * @return the version
+	 */
+	int getVersion() {
+		return version;
+	}
+}
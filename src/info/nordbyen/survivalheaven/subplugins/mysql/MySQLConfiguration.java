@@ -38,6 +38,38 @@ public class MySQLConfiguration extends CustomConfiguration {
 	/** The cfg. */
 	private static MySQLConfiguration cfg;
 
+	/**
+	 * Gets the storage backend, either "mysql" or "h2" for the embedded
+	 * file-backed database.
+	 * 
+	 * @return the backend
+	 */
+	public static String getBackend() {
+		getInstance().reload();
+		return getInstance().getString("backend");
+	}
+
+	/**
+	 * Gets the number of connection failures in a row after which calls fail
+	 * at once instead of waiting for the database.
+	 * 
+	 * @return the breaker failure threshold
+	 */
+	public static int getBreakerFailureThreshold() {
+		getInstance().reload();
+		return getInstance().getInt("breaker.failure-threshold");
+	}
+
+	/**
+	 * Gets how long calls fail at once before the database is tried again.
+	 * 
+	 * @return the breaker retry interval in milliseconds
+	 */
+	public static long getBreakerRetryInterval() {
+		getInstance().reload();
+		return getInstance().getLong("breaker.retry-interval");
+	}
+
 	/**
 	 * Gets the database name.
 	 * 
@@ -48,6 +80,17 @@ public class MySQLConfiguration extends CustomConfiguration {
 		return getInstance().getString("database");
 	}
 
+	/**
+	 * Gets the file the embedded database is stored in, without the file
+	 * extension.
+	 * 
+	 * @return the embedded file
+	 */
+	public static String getEmbeddedFile() {
+		getInstance().reload();
+		return getInstance().getString("embedded.file");
+	}
+
 	/**
 	 * Gets the host name.
 	 * 
@@ -68,6 +111,77 @@ public class MySQLConfiguration extends CustomConfiguration {
 		return getInstance().getInt("port");
 	}
 
+	/**
+	 * Gets the file writes are journaled to while the database is
+	 * unreachable.
+	 * 
+	 * @return the journal file
+	 */
+	public static String getJournalFile() {
+		getInstance().reload();
+		return getInstance().getString("journal.file");
+	}
+
+	/**
+	 * Gets how large the journal may grow before writes are dropped.
+	 * 
+	 * @return the journal max size in megabytes
+	 */
+	public static long getJournalMaxSize() {
+		getInstance().reload();
+		return getInstance().getLong("journal.max-size");
+	}
+
+	/**
+	 * Gets how long a caller may wait for a pooled connection.
+	 * 
+	 * @return the borrow timeout in milliseconds
+	 */
+	public static long getPoolBorrowTimeout() {
+		getInstance().reload();
+		return getInstance().getLong("pool.borrow-timeout");
+	}
+
+	/**
+	 * Gets how long an unused connection is kept open.
+	 * 
+	 * @return the idle timeout in seconds
+	 */
+	public static long getPoolIdleTimeout() {
+		getInstance().reload();
+		return getInstance().getLong("pool.idle-timeout");
+	}
+
+	/**
+	 * Gets the maximum number of open connections.
+	 * 
+	 * @return the pool max size
+	 */
+	public static int getPoolMaxSize() {
+		getInstance().reload();
+		return getInstance().getInt("pool.max-size");
+	}
+
+	/**
+	 * Gets how long a statement may take before it is logged as slow.
+	 * 
+	 * @return the slow query threshold in milliseconds, 0 to log nothing
+	 */
+	public static long getSlowQueryThreshold() {
+		getInstance().reload();
+		return getInstance().getLong("stats.slow-query-threshold");
+	}
+
+	/**
+	 * Gets the number of rows fetched at a time when a query is streamed.
+	 * 
+	 * @return the stream fetch size
+	 */
+	public static int getStreamFetchSize() {
+		getInstance().reload();
+		return getInstance().getInt("stream.fetch-size");
+	}
+
 	/**
 	 * Gets the single instance of MySQLConfiguration.
 	 * 
@@ -100,6 +214,26 @@ public class MySQLConfiguration extends CustomConfiguration {
 		return getInstance().getString("pass");
 	}
 
+	/**
+	 * Gets the number of pending writes that starts a flush.
+	 * 
+	 * @return the write batch size
+	 */
+	public static int getWriteBatchSize() {
+		getInstance().reload();
+		return getInstance().getInt("write-behind.batch-size");
+	}
+
+	/**
+	 * Gets how often the write-behind queue is flushed.
+	 * 
+	 * @return the flush interval in milliseconds
+	 */
+	public static long getWriteFlushInterval() {
+		getInstance().reload();
+		return getInstance().getLong("write-behind.flush-interval");
+	}
+
 	/**
 	 * Instantiates a new my sql configuration.
 	 */
@@ -115,6 +249,9 @@ public class MySQLConfiguration extends CustomConfiguration {
 	 * Save default.
 	 */
 	private void saveDefault() {
+		if (!contains("backend")) {
+			set("backend", "mysql");
+		}
 		if (!contains("host")) {
 			set("host", "localhost");
 		}
@@ -130,6 +267,42 @@ public class MySQLConfiguration extends CustomConfiguration {
 		if (!contains("pass")) {
 			set("pass", "");
 		}
+		if (!contains("embedded.file")) {
+			set("embedded.file", "./plugins/SurvivalHeaven/database");
+		}
+		if (!contains("pool.max-size")) {
+			set("pool.max-size", 8);
+		}
+		if (!contains("pool.idle-timeout")) {
+			set("pool.idle-timeout", 300);
+		}
+		if (!contains("pool.borrow-timeout")) {
+			set("pool.borrow-timeout", 5000);
+		}
+		if (!contains("stats.slow-query-threshold")) {
+			set("stats.slow-query-threshold", 50);
+		}
+		if (!contains("stream.fetch-size")) {
+			set("stream.fetch-size", 1000);
+		}
+		if (!contains("write-behind.batch-size")) {
+			set("write-behind.batch-size", 500);
+		}
+		if (!contains("write-behind.flush-interval")) {
+			set("write-behind.flush-interval", 1000);
+		}
+		if (!contains("journal.file")) {
+			set("journal.file", "./plugins/SurvivalHeaven/mysql-journal.dat");
+		}
+		if (!contains("journal.max-size")) {
+			set("journal.max-size", 64);
+		}
+		if (!contains("breaker.failure-threshold")) {
+			set("breaker.failure-threshold", 3);
+		}
+		if (!contains("breaker.retry-interval")) {
+			set("breaker.retry-interval", 5000);
+		}
 		save();
 	}
 }
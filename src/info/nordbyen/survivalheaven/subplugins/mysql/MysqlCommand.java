@@ -0,0 +1,255 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import info.nordbyen.survivalheaven.SH;
+import info.nordbyen.survivalheaven.api.blockdata.IOwnershipQueueStats;
+import info.nordbyen.survivalheaven.api.command.AbstractCommand;
+import info.nordbyen.survivalheaven.api.mysql.IConnectionPoolStats;
+import info.nordbyen.survivalheaven.api.mysql.IQueryStats;
+import info.nordbyen.survivalheaven.api.mysql.IWriteQueueStats;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+/**
+ * The Class MysqlCommand.
+ */
+public class MysqlCommand extends AbstractCommand {
+
+	/** The instance. */
+	static MysqlCommand instance = null;
+
+	/**
+	 * Clear command.
+	 */
+	public static void clearCommand() {
+		instance = null;
+	}
+
+	/**
+	 * Inits the command.
+	 */
+	public static void initCommand() {
+		if (instance == null) {
+			instance = new MysqlCommand();
+		}
+	}
+
+	/**
+	 * Instantiates a new mysql command.
+	 */
+	private MysqlCommand() {
+		super("mysql", "/<command> [pool|queue|blocks|top [antall]|reset]", "Viser status for databasen",
+				Arrays.asList(new String[] { "db" }));
+	}
+
+	/**
+	 * Format.
+	 * 
+	 * @param millis
+	 *            the millis
+	 * @return the string
+	 */
+	private String format(final double millis) {
+		return String.format("%.2fms", millis);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.command.AbstractCommand#onCommand(org.
+	 * bukkit.command .CommandSender, org.bukkit.command.Command,
+	 * java.lang.String, java.lang.String[])
+	 */
+	@Override
+	public boolean onCommand(final CommandSender sender, final Command command,
+			final String label, final String[] args) {
+		if (!isAuthorized(sender, "sh.mysql")) {
+			sender.sendMessage(ChatColor.RED
+					+ "Du har ikke tillatelse til dette");
+			return true;
+		}
+		if ((args.length == 0) || args[0].equalsIgnoreCase("pool"))
+			return pool(sender);
+		if (args[0].equalsIgnoreCase("queue"))
+			return queue(sender);
+		if (args[0].equalsIgnoreCase("blocks"))
+			return blocks(sender);
+		if (args[0].equalsIgnoreCase("top"))
+			return top(sender, args);
+		if (args[0].equalsIgnoreCase("reset")) {
+			SH.getManager().getMysqlManager().resetQueryStats();
+			sender.sendMessage(ChatColor.GREEN
+					+ "Sporringsstatistikken er nullstilt");
+			return true;
+		}
+		sender.sendMessage(ChatColor.RED
+				+ "Bruk: /mysql [pool|queue|blocks|top [antall]|reset]");
+		return true;
+	}
+
+	/**
+	 * Blocks.
+	 * 
+	 * @param sender
+	 *            the sender
+	 * @return true, if successful
+	 */
+	private boolean blocks(final CommandSender sender) {
+		final IOwnershipQueueStats stats = SH.getManager().getBlockManager()
+				.getQueueStats();
+		if (stats == null) {
+			sender.sendMessage(ChatColor.RED + "Blokkbeskyttelse er ikke aktiv");
+			return true;
+		}
+		sender.sendMessage(ChatColor.GOLD + "********** Blokkeiere **********");
+		sender.sendMessage(ChatColor.YELLOW + "Venter: " + ChatColor.GRAY
+				+ stats.getDepth() + "/" + stats.getCapacity() + " (maks "
+				+ stats.getMaxDepth() + ")");
+		sender.sendMessage(ChatColor.YELLOW + "Skrevet: " + ChatColor.GRAY
+				+ stats.getWrittenRows() + " i " + stats.getStatementCount()
+				+ " sporringer (" + stats.getFallbackRows()
+				+ " via skrivekoen)");
+		sender.sendMessage(ChatColor.YELLOW + "Ventet paa plass: "
+				+ ChatColor.GRAY + stats.getBlockedAdds() + " ganger, "
+				+ format(stats.getBlockedMillis()) + " ("
+				+ stats.getBlockedTimeouts() + " ga opp)");
+		return true;
+	}
+
+	/**
+	 * Pool.
+	 * 
+	 * @param sender
+	 *            the sender
+	 * @return true, if successful
+	 */
+	private boolean pool(final CommandSender sender) {
+		final IConnectionPoolStats stats = SH.getManager().getMysqlManager()
+				.getPoolStats();
+		if (stats == null) {
+			sender.sendMessage(ChatColor.RED + "Ikke koblet til databasen");
+			return true;
+		}
+		sender.sendMessage(ChatColor.GOLD + "********** Database-pool **********");
+		sender.sendMessage(ChatColor.YELLOW + "Tilkoblinger: " + ChatColor.GRAY
+				+ stats.getOpenConnections() + "/" + stats.getMaxSize() + " ("
+				+ stats.getIdleConnections() + " ledige)");
+		sender.sendMessage(ChatColor.YELLOW + "Venter: " + ChatColor.GRAY
+				+ stats.getWaitingThreads() + " traader");
+		sender.sendMessage(ChatColor.YELLOW + "Laan: " + ChatColor.GRAY
+				+ stats.getBorrowCount() + " (snitt "
+				+ format(stats.getAverageBorrowMillis()) + ", maks "
+				+ format(stats.getMaxBorrowMillis()) + ", "
+				+ stats.getBorrowTimeouts() + " tidsavbrudd)");
+		return true;
+	}
+
+	/**
+	 * Queue.
+	 * 
+	 * @param sender
+	 *            the sender
+	 * @return true, if successful
+	 */
+	private boolean queue(final CommandSender sender) {
+		final IWriteQueueStats stats = SH.getManager().getMysqlManager()
+				.getWriteQueueStats();
+		if (stats == null) {
+			sender.sendMessage(ChatColor.RED + "Ikke koblet til databasen");
+			return true;
+		}
+		sender.sendMessage(ChatColor.GOLD + "********** Skrivekoe **********");
+		sender.sendMessage(ChatColor.YELLOW + "Venter: " + ChatColor.GRAY
+				+ stats.getPendingWrites() + " skrivinger");
+		sender.sendMessage(ChatColor.YELLOW + "Skrevet: " + ChatColor.GRAY
+				+ stats.getFlushedWrites() + " i " + stats.getBatchCount()
+				+ " batcher (" + stats.getCoalescedWrites() + " slaatt sammen)");
+		sender.sendMessage(ChatColor.YELLOW + "Siste flush: " + ChatColor.GRAY
+				+ format(stats.getLastFlushMillis()) + ", "
+				+ stats.getFailedWrites() + " feilet");
+		sender.sendMessage(ChatColor.YELLOW + "Journal: " + ChatColor.GRAY
+				+ stats.getJournaledWrites() + " skrivinger, "
+				+ (stats.getJournalSize() / 1024) + " KiB");
+		sender.sendMessage(ChatColor.YELLOW + "Databasen: "
+				+ (stats.isDatabaseAvailable() ? ChatColor.GREEN + "tilgjengelig"
+						: ChatColor.RED + "utilgjengelig"));
+		return true;
+	}
+
+	/**
+	 * Top.
+	 * 
+	 * @param sender
+	 *            the sender
+	 * @param args
+	 *            the args
+	 * @return true, if successful
+	 */
+	private boolean top(final CommandSender sender, final String[] args) {
+		int limit = 5;
+		if (args.length > 1) {
+			try {
+				limit = Math.max(1, Integer.parseInt(args[1]));
+			} catch (final NumberFormatException e) {
+				sender.sendMessage(ChatColor.RED + args[1] + " er ikke et tall");
+				return true;
+			}
+		}
+		final List<IQueryStats> top = SH.getManager().getMysqlManager()
+				.getQueryStats(limit);
+		sender.sendMessage(ChatColor.GOLD + "********** Tregeste sporringer **********");
+		if (top.isEmpty()) {
+			sender.sendMessage(ChatColor.GRAY + "Ingen sporringer enda");
+			return true;
+		}
+		int i = 1;
+		for (final IQueryStats stats : top) {
+			String sql = stats.getSql();
+			if (sql.length() > 100) {
+				sql = sql.substring(0, 97) + "...";
+			}
+			sender.sendMessage(ChatColor.YELLOW + "#" + i++ + " "
+					+ ChatColor.GRAY + format(stats.getTotalMillis())
+					+ " totalt, " + stats.getCount() + "x ("
+					+ stats.getMainThreadCount() + " paa server-traaden)");
+			sender.sendMessage(ChatColor.GRAY + "   p50 "
+					+ format(stats.getPercentileMillis(50)) + ", p95 "
+					+ format(stats.getPercentileMillis(95)) + ", p99 "
+					+ format(stats.getPercentileMillis(99)) + ", maks "
+					+ format(stats.getMaxMillis()));
+			sender.sendMessage(ChatColor.WHITE + "   " + sql);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import info.nordbyen.survivalheaven.SH;
+import info.nordbyen.survivalheaven.api.mysql.IMysqlManager;
+import info.nordbyen.survivalheaven.api.subplugin.SubPlugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * The Class MysqlPlugin.
+ * 
+ * Housekeeping for the connection pool and the /mysql command. The pool
+ * itself is closed by the main plugin after every other subplugin has been
+ * disabled, so their last writes still reach the database.
+ */
+public class MysqlPlugin extends SubPlugin {
+
+	/**
+	 * The Class EvictionTask.
+	 */
+	private class EvictionTask extends BukkitRunnable {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			final IMysqlManager manager = SH.getManager().getMysqlManager();
+			if (manager instanceof AbstractSqlManager) {
+				final ConnectionPool pool = ((AbstractSqlManager) manager)
+						.getPool();
+				if (pool != null) {
+					pool.evictIdle();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The Class FlushTask.
+	 */
+	private class FlushTask extends BukkitRunnable {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			SH.getManager().getMysqlManager().flushWrites();
+		}
+	}
+
+	/**
+	 * The Class WorldListener.
+	 * 
+	 * Drops unloaded worlds from the codec's world cache so stale World
+	 * references are not handed out for decoded locations.
+	 */
+	private class WorldListener implements Listener {
+
+		/**
+		 * On world unload.
+		 * 
+		 * @param event
+		 *            the event
+		 */
+		@EventHandler
+		public void onWorldUnload(final WorldUnloadEvent event) {
+			final IMysqlManager manager = SH.getManager().getMysqlManager();
+			if (manager instanceof AbstractSqlManager) {
+				((AbstractSqlManager) manager).forgetWorld(event.getWorld()
+						.getName());
+			}
+		}
+	}
+
+	/** The eviction task. */
+	private BukkitTask evictionTask = null;
+	/** The flush task. */
+	private BukkitTask flushTask = null;
+
+	/**
+	 * Instantiates a new mysql plugin.
+	 * 
+	 * @param name
+	 *            the name
+	 */
+	public MysqlPlugin(final String name) {
+		super(name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.subplugin.SubPlugin#disable()
+	 */
+	@Override
+	protected void disable() {
+		if (evictionTask != null) {
+			evictionTask.cancel();
+			evictionTask = null;
+		}
+		if (flushTask != null) {
+			flushTask.cancel();
+			flushTask = null;
+		}
+		MysqlCommand.clearCommand();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.subplugin.SubPlugin#enable()
+	 */
+	@Override
+	protected void enable() {
+		MysqlCommand.initCommand();
+		Bukkit.getPluginManager().registerEvents(new WorldListener(),
+				getPlugin());
+		if (evictionTask == null) {
+			evictionTask = new EvictionTask().runTaskTimerAsynchronously(
+					getPlugin(), 20 * 30L, 20 * 30L);
+		}
+		if (flushTask == null) {
+			final long ticks = Math.max(1L,
+					MySQLConfiguration.getWriteFlushInterval() / 50L);
+			flushTask = new FlushTask().runTaskTimerAsynchronously(
+					getPlugin(), ticks, ticks);
+		}
+	}
+}
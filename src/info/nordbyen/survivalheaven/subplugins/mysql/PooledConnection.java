@@ -0,0 +1,170 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A physical connection owned by a {@link ConnectionPool}, together with the
+ * prepared statements that have been parsed on it. It is always handed back
+ * to the pool that opened it, even if the manager has opened a new pool since.
+ * 
+ * Only one thread holds a pooled connection at a time, so the statement cache
+ * needs no locking.
+ */
+final class PooledConnection {
+
+	/** The most statements kept prepared on one connection. */
+	private static final int STATEMENT_CACHE_SIZE = 64;
+	/** The pool that owns the connection. */
+	private final ConnectionPool pool;
+	/** The connection. */
+	private final Connection connection;
+	/** The prepared statements, keyed by SQL text, least recently used first. */
+	private final LinkedHashMap<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(
+			16, 0.75F, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				final Map.Entry<String, PreparedStatement> eldest) {
+			if (size() <= STATEMENT_CACHE_SIZE)
+				return false;
+			closeQuietly(eldest.getValue());
+			return true;
+		}
+	};
+	/** When the connection was last handed back to the pool. */
+	private volatile long lastUsed;
+
+	/**
+	 * Instantiates a new pooled connection.
+	 * 
+	 * @param pool
+	 *            the pool that owns the connection
+	 * @param connection
+	 *            the connection
+	 */
+	PooledConnection(final ConnectionPool pool, final Connection connection) {
+		this.pool = pool;
+		this.connection = connection;
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Closes a statement, ignoring errors.
+	 * 
+	 * @param statement
+	 *            the statement
+	 */
+	private static void closeQuietly(final Statement statement) {
+		try {
+			statement.close();
+		} catch (final SQLException e) {
+		}
+	}
+
+	/**
+	 * Closes the physical connection, ignoring errors.
+	 */
+	void closeQuietly() {
+		for (final PreparedStatement statement : statements.values()) {
+			closeQuietly(statement);
+		}
+		statements.clear();
+		try {
+			connection.close();
+		} catch (final SQLException e) {
+		}
+	}
+
+	/**
+	 * Gets the connection.
+	 * 
+	 * @return the connection
+	 */
+	Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Gets the last used.
+	 * 
+	 * @return the last used
+	 */
+	long getLastUsed() {
+		return lastUsed;
+	}
+
+	/**
+	 * Gets a prepared statement for the SQL, parsing it only the first time it
+	 * is seen on this connection. The statement stays open and must not be
+	 * closed by the caller.
+	 * 
+	 * @param sql
+	 *            the sql
+	 * @param generatedKeys
+	 *            whether the statement should return generated keys
+	 * @return the prepared statement
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	PreparedStatement prepare(final String sql, final boolean generatedKeys)
+			throws SQLException {
+		final String key = generatedKeys ? "#keys#" + sql : sql;
+		PreparedStatement statement = statements.get(key);
+		if ((statement == null) || statement.isClosed()) {
+			statement = generatedKeys ? connection.prepareStatement(sql,
+					Statement.RETURN_GENERATED_KEYS) : connection
+					.prepareStatement(sql);
+			statements.put(key, statement);
+		} else {
+			statement.clearParameters();
+		}
+		return statement;
+	}
+
+	/**
+	 * Hands the connection back to the pool that owns it.
+	 */
+	void release() {
+		pool.release(this);
+	}
+
+	/**
+	 * Marks the connection as used right now.
+	 */
+	void touch() {
+		lastUsed = System.currentTimeMillis();
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import info.nordbyen.survivalheaven.api.mysql.IQueryStats;
+
+import java.util.Arrays;
+
+/**
+ * The timing of one statement shape. Percentiles are taken from the last
+ * {@link #SAMPLES} runs, so they follow what the server is doing now rather
+ * than what it did at startup.
+ */
+final class QueryShape implements IQueryStats {
+
+	/** The number of recent runs kept for percentiles. */
+	private static final int SAMPLES = 1024;
+	/** The sql. */
+	private final String sql;
+	/** The recent run times in nanoseconds, used as a ring buffer. */
+	private final long[] samples = new long[SAMPLES];
+	/** The count. */
+	private long count = 0;
+	/** The main thread count. */
+	private long mainThreadCount = 0;
+	/** The total time in nanoseconds. */
+	private long totalNanos = 0;
+	/** The max time in nanoseconds. */
+	private long maxNanos = 0;
+
+	/**
+	 * Instantiates a new query shape.
+	 * 
+	 * @param sql
+	 *            the normalized sql
+	 */
+	QueryShape(final String sql) {
+		this.sql = sql;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.mysql.IQueryStats#getCount()
+	 */
+	@Override
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IQueryStats#getMainThreadCount()
+	 */
+	@Override
+	public synchronized long getMainThreadCount() {
+		return mainThreadCount;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.mysql.IQueryStats#getMaxMillis()
+	 */
+	@Override
+	public synchronized double getMaxMillis() {
+		return maxNanos / 1000000D;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IQueryStats#getPercentileMillis
+	 * (double)
+	 */
+	@Override
+	public double getPercentileMillis(final double percentile) {
+		final long[] sorted;
+		synchronized (this) {
+			sorted = Arrays.copyOf(samples, (int) Math.min(count, SAMPLES));
+		}
+		if (sorted.length == 0)
+			return 0D;
+		Arrays.sort(sorted);
+		final int index = (int) Math.ceil((percentile / 100D) * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1000000D;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.mysql.IQueryStats#getSql()
+	 */
+	@Override
+	public String getSql() {
+		return sql;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.mysql.IQueryStats#getTotalMillis()
+	 */
+	@Override
+	public synchronized double getTotalMillis() {
+		return totalNanos / 1000000D;
+	}
+
+	/**
+	 * Records a run.
+	 * 
+	 * @param nanos
+	 *            the time it took in nanoseconds
+	 * @param mainThread
+	 *            whether it ran on the server thread
+	 */
+	synchronized void record(final long nanos, final boolean mainThread) {
+		samples[(int) (count % SAMPLES)] = nanos;
+		count++;
+		if (mainThread) {
+			mainThreadCount++;
+		}
+		totalNanos += nanos;
+		if (nanos > maxNanos) {
+			maxNanos = nanos;
+		}
+	}
+}
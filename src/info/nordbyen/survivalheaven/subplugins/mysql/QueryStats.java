@@ -0,0 +1,172 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import info.nordbyen.survivalheaven.api.mysql.IQueryStats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.bukkit.Bukkit;
+
+/**
+ * Collects the timing of every statement by shape and logs the slow ones.
+ * 
+ * Statements are normalized by replacing string and number literals with
+ * {@code ?}, collapsing whitespace and folding repeated {@code VALUES} groups,
+ * so a query built with its values inlined lands in the same shape as its
+ * prepared form. The normalized form is remembered per SQL text, for up to
+ * {@link #MAX_CACHED} texts, so prepared statements are only normalized once.
+ */
+final class QueryStats {
+
+	/** The maximum number of SQL texts whose shape is remembered. */
+	private static final int MAX_CACHED = 4096;
+	/** Matches a quoted string literal. */
+	private static final Pattern STRING = Pattern
+			.compile("'(?:[^'\\\\]|\\\\.|'')*'|\"(?:[^\"\\\\]|\\\\.)*\"");
+	/** Matches a number that is not part of an identifier. */
+	private static final Pattern NUMBER = Pattern
+			.compile("(?<![\\w`])-?\\d+(?:\\.\\d+)?(?![\\w`])");
+	/** Matches a group of values repeated in a multi-row insert or IN list. */
+	private static final Pattern REPEATED = Pattern
+			.compile("(\\(\\?(?:, \\?)*\\))(?:, \\1)+");
+	/** Matches a run of whitespace. */
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	/**
+	 * Normalizes a statement.
+	 * 
+	 * @param sql
+	 *            the sql
+	 * @return the normalized sql
+	 */
+	static String normalize(final String sql) {
+		String s = STRING.matcher(sql).replaceAll("?");
+		s = NUMBER.matcher(s).replaceAll("?");
+		s = WHITESPACE.matcher(s).replaceAll(" ").trim();
+		s = s.replace("( ", "(").replace(" )", ")").replace(" ,", ",")
+				.replace(",?", ", ?");
+		return REPEATED.matcher(s).replaceAll("$1, ...");
+	}
+
+	/** The shapes by SQL text. */
+	private final ConcurrentHashMap<String, QueryShape> cached = new ConcurrentHashMap<String, QueryShape>();
+	/** The shapes by normalized SQL. */
+	private final ConcurrentHashMap<String, QueryShape> shapes = new ConcurrentHashMap<String, QueryShape>();
+	/** Runs slower than this are logged, in nanoseconds; 0 logs nothing. */
+	private volatile long slowThreshold = 0L;
+
+	/**
+	 * Gets the shape of a statement.
+	 * 
+	 * @param sql
+	 *            the sql
+	 * @return the shape
+	 */
+	private QueryShape getShape(final String sql) {
+		QueryShape shape = cached.get(sql);
+		if (shape != null)
+			return shape;
+		final String normalized = normalize(sql);
+		shape = shapes.get(normalized);
+		if (shape == null) {
+			final QueryShape created = new QueryShape(normalized);
+			shape = shapes.putIfAbsent(normalized, created);
+			if (shape == null) {
+				shape = created;
+			}
+		}
+		if (cached.size() < MAX_CACHED) {
+			cached.put(sql, shape);
+		}
+		return shape;
+	}
+
+	/**
+	 * Gets the shapes that took the most time in total.
+	 * 
+	 * @param limit
+	 *            the maximum number of shapes
+	 * @return the shapes, slowest first
+	 */
+	List<IQueryStats> getTop(final int limit) {
+		final List<QueryShape> all = new ArrayList<QueryShape>(shapes.values());
+		Collections.sort(all, new Comparator<QueryShape>() {
+
+			@Override
+			public int compare(final QueryShape a, final QueryShape b) {
+				return Double.compare(b.getTotalMillis(), a.getTotalMillis());
+			}
+		});
+		return new ArrayList<IQueryStats>(all.subList(0,
+				Math.min(limit, all.size())));
+	}
+
+	/**
+	 * Records a run of a statement.
+	 * 
+	 * @param sql
+	 *            the sql as it was sent
+	 * @param start
+	 *            the {@link System#nanoTime()} when the call started
+	 */
+	void record(final String sql, final long start) {
+		final long nanos = System.nanoTime() - start;
+		final boolean mainThread = Bukkit.isPrimaryThread();
+		getShape(sql).record(nanos, mainThread);
+		final long threshold = slowThreshold;
+		if ((threshold > 0) && (nanos >= threshold)) {
+			Bukkit.getLogger().warning(
+					String.format("[SurvivalHeaven] Treg sporring: %.2fms%s: %s",
+							nanos / 1000000D,
+							mainThread ? " paa server-traaden" : "", sql));
+		}
+	}
+
+	/**
+	 * Forgets every shape.
+	 */
+	void reset() {
+		cached.clear();
+		shapes.clear();
+	}
+
+	/**
+	 * Sets the slow query threshold.
+	 * 
+	 * @param millis
+	 *            the threshold in milliseconds, or 0 to log nothing
+	 */
+	void setSlowThreshold(final long millis) {
+		slowThreshold = Math.max(0L, millis) * 1000000L;
+	}
+}
@@ -0,0 +1,208 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Brings the database schema up to date.
+ * 
+ * Every {@link Migration} has a version number and is applied once, in order.
+ * The applied versions are recorded in {@code schema_version} together with a
+ * checksum, and startup is refused if a migration that was already applied
+ * has since been changed. New migrations are only ever added to the end of
+ * {@link #getMigrations()}.
+ */
+final class SchemaMigrator {
+
+	/**
+	 * Gets every migration, oldest first.
+	 * 
+	 * @return the migrations
+	 */
+	static List<Migration> getMigrations() {
+		final List<Migration> migrations = new ArrayList<Migration>();
+		migrations.add(new SqlMigration(1,
+				"Create the players, notes and warnings tables",
+				"CREATE TABLE IF NOT EXISTS `players` ("
+						+ "`id` INT(11) NOT NULL AUTO_INCREMENT, "
+						+ "`uuid` VARCHAR(255) NOT NULL, "
+						+ "`name` VARCHAR(255) NOT NULL, "
+						+ "`ips` LONGTEXT NOT NULL, "
+						+ "`gamemode` INT(2) NOT NULL DEFAULT 0, "
+						+ "`firstlogin` VARCHAR(255) NOT NULL, "
+						+ "`lastlogin` VARCHAR(255) NOT NULL, "
+						+ "`timeplayed` BIGINT(11) DEFAULT 0 NOT NULL, "
+						+ "`bank` INT(11) DEFAULT 300, "
+						+ "`rank` INT(11) DEFAULT 1, "
+						+ "`badges` VARCHAR(255) DEFAULT '', "
+						+ "`level` INT(11) DEFAULT 1, "
+						+ "`language` VARCHAR(255) DEFAULT 'norsk', "
+						+ "`lastlocation` VARCHAR(255) DEFAULT 'NO' NOT NULL, "
+						+ "PRIMARY KEY (`id`) );",
+				"CREATE TABLE IF NOT EXISTS `notes` ("
+						+ "`id` INT(11) NOT NULL AUTO_INCREMENT, "
+						+ "`playeruuid` VARCHAR(255) NOT NULL, "
+						+ "`setteruuid` VARCHAR(255) NOT NULL, "
+						+ "`message` VARCHAR(255) NOT NULL, "
+						+ "`date` VARCHAR(255) NOT NULL, "
+						+ "PRIMARY KEY (`id`) );",
+				"CREATE TABLE IF NOT EXISTS `warnings` ("
+						+ "`id` INT(11) NOT NULL AUTO_INCREMENT, "
+						+ "`playeruuid` VARCHAR(255) NOT NULL, "
+						+ "`setteruuid` VARCHAR(255) NOT NULL, "
+						+ "`message` VARCHAR(255) NOT NULL, "
+						+ "`date` VARCHAR(255) NOT NULL, `level` INT(11) NOT NULL, "
+						+ "PRIMARY KEY (`id`) );"));
+		migrations.add(new IndexMigration(2, "Index players.uuid", "players",
+				"idx_players_uuid",
+				"CREATE INDEX `idx_players_uuid` ON `players` (`uuid`)"));
+		migrations.add(new IndexMigration(3, "Index notes.playeruuid",
+				"notes", "idx_notes_playeruuid",
+				"CREATE INDEX `idx_notes_playeruuid` ON `notes` (`playeruuid`)"));
+		migrations.add(new IndexMigration(4, "Index warnings.playeruuid",
+				"warnings", "idx_warnings_playeruuid",
+				"CREATE INDEX `idx_warnings_playeruuid` "
+						+ "ON `warnings` (`playeruuid`)"));
+		migrations.add(new DateColumnMigration(5,
+				"Store player login dates as epoch milliseconds", "players",
+				"firstlogin", "lastlogin"));
+		migrations.add(new DateColumnMigration(6,
+				"Store note dates as epoch milliseconds", "notes", "date"));
+		migrations.add(new DateColumnMigration(7,
+				"Store warning dates as epoch milliseconds", "warnings",
+				"date"));
+		migrations.add(new TableMigration(8,
+				"Create the name_history table", "name_history",
+				"CREATE TABLE IF NOT EXISTS `name_history` ("
+						+ "`id` INT(11) NOT NULL AUTO_INCREMENT, "
+						+ "`uuid` VARCHAR(255) NOT NULL, "
+						+ "`name` VARCHAR(255) NOT NULL, "
+						+ "`since` BIGINT NOT NULL, "
+						+ "PRIMARY KEY (`id`) );",
+				"CREATE INDEX `idx_name_history_uuid` "
+						+ "ON `name_history` (`uuid`)",
+				"INSERT INTO `name_history` ( `uuid`, `name`, `since` ) "
+						+ "SELECT `uuid`, `name`, `firstlogin` FROM `players`"));
+		migrations.add(new IpIndexMigration(9,
+				"Index player addresses in the player_ips table"));
+		migrations.add(new SqlMigration(10, "Create the sessions table",
+				"CREATE TABLE IF NOT EXISTS `sessions` ("
+						+ "`id` INT(11) NOT NULL AUTO_INCREMENT, "
+						+ "`uuid` VARCHAR(36) NOT NULL, "
+						+ "`joined` BIGINT NOT NULL, "
+						+ "`quit` BIGINT NOT NULL, "
+						+ "`duration` BIGINT NOT NULL, "
+						+ "PRIMARY KEY (`id`), "
+						+ "UNIQUE KEY `idx_sessions_uuid_joined` "
+						+ "(`uuid`, `joined`) );"));
+		migrations.add(new TableMigration(11,
+				"Create the bank_transactions table", "bank_transactions",
+				"CREATE TABLE IF NOT EXISTS `bank_transactions` ("
+						+ "`id` BIGINT NOT NULL AUTO_INCREMENT, "
+						+ "`created` BIGINT NOT NULL, "
+						+ "`from_uuid` VARCHAR(36) NULL, "
+						+ "`to_uuid` VARCHAR(36) NULL, "
+						+ "`amount` BIGINT NOT NULL, "
+						+ "`reason` VARCHAR(255) NOT NULL, "
+						+ "PRIMARY KEY (`id`) );",
+				"CREATE INDEX `idx_bank_transactions_from_uuid` "
+						+ "ON `bank_transactions` (`from_uuid`)",
+				"CREATE INDEX `idx_bank_transactions_to_uuid` "
+						+ "ON `bank_transactions` (`to_uuid`)"));
+		migrations.add(new SqlMigration(12,
+				"Widen players.bank to BIGINT",
+				"ALTER TABLE `players` MODIFY COLUMN `bank` BIGINT DEFAULT 300"));
+		return migrations;
+	}
+
+	/** The manager. */
+	private final AbstractSqlManager manager;
+
+	/**
+	 * Instantiates a new schema migrator.
+	 * 
+	 * @param manager
+	 *            the manager
+	 */
+	SchemaMigrator(final AbstractSqlManager manager) {
+		this.manager = manager;
+	}
+
+	/**
+	 * Applies every migration that has not been applied yet.
+	 * 
+	 * @return the number of migrations applied
+	 * @throws SQLException
+	 *             if a migration failed, or an applied migration has changed
+	 */
+	int migrate() throws SQLException {
+		manager.executeUpdate("CREATE TABLE IF NOT EXISTS `schema_version` ("
+				+ "`version` INT NOT NULL, "
+				+ "`description` VARCHAR(255) NOT NULL, "
+				+ "`checksum` BIGINT NOT NULL, "
+				+ "`applied` BIGINT NOT NULL, "
+				+ "`duration` BIGINT NOT NULL, "
+				+ "PRIMARY KEY (`version`) )");
+		final Map<Integer, Long> applied = new HashMap<Integer, Long>();
+		final ResultSet rs = manager
+				.select("SELECT `version`, `checksum` FROM `schema_version`");
+		while (rs.next()) {
+			applied.put(rs.getInt(1), rs.getLong(2));
+		}
+		int count = 0;
+		for (final Migration migration : getMigrations()) {
+			final Long checksum = applied.get(migration.getVersion());
+			if (checksum != null) {
+				if (checksum != migration.getChecksum())
+					throw new SQLException("Migration "
+							+ migration.getVersion() + " ("
+							+ migration.getDescription()
+							+ ") has changed since it was applied");
+				continue;
+			}
+			System.out.println("[SurvivalHeaven] Oppdaterer databasen til versjon "
+					+ migration.getVersion() + ": "
+					+ migration.getDescription());
+			final long start = System.currentTimeMillis();
+			migration.apply(manager);
+			final long now = System.currentTimeMillis();
+			manager.update("INSERT INTO `schema_version` ( `version`, "
+					+ "`description`, `checksum`, `applied`, `duration` ) "
+					+ "VALUES ( ?, ?, ?, ?, ? )", migration.getVersion(),
+					migration.getDescription(), migration.getChecksum(), now,
+					now - start);
+			count++;
+		}
+		return count;
+	}
+}
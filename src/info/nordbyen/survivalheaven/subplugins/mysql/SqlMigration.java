@@ -0,0 +1,83 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import java.sql.SQLException;
+
+/**
+ * A migration made of plain SQL statements. The checksum covers the text of
+ * every statement.
+ */
+final class SqlMigration extends Migration {
+
+	/** The statements. */
+	private final String[] statements;
+
+	/**
+	 * Instantiates a new sql migration.
+	 * 
+	 * @param version
+	 *            the version
+	 * @param description
+	 *            the description
+	 * @param statements
+	 *            the statements
+	 */
+	SqlMigration(final int version, final String description,
+			final String... statements) {
+		super(version, description);
+		this.statements = statements;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.subplugins.mysql.Migration#apply(info.nordbyen
+	 * .survivalheaven.subplugins.mysql.AbstractSqlManager)
+	 */
+	@Override
+	void apply(final AbstractSqlManager manager) throws SQLException {
+		for (final String statement : statements) {
+			manager.executeUpdate(statement);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.subplugins.mysql.Migration#getChecksum()
+	 */
+	@Override
+	long getChecksum() {
+		final StringBuilder sb = new StringBuilder();
+		for (final String statement : statements) {
+			sb.append(statement).append(";\n");
+		}
+		return checksum(sb.toString());
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import java.sql.SQLException;
+
+/**
+ * A migration that creates one new table, with its indexes and first rows,
+ * from plain SQL statements.
+ * 
+ * The table is dropped before the statements run, so an interrupted run is
+ * simply started over instead of failing on an index that already exists or
+ * copying the rows twice. The checksum is that of a {@link SqlMigration} of
+ * the same statements, so a migration that was a {@link SqlMigration} when it
+ * was applied can become a table migration without changing.
+ */
+final class TableMigration extends Migration {
+
+	/** The table. */
+	private final String table;
+	/** The statements. */
+	private final SqlMigration statements;
+
+	/**
+	 * Instantiates a new table migration.
+	 * 
+	 * @param version
+	 *            the version
+	 * @param description
+	 *            the description
+	 * @param table
+	 *            the table the statements create
+	 * @param statements
+	 *            the statements
+	 */
+	TableMigration(final int version, final String description,
+			final String table, final String... statements) {
+		super(version, description);
+		this.table = table;
+		this.statements = new SqlMigration(version, description, statements);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.subplugins.mysql.Migration#apply(info.nordbyen
+	 * .survivalheaven.subplugins.mysql.AbstractSqlManager)
+	 */
+	@Override
+	void apply(final AbstractSqlManager manager) throws SQLException {
+		manager.executeUpdate("DROP TABLE IF EXISTS `" + table + "`");
+		statements.apply(manager);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.subplugins.mysql.Migration#getChecksum()
+	 */
+	@Override
+	long getChecksum() {
+		return statements.getChecksum();
+	}
+}
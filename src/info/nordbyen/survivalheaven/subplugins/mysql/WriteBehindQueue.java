@@ -0,0 +1,601 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import info.nordbyen.survivalheaven.api.mysql.IWriteQueueStats;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queues writes and sends them to the database in JDBC batches.
+ * 
+ * Every write carries a key; a write whose key is already pending replaces
+ * the pending one, so a row that changes many times between two flushes is
+ * only written once. Writes are flushed in the order their keys were last
+ * written, with consecutive writes of the same statement sent as one batch,
+ * all in a single transaction. A flush is started when {@code batchSize}
+ * writes are pending, and otherwise by the timer in {@link MysqlPlugin}.
+ * When a batch fails for any other reason than a lost connection, its writes
+ * are sent again one at a time, so one bad write cannot take the others down.
+ * Only the writes that fail on their own are put back in front of the queue,
+ * and they are dropped after {@link #MAX_ATTEMPTS} failed flushes.
+ * 
+ * A flush that cannot reach the database appends its writes to the
+ * {@link WriteJournal} instead. While the journal holds writes every flush
+ * first tries to send the journal and only then its own writes, and appends
+ * them behind the journal if that fails, so writes reach the database in
+ * the order they were made.
+ */
+final class WriteBehindQueue implements IWriteQueueStats {
+
+	/**
+	 * The Class Write.
+	 */
+	static final class Write {
+
+		/** The sql. */
+		final String sql;
+		/** The params. */
+		final Object[] params;
+		/** The failed attempts. */
+		private int attempts = 0;
+
+		/**
+		 * Instantiates a new write.
+		 * 
+		 * @param sql
+		 *            the sql
+		 * @param params
+		 *            the params
+		 */
+		Write(final String sql, final Object[] params) {
+			this.sql = sql;
+			this.params = params;
+		}
+	}
+
+	/** The number of failed flushes after which a write is dropped. */
+	private static final int MAX_ATTEMPTS = 3;
+	/** The manager. */
+	private final AbstractSqlManager manager;
+	/** The batch size. */
+	private final int batchSize;
+	/** The journal for writes the database could not take. */
+	private final WriteJournal journal;
+	/** The pending writes, guarded by itself. */
+	private final LinkedHashMap<Object, Write> pending = new LinkedHashMap<Object, Write>();
+	/** Held while a flush is running so flushes never overlap. */
+	private final Object flushLock = new Object();
+	/** Whether a size triggered flush is already waiting. */
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	/** The batch count. */
+	private final AtomicLong batchCount = new AtomicLong();
+	/** The coalesced writes. */
+	private final AtomicLong coalescedWrites = new AtomicLong();
+	/** The failed writes. */
+	private final AtomicLong failedWrites = new AtomicLong();
+	/** The flushed writes. */
+	private final AtomicLong flushedWrites = new AtomicLong();
+	/** The last flush time in nanoseconds. */
+	private volatile long lastFlushNanos = 0L;
+
+	/**
+	 * Instantiates a new write behind queue.
+	 * 
+	 * @param manager
+	 *            the manager
+	 * @param batchSize
+	 *            the batch size
+	 * @param journal
+	 *            the journal
+	 */
+	WriteBehindQueue(final AbstractSqlManager manager, final int batchSize,
+			final WriteJournal journal) {
+		this.manager = manager;
+		this.batchSize = Math.max(1, batchSize);
+		this.journal = journal;
+	}
+
+	/**
+	 * Closes the journal. Pending writes must have been flushed first.
+	 */
+	void close() {
+		journal.close();
+	}
+
+	/**
+	 * Queues a write.
+	 * 
+	 * @param key
+	 *            the key, or null if the write should never be coalesced
+	 * @param sql
+	 *            the sql
+	 * @param params
+	 *            the params
+	 */
+	void enqueue(final String key, final String sql, final Object[] params) {
+		enqueueAll(new String[] { key }, new String[] { sql },
+				new Object[][] { params });
+	}
+
+	/**
+	 * Queues writes in one step, so the same flush sends them all.
+	 * 
+	 * @param keys
+	 *            the keys, null for a write that should never be coalesced
+	 * @param sql
+	 *            the sql of each write
+	 * @param params
+	 *            the params of each write
+	 */
+	void enqueueAll(final String[] keys, final String[] sql,
+			final Object[][] params) {
+		final boolean full;
+		synchronized (pending) {
+			for (int i = 0; i < keys.length; i++) {
+				final Object k = (keys[i] == null) ? new Object() : keys[i];
+				if (pending.remove(k) != null) {
+					coalescedWrites.incrementAndGet();
+				}
+				pending.put(k, new Write(sql[i], params[i]));
+			}
+			full = pending.size() >= batchSize;
+		}
+		if (full && flushScheduled.compareAndSet(false, true)) {
+			try {
+				manager.submit(new Callable<Integer>() {
+
+					@Override
+					public Integer call() {
+						flushScheduled.set(false);
+						return flush();
+					}
+				});
+			} catch (final RuntimeException e) {
+				/* Shutting down; close() drains the queue */
+				flushScheduled.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Sends writes in one transaction on a borrowed connection.
+	 * 
+	 * @param pc
+	 *            the pc
+	 * @param writes
+	 *            the writes
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	private void execute(final PooledConnection pc, final Write[] writes)
+			throws SQLException {
+		final Connection connection = pc.getConnection();
+		connection.setAutoCommit(false);
+		int i = 0;
+		while (i < writes.length) {
+			final String sql = writes[i].sql;
+			final PreparedStatement statement = pc.prepare(sql, false);
+			int j = i;
+			while ((j < writes.length) && writes[j].sql.equals(sql)
+					&& ((j - i) < batchSize)) {
+				AbstractSqlManager.bind(statement, writes[j].params);
+				statement.addBatch();
+				j++;
+			}
+			final long batchStart = System.nanoTime();
+			statement.executeBatch();
+			manager.recordQuery(sql, batchStart);
+			batchCount.incrementAndGet();
+			i = j;
+		}
+		connection.commit();
+	}
+
+	/**
+	 * Sends every pending write to the database.
+	 * 
+	 * @return the number of writes sent
+	 */
+	int flush() {
+		synchronized (flushLock) {
+			final long start = System.nanoTime();
+			try {
+				if (!journal.isEmpty()) {
+					replay();
+				}
+				final Object[] keys;
+				final Write[] writes;
+				synchronized (pending) {
+					if (pending.isEmpty())
+						return 0;
+					keys = pending.keySet().toArray();
+					writes = pending.values().toArray(
+							new Write[pending.size()]);
+					pending.clear();
+				}
+				if (!journal.isEmpty()) {
+					journal(keys, writes);
+					return 0;
+				}
+				PooledConnection pc = null;
+				try {
+					pc = manager.borrow();
+					manager.migrateSchema();
+					execute(pc, writes);
+					flushedWrites.addAndGet(writes.length);
+					return writes.length;
+				} catch (final SQLException e) {
+					if (CircuitBreaker.isConnectionError(e)) {
+						journal(keys, writes);
+						return 0;
+					}
+					e.printStackTrace();
+					if (pc == null) {
+						requeue(keys, writes);
+						return 0;
+					}
+					final boolean[] failed = new boolean[writes.length];
+					final int tried = sendEach(pc, writes, failed);
+					requeue(select(keys, failed, 0, tried, true),
+							select(writes, failed, 0, tried, true));
+					if (tried < writes.length) {
+						journal(select(keys, failed, tried, writes.length,
+								false),
+								select(writes, failed, tried, writes.length,
+										false));
+					}
+					return select(writes, failed, 0, tried, false).length;
+				} finally {
+					release(pc);
+				}
+			} finally {
+				lastFlushNanos = System.nanoTime() - start;
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IWriteQueueStats#getBatchCount()
+	 */
+	@Override
+	public long getBatchCount() {
+		return batchCount.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IWriteQueueStats#getCoalescedWrites
+	 * ()
+	 */
+	@Override
+	public long getCoalescedWrites() {
+		return coalescedWrites.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IWriteQueueStats#getFailedWrites()
+	 */
+	@Override
+	public long getFailedWrites() {
+		return failedWrites.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IWriteQueueStats#getFlushedWrites
+	 * ()
+	 */
+	@Override
+	public long getFlushedWrites() {
+		return flushedWrites.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IWriteQueueStats#getJournaledWrites
+	 * ()
+	 */
+	@Override
+	public int getJournaledWrites() {
+		return journal.getRecords();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IWriteQueueStats#getJournalSize()
+	 */
+	@Override
+	public long getJournalSize() {
+		return journal.getSize();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IWriteQueueStats#getLastFlushMillis
+	 * ()
+	 */
+	@Override
+	public double getLastFlushMillis() {
+		return lastFlushNanos / 1000000D;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IWriteQueueStats#getPendingWrites
+	 * ()
+	 */
+	@Override
+	public int getPendingWrites() {
+		synchronized (pending) {
+			return pending.size();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.mysql.IWriteQueueStats#isDatabaseAvailable
+	 * ()
+	 */
+	@Override
+	public boolean isDatabaseAvailable() {
+		return !manager.getBreaker().isOpen();
+	}
+
+	/**
+	 * Appends writes to the journal, keeping them in memory if the journal
+	 * cannot be written.
+	 * 
+	 * @param keys
+	 *            the keys
+	 * @param writes
+	 *            the writes
+	 */
+	private void journal(final Object[] keys, final Write[] writes) {
+		try {
+			final int appended = journal.append(keys, writes);
+			failedWrites.addAndGet(writes.length - appended);
+		} catch (final IOException e) {
+			e.printStackTrace();
+			requeue(keys, writes);
+		}
+	}
+
+	/**
+	 * Moves a journal that keeps failing out of the way.
+	 */
+	private void quarantine() {
+		try {
+			failedWrites.addAndGet(journal.getRecords());
+			System.out.println("Journalen kunne ikke leses og ble flyttet til "
+					+ journal.quarantine());
+		} catch (final IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Hands a connection back to the pool.
+	 * 
+	 * @param pc
+	 *            the pc, may be null
+	 */
+	private void release(final PooledConnection pc) {
+		AbstractSqlManager.release(pc);
+	}
+
+	/**
+	 * Sends the journal to the database and clears it. The connection is
+	 * borrowed before the journal is read, so nothing is read while the
+	 * database is unreachable.
+	 * 
+	 * If the batch fails, the writes are sent one at a time. The ones that
+	 * fail on their own go to the queue to be retried, and if the connection
+	 * is lost halfway the journal is rewritten with the writes not yet sent.
+	 */
+	private void replay() {
+		PooledConnection pc = null;
+		try {
+			pc = manager.borrow();
+			manager.migrateSchema();
+			final LinkedHashMap<Object, Write> journaled = journal.read();
+			final Object[] keys = journaled.keySet().toArray();
+			final Write[] writes = journaled.values().toArray(
+					new Write[journaled.size()]);
+			try {
+				execute(pc, writes);
+			} catch (final SQLException e) {
+				if (CircuitBreaker.isConnectionError(e))
+					return;
+				e.printStackTrace();
+				final boolean[] failed = new boolean[writes.length];
+				final int tried = sendEach(pc, writes, failed);
+				if (tried == 0)
+					return;
+				journal.clear();
+				if (tried < writes.length) {
+					journal(select(keys, failed, tried, writes.length,
+							false),
+							select(writes, failed, tried, writes.length,
+									false));
+				}
+				requeue(select(keys, failed, 0, tried, true),
+						select(writes, failed, 0, tried, true));
+				return;
+			}
+			journal.clear();
+			flushedWrites.addAndGet(writes.length);
+			System.out.println(writes.length
+					+ " skrivinger fra journalen er sendt til databasen");
+		} catch (final IOException e) {
+			e.printStackTrace();
+			quarantine();
+		} catch (final SQLException e) {
+			if (!CircuitBreaker.isConnectionError(e)) {
+				e.printStackTrace();
+			}
+		} finally {
+			release(pc);
+		}
+	}
+
+	/**
+	 * Puts writes from a failed flush back in front of the queue, unless a
+	 * newer write with the same key arrived in the meantime.
+	 * 
+	 * @param keys
+	 *            the keys
+	 * @param writes
+	 *            the writes
+	 */
+	private void requeue(final Object[] keys, final Write[] writes) {
+		synchronized (pending) {
+			final LinkedHashMap<Object, Write> merged = new LinkedHashMap<Object, Write>();
+			for (int i = 0; i < keys.length; i++) {
+				if (pending.containsKey(keys[i])) {
+					continue;
+				}
+				if (++writes[i].attempts >= MAX_ATTEMPTS) {
+					failedWrites.incrementAndGet();
+					System.out.println("Skrivingen ble forkastet etter "
+							+ MAX_ATTEMPTS + " forsok: " + writes[i].sql);
+					continue;
+				}
+				merged.put(keys[i], writes[i]);
+			}
+			for (final Map.Entry<Object, Write> entry : pending.entrySet()) {
+				merged.put(entry.getKey(), entry.getValue());
+			}
+			pending.clear();
+			pending.putAll(merged);
+		}
+	}
+
+	/**
+	 * Picks writes, or their keys, out of a range.
+	 * 
+	 * @param items
+	 *            the writes or keys
+	 * @param failed
+	 *            which writes failed
+	 * @param from
+	 *            the start of the range
+	 * @param to
+	 *            the end of the range, exclusive
+	 * @param wanted
+	 *            whether to pick the failed or the other writes
+	 * @return the picked items
+	 */
+	private static <T> T[] select(final T[] items, final boolean[] failed,
+			final int from, final int to, final boolean wanted) {
+		int n = 0;
+		for (int i = from; i < to; i++) {
+			if (failed[i] == wanted) {
+				n++;
+			}
+		}
+		final T[] picked = Arrays.copyOf(items, n);
+		n = 0;
+		for (int i = from; i < to; i++) {
+			if (failed[i] == wanted) {
+				picked[n++] = items[i];
+			}
+		}
+		return picked;
+	}
+
+	/**
+	 * Sends writes one at a time, each in its own transaction, after the batch
+	 * they were in failed. The failed batch is rolled back first.
+	 * 
+	 * @param pc
+	 *            the pc
+	 * @param writes
+	 *            the writes
+	 * @param failed
+	 *            set for each write that failed on its own
+	 * @return how many writes were tried; less than all if the connection was
+	 *         lost
+	 */
+	private int sendEach(final PooledConnection pc, final Write[] writes,
+			final boolean[] failed) {
+		final Connection connection = pc.getConnection();
+		try {
+			connection.rollback();
+			connection.setAutoCommit(true);
+		} catch (final SQLException e) {
+			return 0;
+		}
+		for (int i = 0; i < writes.length; i++) {
+			try {
+				final PreparedStatement statement = pc.prepare(writes[i].sql,
+						false);
+				AbstractSqlManager.bind(statement, writes[i].params);
+				final long start = System.nanoTime();
+				statement.executeUpdate();
+				manager.recordQuery(writes[i].sql, start);
+				flushedWrites.incrementAndGet();
+			} catch (final SQLException e) {
+				if (CircuitBreaker.isConnectionError(e))
+					return i;
+				failed[i] = true;
+				System.out.println("Skrivingen feilet: " + writes[i].sql);
+				e.printStackTrace();
+			}
+		}
+		return writes.length;
+	}
+}
@@ -0,0 +1,475 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.mysql;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file that holds writes the database could not take.
+ * 
+ * Each record is its length, a CRC32 of its bytes and the key, statement and
+ * parameters of one write. Writes are appended a whole flush at a time and
+ * the file is synced once per append, not once per write. A record cut short
+ * by a crash fails its length or checksum and everything from it on is cut
+ * off the next time the journal is opened. The file never grows beyond
+ * {@code maxSize} bytes; writes that do not fit are dropped and counted.
+ * 
+ * Once the database is back {@link WriteBehindQueue} reads the journal,
+ * sends it in one transaction and clears it, so a crash between the commit
+ * and the clear is the only way a write is sent twice.
+ */
+final class WriteJournal {
+
+	/** Type tag of a null parameter. */
+	private static final byte NULL = 0;
+	/** Type tag of a string parameter, also used for unknown types. */
+	private static final byte STRING = 1;
+	/** Type tag of an int parameter. */
+	private static final byte INT = 2;
+	/** Type tag of a long parameter. */
+	private static final byte LONG = 3;
+	/** Type tag of a double parameter. */
+	private static final byte DOUBLE = 4;
+	/** Type tag of a float parameter. */
+	private static final byte FLOAT = 5;
+	/** Type tag of a boolean parameter. */
+	private static final byte BOOLEAN = 6;
+	/** Type tag of a short parameter. */
+	private static final byte SHORT = 7;
+	/** Type tag of a byte parameter. */
+	private static final byte BYTE = 8;
+	/** The record header size: length and checksum. */
+	private static final int HEADER = 4 + 8;
+
+	/**
+	 * Reads a length prefixed UTF-8 string.
+	 * 
+	 * @param in
+	 *            the in
+	 * @return the string
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static String readString(final DataInputStream in)
+			throws IOException {
+		final byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	/**
+	 * Writes a length prefixed UTF-8 string.
+	 * 
+	 * @param out
+	 *            the out
+	 * @param value
+	 *            the value
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static void writeString(final DataOutputStream out,
+			final String value) throws IOException {
+		final byte[] bytes = value.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/** The file. */
+	private final File file;
+	/** The max size in bytes. */
+	private final long maxSize;
+	/** The open file, or null until something is appended. */
+	private FileOutputStream stream = null;
+	/** The size of the file in bytes. */
+	private long size = 0L;
+	/** The number of records in the file. */
+	private int records = 0;
+	/** The number of writes dropped because the journal was full. */
+	private long dropped = 0L;
+
+	/**
+	 * Instantiates a new write journal, cutting off a torn record left by a
+	 * crash.
+	 * 
+	 * @param file
+	 *            the file
+	 * @param maxSize
+	 *            the max size in bytes
+	 */
+	WriteJournal(final File file, final long maxSize) {
+		this.file = file;
+		this.maxSize = maxSize;
+		if (file.exists()) {
+			try {
+				scan(null);
+			} catch (final IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Appends writes and syncs the file once.
+	 * 
+	 * @param keys
+	 *            the keys
+	 * @param writes
+	 *            the writes
+	 * @return the number of writes appended
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	synchronized int append(final Object[] keys,
+			final WriteBehindQueue.Write[] writes) throws IOException {
+		if (stream == null) {
+			final File parent = file.getAbsoluteFile().getParentFile();
+			if (parent != null) {
+				parent.mkdirs();
+			}
+			stream = new FileOutputStream(file, true);
+		}
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(buffer);
+		final CRC32 crc = new CRC32();
+		int appended = 0;
+		for (int i = 0; i < writes.length; i++) {
+			final byte[] record = encode(keys[i], writes[i]);
+			if ((size + buffer.size() + HEADER + record.length) > maxSize) {
+				dropped++;
+				continue;
+			}
+			crc.reset();
+			crc.update(record);
+			out.writeInt(record.length);
+			out.writeLong(crc.getValue());
+			out.write(record);
+			appended++;
+		}
+		if (appended < writes.length) {
+			System.out.println("Journalen er full; " + (writes.length - appended)
+					+ " skrivinger ble forkastet");
+		}
+		if (appended > 0) {
+			stream.write(buffer.toByteArray());
+			stream.flush();
+			stream.getFD().sync();
+			size += buffer.size();
+			records += appended;
+		}
+		return appended;
+	}
+
+	/**
+	 * Empties the journal after its writes have reached the database.
+	 * 
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	synchronized void clear() throws IOException {
+		close();
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0L);
+			raf.getFD().sync();
+		} finally {
+			raf.close();
+		}
+		size = 0L;
+		records = 0;
+	}
+
+	/**
+	 * Closes the file. It is opened again by the next append.
+	 */
+	synchronized void close() {
+		if (stream == null)
+			return;
+		try {
+			stream.close();
+		} catch (final IOException e) {
+			e.printStackTrace();
+		}
+		stream = null;
+	}
+
+	/**
+	 * Encodes one write.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param write
+	 *            the write
+	 * @return the bytes
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private byte[] encode(final Object key, final WriteBehindQueue.Write write)
+			throws IOException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(buffer);
+		out.writeBoolean(key instanceof String);
+		if (key instanceof String) {
+			writeString(out, (String) key);
+		}
+		writeString(out, write.sql);
+		final Object[] params = write.params;
+		out.writeInt((params == null) ? 0 : params.length);
+		if (params != null) {
+			for (final Object param : params) {
+				if (param == null) {
+					out.writeByte(NULL);
+				} else if (param instanceof Integer) {
+					out.writeByte(INT);
+					out.writeInt((Integer) param);
+				} else if (param instanceof Long) {
+					out.writeByte(LONG);
+					out.writeLong((Long) param);
+				} else if (param instanceof Double) {
+					out.writeByte(DOUBLE);
+					out.writeDouble((Double) param);
+				} else if (param instanceof Float) {
+					out.writeByte(FLOAT);
+					out.writeFloat((Float) param);
+				} else if (param instanceof Boolean) {
+					out.writeByte(BOOLEAN);
+					out.writeBoolean((Boolean) param);
+				} else if (param instanceof Short) {
+					out.writeByte(SHORT);
+					out.writeShort((Short) param);
+				} else if (param instanceof Byte) {
+					out.writeByte(BYTE);
+					out.writeByte((Byte) param);
+				} else {
+					out.writeByte(STRING);
+					writeString(out, param.toString());
+				}
+			}
+		}
+		out.flush();
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * Decodes one write into a map, replacing an earlier write with the same
+	 * key.
+	 * 
+	 * @param record
+	 *            the record
+	 * @param writes
+	 *            the writes
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void decode(final byte[] record,
+			final LinkedHashMap<Object, WriteBehindQueue.Write> writes)
+			throws IOException {
+		final DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(record));
+		final Object key = in.readBoolean() ? readString(in) : new Object();
+		final String sql = readString(in);
+		final Object[] params = new Object[in.readInt()];
+		for (int i = 0; i < params.length; i++) {
+			final byte type = in.readByte();
+			switch (type) {
+			case NULL:
+				params[i] = null;
+				break;
+			case INT:
+				params[i] = in.readInt();
+				break;
+			case LONG:
+				params[i] = in.readLong();
+				break;
+			case DOUBLE:
+				params[i] = in.readDouble();
+				break;
+			case FLOAT:
+				params[i] = in.readFloat();
+				break;
+			case BOOLEAN:
+				params[i] = in.readBoolean();
+				break;
+			case SHORT:
+				params[i] = in.readShort();
+				break;
+			case BYTE:
+				params[i] = in.readByte();
+				break;
+			case STRING:
+				params[i] = readString(in);
+				break;
+			default:
+				throw new IOException("Unknown parameter type " + type);
+			}
+		}
+		writes.remove(key);
+		writes.put(key, new WriteBehindQueue.Write(sql, params));
+	}
+
+	/**
+	 * Gets the number of writes dropped because the journal was full.
+	 * 
+	 * @return the dropped writes
+	 */
+	synchronized long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Gets the number of writes in the journal.
+	 * 
+	 * @return the record count
+	 */
+	synchronized int getRecords() {
+		return records;
+	}
+
+	/**
+	 * Gets the size of the journal.
+	 * 
+	 * @return the size in bytes
+	 */
+	synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Checks if the journal is empty.
+	 * 
+	 * @return true, if it holds no writes
+	 */
+	synchronized boolean isEmpty() {
+		return records == 0;
+	}
+
+	/**
+	 * Moves the journal aside when its writes keep failing for reasons other
+	 * than the connection, so they stop blocking newer writes.
+	 * 
+	 * @return the file the journal was moved to
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	synchronized File quarantine() throws IOException {
+		close();
+		final File target = new File(file.getPath() + ".failed-"
+				+ System.currentTimeMillis());
+		if (!file.renameTo(target))
+			throw new IOException("Could not move " + file + " to " + target);
+		size = 0L;
+		records = 0;
+		return target;
+	}
+
+	/**
+	 * Reads every write in the journal, in order, with later writes replacing
+	 * earlier ones with the same key.
+	 * 
+	 * @return the writes
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	synchronized LinkedHashMap<Object, WriteBehindQueue.Write> read()
+			throws IOException {
+		final LinkedHashMap<Object, WriteBehindQueue.Write> writes = new LinkedHashMap<Object, WriteBehindQueue.Write>();
+		if (stream != null) {
+			stream.flush();
+		}
+		scan(writes);
+		return writes;
+	}
+
+	/**
+	 * Reads the file up to the first torn record and cuts it off there.
+	 * 
+	 * @param writes
+	 *            the map to decode the writes into, or null to only count
+	 *            them
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void scan(
+			final LinkedHashMap<Object, WriteBehindQueue.Write> writes)
+			throws IOException {
+		final long length = file.length();
+		long good = 0L;
+		int count = 0;
+		final DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)));
+		try {
+			final CRC32 crc = new CRC32();
+			while ((good + HEADER) <= length) {
+				final int recordLength = in.readInt();
+				final long checksum = in.readLong();
+				if ((recordLength < 0)
+						|| ((good + HEADER + recordLength) > length)) {
+					break;
+				}
+				final byte[] record = new byte[recordLength];
+				in.readFully(record);
+				crc.reset();
+				crc.update(record);
+				if (crc.getValue() != checksum) {
+					break;
+				}
+				if (writes != null) {
+					decode(record, writes);
+				}
+				good += HEADER + recordLength;
+				count++;
+			}
+		} catch (final EOFException e) {
+		} finally {
+			in.close();
+		}
+		if (good < length) {
+			System.out.println("Journalen " + file + " var avkuttet; "
+					+ (length - good) + " byte ble fjernet");
+			close();
+			final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(good);
+			} finally {
+				raf.close();
+			}
+		}
+		size = good;
+		records = count;
+	}
+}
@@ -0,0 +1,205 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.playerdata;
+
+import info.nordbyen.survivalheaven.SH;
+import info.nordbyen.survivalheaven.api.playerdata.bank.IBankManager;
+
+/**
+ * The Class BankManager.
+ * 
+ * Balances live in {@link PlayerData} and only change while the player's
+ * bank lock is held. A transfer takes the locks of both players, lowest id
+ * first, so two transfers between the same players cannot deadlock. Every
+ * change queues the new balances and its {@code bank_transactions} row as one
+ * group on the write-behind queue, which sends them in the same transaction,
+ * so the journal and the balances agree after a crash and a transaction
+ * costs no database round trip.
+ */
+public class BankManager implements IBankManager {
+
+	/**
+	 * Checks that an amount is positive.
+	 * 
+	 * @param amount
+	 *            the amount
+	 */
+	private static void checkAmount(final long amount) {
+		if (amount <= 0)
+			throw new IllegalArgumentException("The amount must be positive: "
+					+ amount);
+	}
+
+	/**
+	 * Finds the account of a player.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @return the player data, or null if the player is unknown
+	 */
+	private static PlayerData find(final String uuid) {
+		return (PlayerData) SH.getManager().getPlayerDataManager()
+				.getPlayerData(uuid);
+	}
+
+	/**
+	 * Queues the new balances and the journal row of a transaction as one
+	 * group. The caller must hold the bank lock of every player involved.
+	 * 
+	 * @param from
+	 *            the player money was taken from, or null for a deposit
+	 * @param to
+	 *            the player money was given to, or null for a withdrawal
+	 * @param amount
+	 *            the amount
+	 * @param reason
+	 *            the reason
+	 */
+	private static void record(final PlayerData from, final PlayerData to,
+			final long amount, final String reason) {
+		final int n = ((from == null) || (to == null)) ? 2 : 3;
+		final String[] keys = new String[n];
+		final String[] sql = new String[n];
+		final Object[][] params = new Object[n][];
+		int i = 0;
+		for (final PlayerData pd : new PlayerData[] { from, to }) {
+			if (pd != null) {
+				keys[i] = pd.getBankKey();
+				sql[i] = PlayerData.BANK_SQL;
+				params[i] = pd.getBankWrite();
+				i++;
+			}
+		}
+		sql[i] = "INSERT INTO `bank_transactions` ( `created`, "
+				+ "`from_uuid`, `to_uuid`, `amount`, `reason` ) "
+				+ "VALUES ( ?, ?, ?, ?, ? )";
+		params[i] = new Object[] { System.currentTimeMillis(),
+				(from == null) ? null : from.getUUID(),
+				(to == null) ? null : to.getUUID(), amount,
+				(reason == null) ? "" : reason };
+		SH.getManager().getMysqlManager().enqueueAll(keys, sql, params);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.bank.IBankManager#deposit
+	 * (java.lang.String, long, java.lang.String)
+	 */
+	@Override
+	public boolean deposit(final String uuid, final long amount,
+			final String reason) {
+		checkAmount(amount);
+		final PlayerData pd = find(uuid);
+		if (pd == null)
+			return false;
+		synchronized (pd.bankLock) {
+			if (!pd.addMoney(amount, Long.MIN_VALUE))
+				return false;
+			record(null, pd, amount, reason);
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.bank.IBankManager#getBalance
+	 * (java.lang.String)
+	 */
+	@Override
+	public long getBalance(final String uuid) {
+		final PlayerData pd = find(uuid);
+		if (pd == null)
+			return 0;
+		synchronized (pd.bankLock) {
+			return pd.getMoney();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.bank.IBankManager#transfer
+	 * (java.lang.String, java.lang.String, long, java.lang.String)
+	 */
+	@Override
+	public boolean transfer(final String from, final String to,
+			final long amount, final String reason) {
+		checkAmount(amount);
+		if ((from == null) || from.equals(to))
+			return false;
+		final PlayerData source = find(from);
+		final PlayerData target = find(to);
+		if ((source == null) || (target == null) || (source == target))
+			return false;
+		final boolean sourceFirst = source.getId() < target.getId();
+		final PlayerData first = sourceFirst ? source : target;
+		final PlayerData second = sourceFirst ? target : source;
+		synchronized (first.bankLock) {
+			synchronized (second.bankLock) {
+				if (!source.addMoney(-amount, 0))
+					return false;
+				if (!target.addMoney(amount, Long.MIN_VALUE)) {
+					/* Nothing else can change the source while it is locked */
+					if (!source.addMoney(amount, Long.MIN_VALUE))
+						throw new IllegalStateException("Could not give "
+								+ amount + " back to " + from
+								+ " after a failed transfer");
+					return false;
+				}
+				record(source, target, amount, reason);
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.bank.IBankManager#withdraw
+	 * (java.lang.String, long, java.lang.String)
+	 */
+	@Override
+	public boolean withdraw(final String uuid, final long amount,
+			final String reason) {
+		checkAmount(amount);
+		final PlayerData pd = find(uuid);
+		if (pd == null)
+			return false;
+		synchronized (pd.bankLock) {
+			if (!pd.addMoney(-amount, 0))
+				return false;
+			record(pd, null, amount, reason);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.playerdata;
+
+import info.nordbyen.survivalheaven.api.util.IpAddress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The players that have used each address, for every known player, cached or
+ * not. Loaded from {@code player_ips} at enable and added to on join. All
+ * methods are synchronized.
+ */
+final class IpIndex {
+
+	/** The uuids that have used each address. */
+	private final HashMap<IpAddress, List<String>> players = new HashMap<IpAddress, List<String>>();
+
+	/**
+	 * Records that a player has used an address.
+	 * 
+	 * @param address
+	 *            the address
+	 * @param uuid
+	 *            the uuid
+	 * @return true, if the player had not used the address before
+	 */
+	synchronized boolean add(final IpAddress address, final String uuid) {
+		List<String> uuids = players.get(address);
+		if (uuids == null) {
+			uuids = new ArrayList<String>(1);
+			players.put(address, uuids);
+		}
+		if (uuids.contains(uuid))
+			return false;
+		uuids.add(uuid);
+		return true;
+	}
+
+	/**
+	 * Removes everything.
+	 */
+	synchronized void clear() {
+		players.clear();
+	}
+
+	/**
+	 * Copies the whole index.
+	 * 
+	 * @return the uuids that have used each address
+	 */
+	synchronized Map<IpAddress, List<String>> copy() {
+		final Map<IpAddress, List<String>> copy = new HashMap<IpAddress, List<String>>(
+				players.size());
+		for (final Map.Entry<IpAddress, List<String>> entry : players
+				.entrySet()) {
+			copy.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+		}
+		return copy;
+	}
+
+	/**
+	 * Gets the players that have used an address.
+	 * 
+	 * @param address
+	 *            the address
+	 * @return the uuids
+	 */
+	synchronized List<String> get(final IpAddress address) {
+		final List<String> uuids = players.get(address);
+		if (uuids == null)
+			return Collections.emptyList();
+		return new ArrayList<String>(uuids);
+	}
+}
@@ -0,0 +1,309 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.playerdata;
+
+import info.nordbyen.survivalheaven.api.playerdata.LeaderboardEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Players ranked by one stat, highest first and by uuid on ties.
+ * 
+ * This is an indexable skip list: every link also stores how many places it
+ * skips, so a change, the rank of a player and the player at a rank all take
+ * O(log n), and a page of the board adds one step per entry. All methods are
+ * synchronized; the board is written on the server thread when a stat
+ * changes.
+ */
+final class Leaderboard {
+
+	/**
+	 * The Class Node.
+	 */
+	private static final class Node {
+
+		/** The uuid, null for the head. */
+		private final String uuid;
+		/** The value. */
+		private final long value;
+		/** The next node on each level. */
+		private final Node[] next;
+		/** The places skipped by the link on each level. */
+		private final int[] span;
+
+		/**
+		 * Instantiates a new node.
+		 * 
+		 * @param uuid
+		 *            the uuid
+		 * @param value
+		 *            the value
+		 * @param levels
+		 *            the levels
+		 */
+		private Node(final String uuid, final long value, final int levels) {
+			this.uuid = uuid;
+			this.value = value;
+			next = new Node[levels];
+			span = new int[levels];
+		}
+	}
+
+	/** The max number of levels, enough for 4^16 players. */
+	private static final int MAX_LEVEL = 16;
+
+	/**
+	 * Checks if a node is ranked before a value.
+	 * 
+	 * @param node
+	 *            the node
+	 * @param value
+	 *            the value
+	 * @param uuid
+	 *            the uuid
+	 * @return true, if the node is ranked before
+	 */
+	private static boolean before(final Node node, final long value,
+			final String uuid) {
+		return (node.value > value)
+				|| ((node.value == value) && (node.uuid.compareTo(uuid) < 0));
+	}
+
+	/** The head. */
+	private final Node head = new Node(null, 0, MAX_LEVEL);
+	/** The levels in use. */
+	private int level = 1;
+	/** The number of players. */
+	private int size = 0;
+	/** The value of each player, by uuid. */
+	private final HashMap<String, Long> values = new HashMap<String, Long>();
+	/** The random. */
+	private final Random random = new Random();
+
+	/**
+	 * Removes everything.
+	 */
+	synchronized void clear() {
+		for (int i = 0; i < MAX_LEVEL; i++) {
+			head.next[i] = null;
+			head.span[i] = 0;
+		}
+		level = 1;
+		size = 0;
+		values.clear();
+	}
+
+	/**
+	 * Copies the value of every player.
+	 * 
+	 * @return the values, by uuid
+	 */
+	synchronized Map<String, Long> copy() {
+		return new HashMap<String, Long>(values);
+	}
+
+	/**
+	 * Gets a page of the board.
+	 * 
+	 * @param offset
+	 *            the number of places to skip
+	 * @param limit
+	 *            the max number of places
+	 * @param names
+	 *            the names to show
+	 * @return the entries, best first
+	 */
+	synchronized List<LeaderboardEntry> get(final int offset,
+			final int limit, final NameIndex names) {
+		final List<LeaderboardEntry> result = new ArrayList<LeaderboardEntry>();
+		if ((offset < 0) || (offset >= size))
+			return result;
+		Node x = nodeAt(offset + 1);
+		while ((x != null) && (result.size() < limit)) {
+			result.add(new LeaderboardEntry(offset + result.size() + 1, x.uuid,
+					names.getName(x.uuid), x.value));
+			x = x.next[0];
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the node at a rank.
+	 * 
+	 * @param rank
+	 *            the rank, starting at 1
+	 * @return the node
+	 */
+	private Node nodeAt(final int rank) {
+		Node x = head;
+		int traversed = 0;
+		for (int i = level - 1; i >= 0; i--) {
+			while ((x.next[i] != null) && ((traversed + x.span[i]) <= rank)) {
+				traversed += x.span[i];
+				x = x.next[i];
+			}
+			if (traversed == rank)
+				return x;
+		}
+		return null;
+	}
+
+	/**
+	 * Picks the number of levels of a new node, each one a quarter as likely
+	 * as the one below.
+	 * 
+	 * @return the levels
+	 */
+	private int randomLevel() {
+		int levels = 1;
+		while ((levels < MAX_LEVEL) && (random.nextInt(4) == 0)) {
+			levels++;
+		}
+		return levels;
+	}
+
+	/**
+	 * Gets the rank of a player.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @return the rank, starting at 1, or 0 if the player is not ranked
+	 */
+	synchronized int rank(final String uuid) {
+		final Long value = values.get(uuid);
+		if (value == null)
+			return 0;
+		Node x = head;
+		int rank = 0;
+		for (int i = level - 1; i >= 0; i--) {
+			while ((x.next[i] != null)
+					&& (before(x.next[i], value, uuid) || uuid
+							.equals(x.next[i].uuid))) {
+				rank += x.span[i];
+				x = x.next[i];
+			}
+			if (uuid.equals(x.uuid))
+				return rank;
+		}
+		return 0;
+	}
+
+	/**
+	 * Removes a player.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 */
+	synchronized void remove(final String uuid) {
+		final Long value = values.remove(uuid);
+		if (value == null)
+			return;
+		final Node[] update = new Node[MAX_LEVEL];
+		Node x = head;
+		for (int i = level - 1; i >= 0; i--) {
+			while ((x.next[i] != null) && before(x.next[i], value, uuid)) {
+				x = x.next[i];
+			}
+			update[i] = x;
+		}
+		x = x.next[0];
+		for (int i = 0; i < level; i++) {
+			if (update[i].next[i] == x) {
+				update[i].span[i] += x.span[i] - 1;
+				update[i].next[i] = x.next[i];
+			} else {
+				update[i].span[i]--;
+			}
+		}
+		while ((level > 1) && (head.next[level - 1] == null)) {
+			level--;
+		}
+		size--;
+	}
+
+	/**
+	 * Sets the value of a player, moving it to its new place.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @param value
+	 *            the value
+	 */
+	synchronized void set(final String uuid, final long value) {
+		final Long old = values.get(uuid);
+		if (old != null) {
+			if (old == value)
+				return;
+			remove(uuid);
+		}
+		final Node[] update = new Node[MAX_LEVEL];
+		final int[] rank = new int[MAX_LEVEL];
+		Node x = head;
+		for (int i = level - 1; i >= 0; i--) {
+			rank[i] = (i == (level - 1)) ? 0 : rank[i + 1];
+			while ((x.next[i] != null) && before(x.next[i], value, uuid)) {
+				rank[i] += x.span[i];
+				x = x.next[i];
+			}
+			update[i] = x;
+		}
+		final int levels = randomLevel();
+		if (levels > level) {
+			for (int i = level; i < levels; i++) {
+				rank[i] = 0;
+				update[i] = head;
+				head.span[i] = size;
+			}
+			level = levels;
+		}
+		final Node node = new Node(uuid, value, levels);
+		for (int i = 0; i < levels; i++) {
+			node.next[i] = update[i].next[i];
+			update[i].next[i] = node;
+			node.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+			update[i].span[i] = (rank[0] - rank[i]) + 1;
+		}
+		for (int i = levels; i < level; i++) {
+			update[i].span[i]++;
+		}
+		values.put(uuid, value);
+		size++;
+	}
+
+	/**
+	 * Gets the number of ranked players.
+	 * 
+	 * @return the size
+	 */
+	synchronized int size() {
+		return size;
+	}
+}
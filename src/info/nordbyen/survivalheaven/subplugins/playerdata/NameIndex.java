@@ -0,0 +1,240 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.playerdata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The names of every known player, cached or not.
+ * 
+ * Current names are kept in a hash map for exact lookups and in a sorted map
+ * for prefix completion, both keyed by the lower case name. When two players
+ * have the same current name the one that logged in last wins. Every name a
+ * player has used is kept too, oldest first, so a player can be found by a
+ * name they no longer have. All methods are synchronized; the index is only
+ * written on login and on name changes.
+ */
+final class NameIndex {
+
+	/** The uuid of each current name, by lower case name. */
+	private final HashMap<String, String> uuids = new HashMap<String, String>();
+	/** The current names as written, sorted by lower case name. */
+	private final TreeMap<String, String> names = new TreeMap<String, String>();
+	/** The names each player has used, oldest first, by uuid. */
+	private final HashMap<String, List<String>> history = new HashMap<String, List<String>>();
+	/** The players that have used each name, by lower case name. */
+	private final HashMap<String, List<String>> users = new HashMap<String, List<String>>();
+
+	/**
+	 * Adds a name to the history of a player.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @param name
+	 *            the name
+	 */
+	synchronized void addHistory(final String uuid, final String name) {
+		List<String> used = history.get(uuid);
+		if (used == null) {
+			used = new ArrayList<String>(1);
+			history.put(uuid, used);
+		}
+		if (used.isEmpty() || !used.get(used.size() - 1).equals(name)) {
+			used.add(name);
+		}
+		final String key = name.toLowerCase();
+		List<String> players = users.get(key);
+		if (players == null) {
+			players = new ArrayList<String>(1);
+			users.put(key, players);
+		}
+		if (!players.contains(uuid)) {
+			players.add(uuid);
+		}
+	}
+
+	/**
+	 * Removes everything.
+	 */
+	synchronized void clear() {
+		uuids.clear();
+		names.clear();
+		history.clear();
+		users.clear();
+	}
+
+	/**
+	 * Gets the current names starting with a prefix, ignoring case, in
+	 * alphabetical order.
+	 * 
+	 * @param prefix
+	 *            the prefix
+	 * @param limit
+	 *            the max number of names
+	 * @return the names
+	 */
+	synchronized List<String> complete(final String prefix, final int limit) {
+		final String from = prefix.toLowerCase();
+		final SortedMap<String, String> matches = names.subMap(from, from
+				+ Character.MAX_VALUE);
+		final List<String> result = new ArrayList<String>(Math.min(limit,
+				matches.size()));
+		for (final String name : matches.values()) {
+			if (result.size() >= limit) {
+				break;
+			}
+			result.add(name);
+		}
+		return result;
+	}
+
+	/**
+	 * Copies the names every player has used.
+	 * 
+	 * @return the names, oldest first, by uuid
+	 */
+	synchronized Map<String, List<String>> copyHistory() {
+		final Map<String, List<String>> copy = new HashMap<String, List<String>>(
+				history.size());
+		for (final Map.Entry<String, List<String>> entry : history.entrySet()) {
+			copy.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+		}
+		return copy;
+	}
+
+	/**
+	 * Copies the current name of every player.
+	 * 
+	 * @return the names, by uuid
+	 */
+	synchronized Map<String, String> copyNames() {
+		final Map<String, String> copy = new HashMap<String, String>(
+				uuids.size());
+		for (final Map.Entry<String, String> entry : uuids.entrySet()) {
+			copy.put(entry.getValue(), names.get(entry.getKey()));
+		}
+		return copy;
+	}
+
+	/**
+	 * Gets every name a player has used, oldest first.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @return the names
+	 */
+	synchronized List<String> getHistory(final String uuid) {
+		final List<String> used = history.get(uuid);
+		if (used == null)
+			return Collections.emptyList();
+		return new ArrayList<String>(used);
+	}
+
+	/**
+	 * Gets the name a player used last.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @return the name, or null if the player is unknown
+	 */
+	synchronized String getName(final String uuid) {
+		final List<String> used = history.get(uuid);
+		if ((used == null) || used.isEmpty())
+			return null;
+		return used.get(used.size() - 1);
+	}
+
+	/**
+	 * Gets the players that used to have a name but now have another.
+	 * 
+	 * @param name
+	 *            the name
+	 * @return the uuids
+	 */
+	synchronized List<String> getPreviousUsers(final String name) {
+		final List<String> players = users.get(name.toLowerCase());
+		if (players == null)
+			return Collections.emptyList();
+		final List<String> result = new ArrayList<String>(players.size());
+		for (final String uuid : players) {
+			if (!uuid.equals(uuids.get(name.toLowerCase()))) {
+				result.add(uuid);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the player that currently has a name, ignoring case.
+	 * 
+	 * @param name
+	 *            the name
+	 * @return the uuid, or null if nobody has the name
+	 */
+	synchronized String getUuid(final String name) {
+		return uuids.get(name.toLowerCase());
+	}
+
+	/**
+	 * Sets the current name of a player, replacing the old one.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @param oldName
+	 *            the old name, or null for a new player
+	 * @param newName
+	 *            the new name
+	 */
+	synchronized void setName(final String uuid, final String oldName,
+			final String newName) {
+		if (oldName != null) {
+			final String key = oldName.toLowerCase();
+			if (uuid.equals(uuids.get(key))) {
+				uuids.remove(key);
+				names.remove(key);
+			}
+		}
+		final String key = newName.toLowerCase();
+		uuids.put(key, uuid);
+		names.put(key, newName);
+	}
+
+	/**
+	 * Gets the number of current names.
+	 * 
+	 * @return the size
+	 */
+	synchronized int size() {
+		return uuids.size();
+	}
+}
@@ -30,7 +30,6 @@ import info.nordbyen.survivalheaven.SH;
 import info.nordbyen.survivalheaven.api.playerdata.IPlayerData;
 import info.nordbyen.survivalheaven.api.playerdata.note.INoteManager.INote;
 
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Date;
 
@@ -70,25 +69,16 @@ public class Note implements INote {
 		this.player = player2;
 		this.setter = setter2;
 		this.message = message;
-		SH.getManager()
-				.getMysqlManager()
-				.query("INSERT INTO notes ( date, playeruuid, setteruuid, message ) VALUES ( \""
-						+ SH.getManager().getMysqlManager().getDate(date)
-						+ "\", \""
-						+ player2.getUUID()
-						+ "\", \""
-						+ (setter2 == null ? "NO" : setter2.getUUID())
-						+ "\", \"" + message + "\" )");
-		final ResultSet rs = SH
+		final long key = SH
 				.getManager()
 				.getMysqlManager()
-				.query("SELECT id FROM notes WHERE playeruuid = \""
-						+ player2.getUUID() + "\" AND message = \"" + message
-						+ "\" AND date = \""
-						+ SH.getManager().getMysqlManager().getDate(date)
-						+ "\";");
-		if ((rs != null) && rs.next()) {
-			id = rs.getInt("id");
+				.insertAndGetKey(
+						"INSERT INTO notes ( date, playeruuid, setteruuid, message ) VALUES ( ?, ?, ?, ? )",
+						date.getTime(),
+						player2.getUUID(),
+						(setter2 == null ? "NO" : setter2.getUUID()), message);
+		if (key != -1) {
+			id = (int) key;
 		} else
 			throw new Exception("Noe gikk galt!");
 	}
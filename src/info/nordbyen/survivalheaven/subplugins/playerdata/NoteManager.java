@@ -27,6 +27,7 @@
 package info.nordbyen.survivalheaven.subplugins.playerdata;
 
 import info.nordbyen.survivalheaven.SH;
+import info.nordbyen.survivalheaven.api.mysql.RowHandler;
 import info.nordbyen.survivalheaven.api.playerdata.IPlayerData;
 import info.nordbyen.survivalheaven.api.playerdata.note.INoteManager;
 import info.nordbyen.survivalheaven.api.subplugin.annotations.SurvivalHeavenDisable;
@@ -37,7 +38,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -50,21 +53,36 @@ import org.bukkit.plugin.java.JavaPlugin;
 public class NoteManager implements INoteManager {
 
 	/**
-	 * Creates the table.
-	 * 
-	 * @throws SQLException
-	 *             the SQL exception
+	 * A note as read from the database, before its players are looked up.
 	 */
-	private static void createTable() throws SQLException {
-		SH.getManager()
-				.getMysqlManager()
-				.query("CREATE TABLE IF NOT EXISTS `notes` ("
-						+ "`id` INT(11) NOT NULL AUTO_INCREMENT, "
-						+ "`playeruuid` VARCHAR(255) NOT NULL, "
-						+ "`setteruuid` VARCHAR(255) NOT NULL, "
-						+ "`message` VARCHAR(255) NOT NULL, "
-						+ "`date` VARCHAR(255) NOT NULL, "
-						+ "PRIMARY KEY (`id`) );");
+	private static final class Row {
+
+		/** The date. */
+		private final Date date;
+		/** The player's uuid. */
+		private final String player;
+		/** The setter's uuid. */
+		private final String setter;
+		/** The message. */
+		private final String message;
+		/** The id. */
+		private final int id;
+
+		/**
+		 * Reads a row.
+		 * 
+		 * @param row
+		 *            the row
+		 * @throws SQLException
+		 *             the SQL exception
+		 */
+		private Row(final ResultSet row) throws SQLException {
+			date = new Date(row.getLong("date"));
+			player = row.getString("playeruuid");
+			setter = row.getString("setteruuid");
+			message = row.getString("message");
+			id = row.getInt("id");
+		}
 	}
 
 	/**
@@ -88,7 +106,6 @@ public class NoteManager implements INoteManager {
 	@SurvivalHeavenEnable
 	private static void enable(final JavaPlugin plugin) {
 		try {
-			createTable();
 			loadFromMysql();
 		} catch (final SQLException e) {
 			Bukkit.getConsoleSender().sendMessage(
@@ -98,28 +115,52 @@ public class NoteManager implements INoteManager {
 	}
 
 	/**
-	 * Load from mysql.
+	 * Load from mysql. The players are looked up once the rows are read, so
+	 * the connection is not held while they load.
 	 * 
 	 * @throws SQLException
 	 *             the SQL exception
 	 */
 	private static void loadFromMysql() throws SQLException {
-		final ResultSet rs = SH.getManager().getMysqlManager()
-				.query("SELECT * FROM notes");
-		while (rs.next()) {
-			final NoteManager manager = (NoteManager) SH.getManager()
-					.getNoteManager();
-			final INote note = new Note(SH.getManager().getMysqlManager()
-					.getDate(rs.getString("date")), SH.getManager()
-					.getPlayerDataManager()
-					.getPlayerData(rs.getString("playeruuid")), SH.getManager()
-					.getPlayerDataManager()
-					.getPlayerData(rs.getString("setteruuid")),
-					rs.getString("message"), rs.getInt("id"));
-			manager.notes.add(note);
+		final NoteManager manager = (NoteManager) SH.getManager()
+				.getNoteManager();
+		final List<Row> rows = new ArrayList<Row>();
+		SH.getManager().getMysqlManager()
+				.stream("SELECT * FROM notes", new RowHandler() {
+
+					@Override
+					public void handleRow(final ResultSet row)
+							throws SQLException {
+						rows.add(new Row(row));
+					}
+				});
+		final Map<String, IPlayerData> players = new HashMap<String, IPlayerData>();
+		for (final Row row : rows) {
+			manager.notes.add(new Note(row.date, lookup(players,
+					row.player), lookup(players, row.setter), row.message,
+					row.id));
 		}
 	}
 
+	/**
+	 * Looks up a player, once per uuid.
+	 * 
+	 * @param players
+	 *            the players looked up so far
+	 * @param uuid
+	 *            the uuid
+	 * @return the player data, or null if there is no such player
+	 */
+	private static IPlayerData lookup(final Map<String, IPlayerData> players,
+			final String uuid) {
+		if (players.containsKey(uuid))
+			return players.get(uuid);
+		final IPlayerData pd = SH.getManager().getPlayerDataManager()
+				.getPlayerData(uuid);
+		players.put(uuid, pd);
+		return pd;
+	}
+
 	/** The notes. */
 	private final List<INote> notes = new ArrayList<INote>();
 
@@ -234,7 +275,7 @@ public class NoteManager implements INoteManager {
 			return;
 		notes.remove(note);
 		SH.getManager().getMysqlManager()
-				.query("DELETE FROM notes WHERE id = " + note.getId());
+				.update("DELETE FROM notes WHERE id = ?", note.getId());
 	}
 
 	/*
@@ -26,19 +26,84 @@
 
 package info.nordbyen.survivalheaven.subplugins.playerdata;
 
+import info.nordbyen.survivalheaven.SH;
 import info.nordbyen.survivalheaven.api.playerdata.IPlayerData;
+import info.nordbyen.survivalheaven.api.playerdata.LeaderboardType;
 import info.nordbyen.survivalheaven.api.util.Translator;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bukkit.Location;
 
 /**
  * The Class PlayerData.
+ * 
+ * Every setter that changes a saved column marks it dirty, and the first
+ * change since the last save hands the player to
+ * {@link PlayerDataManager#markDirty(PlayerData)}, so a save only visits
+ * players that changed and only writes the columns that did.
+ * 
+ * Player data is written on the server thread only, except for the money,
+ * which may change on any thread while {@link #bankLock} is held. The money
+ * is not saved with the dirty columns: every change queues its own write of
+ * the balance, so the balance and the {@link BankManager} journal row queued
+ * with it reach the database together. Every change
+ * publishes a new {@link PlayerSnapshot}, which is what other threads should
+ * read. A snapshot is built while holding the player's lock, which is also
+ * held while the ips and badges lists change, so a money change on another
+ * thread can copy them safely.
  */
 public class PlayerData implements IPlayerData {
 
+	/**
+	 * The columns of the players table that can change after a player is
+	 * created, in the order they are written.
+	 */
+	enum Column {
+
+		/** The name. */
+		NAME("name"),
+		/** The ips. */
+		IPS("ips"),
+		/** The gamemode. */
+		GAMEMODE("gamemode"),
+		/** The lastlogin. */
+		LASTLOGIN("lastlogin"),
+		/** The timeplayed. */
+		TIMEPLAYED("timeplayed"),
+		/** The rank. */
+		RANK("rank"),
+		/** The badges. */
+		BADGES("badges"),
+		/** The level. */
+		LEVEL("level"),
+		/** The language. */
+		LANGUAGE("language");
+
+		/** The column name. */
+		final String column;
+		/** The bit of the column in a dirty mask. */
+		final int bit;
+
+		/**
+		 * Instantiates a new column.
+		 * 
+		 * @param column
+		 *            the column name
+		 */
+		private Column(final String column) {
+			this.column = column;
+			this.bit = 1 << ordinal();
+		}
+	}
+
+	/** The statement that saves the balance of one player. */
+	static final String BANK_SQL = "UPDATE `players` SET `bank` = ? WHERE `id` = ?";
+
 	/** The id. */
 	private final int id;
 	/** The ips. */
@@ -65,8 +130,14 @@ public class PlayerData implements IPlayerData {
 	private Translator language;
 	/** The level. */
 	private int level;
-	/** The money. */
-	private long money;
+	/** The money, changed only while {@link #bankLock} is held. */
+	private final AtomicLong money;
+	/** Held while the money changes. */
+	final Object bankLock = new Object();
+	/** The columns changed since the last save. */
+	private final AtomicInteger dirty = new AtomicInteger();
+	/** When the player was last looked up, for cache eviction. */
+	private volatile long lastAccess = System.currentTimeMillis();
 
 	/**
 	 * Instantiates a new player data.
@@ -106,20 +177,24 @@ public class PlayerData implements IPlayerData {
 			final int rank, final ArrayList<Integer> badges,
 			final Location lastlocation, final Translator language,
 			final int level, final long money, final int gamemode) {
-		this.setGamemode(gamemode);
+		this.gamemode = gamemode;
 		this.id = id;
-		this.setName(name);
+		this.name = name;
 		this.uuid = uuid;
 		this.firstlogin = firstlogin;
-		this.setLastlogin(lastlogin);
-		this.setTimeplayed(timeplayed);
-		this.setRank(rank);
-		this.setLastlocation(lastlocation);
-		this.setLanguage(language);
-		this.setLevel(level);
-		this.setMoney(money);
+		this.lastlogin = lastlogin;
+		this.timeplayed = timeplayed;
+		this.rank = rank;
+		this.lastlocation = lastlocation;
+		this.language = language;
+		this.level = level;
+		this.money = new AtomicLong(money);
 		this.ips = ips;
-		this.setBadges(badges);
+		for (final int badge : badges) {
+			if (!this.badges.contains(badge)) {
+				this.badges.add(badge);
+			}
+		}
 	}
 
 	/*
@@ -130,8 +205,11 @@ public class PlayerData implements IPlayerData {
 	 */
 	@Override
 	public void addBadge(final int badge) {
-		if (!badges.contains(badge)) {
-			badges.add(badge);
+		synchronized (this) {
+			if (!badges.contains(badge)) {
+				badges.add(badge);
+				markDirty(Column.BADGES);
+			}
 		}
 	}
 
@@ -144,10 +222,40 @@ public class PlayerData implements IPlayerData {
 	 */
 	@Override
 	public void addIp(final String ip) {
-		final boolean exists = ips.contains(ip);
-		if (!exists) {
-			ips.add(ip);
+		synchronized (this) {
+			if (!ips.contains(ip)) {
+				ips.add(ip);
+				markDirty(Column.IPS);
+			}
 		}
+		PlayerDataManager.ipSeen(this, ip);
+	}
+
+	/**
+	 * Adds to the money, unless the balance would drop below a minimum or
+	 * overflow. The caller must hold {@link #bankLock} and queue the new
+	 * balance, see {@link #getBankWrite()}. Once the balance has changed this
+	 * never throws, so a caller can rely on the result to undo it.
+	 * 
+	 * @param amount
+	 *            the amount, negative to take money
+	 * @param min
+	 *            the lowest balance allowed after the change
+	 * @return true, if the money was changed
+	 */
+	boolean addMoney(final long amount, final long min) {
+		final long old = money.get();
+		final long now = old + amount;
+		if ((now < min) || ((amount > 0) && (now < old))
+				|| ((amount < 0) && (now > old)))
+			return false;
+		money.set(now);
+		try {
+			moneyChanged();
+		} catch (final RuntimeException e) {
+			e.printStackTrace();
+		}
+		return true;
 	}
 
 	/*
@@ -169,11 +277,10 @@ public class PlayerData implements IPlayerData {
 	 */
 	@Override
 	public String getBadgesAsString() {
-		String list = "";
-		for (final int badge : badges) {
-			list += badge + ",";
+		synchronized (this) {
+			return SH.getManager().getMysqlManager().getCodec()
+					.encodeIntList(badges);
 		}
-		return list;
 	}
 
 	/*
@@ -198,6 +305,25 @@ public class PlayerData implements IPlayerData {
 		return gamemode;
 	}
 
+	/**
+	 * Gets the write-behind key of the balance write.
+	 * 
+	 * @return the key
+	 */
+	String getBankKey() {
+		return "players.bank:" + id;
+	}
+
+	/**
+	 * Gets the params of {@link #BANK_SQL} for the current balance. The
+	 * caller must hold {@link #bankLock}.
+	 * 
+	 * @return the params
+	 */
+	Object[] getBankWrite() {
+		return new Object[] { money.get(), id };
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -226,12 +352,10 @@ public class PlayerData implements IPlayerData {
 	 */
 	@Override
 	public String getIpsAsString() {
-		String s = "";
-		for (final String ip : ips) {
-			s += ip + ",";
+		synchronized (this) {
+			return SH.getManager().getMysqlManager().getCodec()
+					.encodeStringList(ips);
 		}
-		s = s.substring(0, s.length() - 1);
-		return s;
 	}
 
 	/*
@@ -245,6 +369,15 @@ public class PlayerData implements IPlayerData {
 		return language;
 	}
 
+	/**
+	 * Gets when the player was last looked up.
+	 * 
+	 * @return the last access time in milliseconds
+	 */
+	long getLastAccess() {
+		return lastAccess;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -284,7 +417,7 @@ public class PlayerData implements IPlayerData {
 	 */
 	@Override
 	public long getMoney() {
-		return money;
+		return money.get();
 	}
 
 	/*
@@ -328,6 +461,46 @@ public class PlayerData implements IPlayerData {
 		return uuid;
 	}
 
+	/**
+	 * Checks if any column has changed since the last save.
+	 * 
+	 * @return true, if the player has unsaved changes
+	 */
+	boolean isDirty() {
+		return dirty.get() != 0;
+	}
+
+	/**
+	 * Marks a column dirty and publishes a new snapshot, handing the player to
+	 * the manager if nothing was dirty before.
+	 * 
+	 * @param column
+	 *            the column
+	 */
+	private void markDirty(final Column column) {
+		PlayerDataManager.publish(this);
+		int old;
+		do {
+			old = dirty.get();
+			if ((old & column.bit) != 0)
+				return;
+		} while (!dirty.compareAndSet(old, old | column.bit));
+		if (old == 0) {
+			PlayerDataManager.markDirty(this);
+		}
+	}
+
+	/**
+	 * Moves the player on the money leaderboard. The caller holds
+	 * {@link #bankLock}, so the balance read here is the newest one.
+	 */
+	private void moneyChanged() {
+		synchronized (this) {
+			PlayerDataManager.statChanged(LeaderboardType.MONEY, this,
+					money.get());
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -336,7 +509,11 @@ public class PlayerData implements IPlayerData {
 	 */
 	@Override
 	public void removeBadge(final int badge) {
-		badges.remove(badge);
+		synchronized (this) {
+			if (badges.remove(Integer.valueOf(badge))) {
+				markDirty(Column.BADGES);
+			}
+		}
 	}
 
 	/*
@@ -361,7 +538,10 @@ public class PlayerData implements IPlayerData {
 	 */
 	@Override
 	public void setGamemode(final int gamemode) {
-		this.gamemode = gamemode;
+		if (this.gamemode != gamemode) {
+			this.gamemode = gamemode;
+			markDirty(Column.GAMEMODE);
+		}
 	}
 
 	/*
@@ -373,7 +553,10 @@ public class PlayerData implements IPlayerData {
 	 */
 	@Override
 	public void setLanguage(final Translator language) {
-		this.language = language;
+		if (this.language != language) {
+			this.language = language;
+			markDirty(Column.LANGUAGE);
+		}
 	}
 
 	/*
@@ -386,6 +569,7 @@ public class PlayerData implements IPlayerData {
 	@Override
 	public void setLastlocation(final Location lastlocation) {
 		this.lastlocation = lastlocation;
+		PlayerDataManager.publish(this);
 	}
 
 	/*
@@ -397,7 +581,10 @@ public class PlayerData implements IPlayerData {
 	 */
 	@Override
 	public void setLastlogin(final Date lastlogin) {
-		this.lastlogin = lastlogin;
+		if (!Objects.equals(this.lastlogin, lastlogin)) {
+			this.lastlogin = lastlogin;
+			markDirty(Column.LASTLOGIN);
+		}
 	}
 
 	/*
@@ -408,7 +595,11 @@ public class PlayerData implements IPlayerData {
 	 */
 	@Override
 	public void setLevel(final int level) {
-		this.level = level;
+		if (this.level != level) {
+			this.level = level;
+			markDirty(Column.LEVEL);
+			PlayerDataManager.statChanged(LeaderboardType.LEVEL, this, level);
+		}
 	}
 
 	/*
@@ -419,7 +610,13 @@ public class PlayerData implements IPlayerData {
 	 */
 	@Override
 	public void setMoney(final long money) {
-		this.money = money;
+		synchronized (bankLock) {
+			if (this.money.getAndSet(money) == money)
+				return;
+			moneyChanged();
+			SH.getManager().getMysqlManager()
+					.enqueue(getBankKey(), BANK_SQL, getBankWrite());
+		}
 	}
 
 	/*
@@ -431,7 +628,12 @@ public class PlayerData implements IPlayerData {
 	 */
 	@Override
 	public void setName(final String name) {
-		this.name = name;
+		if (!Objects.equals(this.name, name)) {
+			final String oldName = this.name;
+			this.name = name;
+			markDirty(Column.NAME);
+			PlayerDataManager.nameChanged(this, oldName);
+		}
 	}
 
 	/*
@@ -441,7 +643,10 @@ public class PlayerData implements IPlayerData {
 	 */
 	@Override
 	public void setRank(final int rank) {
-		this.rank = rank;
+		if (this.rank != rank) {
+			this.rank = rank;
+			markDirty(Column.RANK);
+		}
 	}
 
 	/*
@@ -453,6 +658,27 @@ public class PlayerData implements IPlayerData {
 	 */
 	@Override
 	public void setTimeplayed(final long timeplayed) {
-		this.timeplayed = timeplayed;
+		if (this.timeplayed != timeplayed) {
+			this.timeplayed = timeplayed;
+			markDirty(Column.TIMEPLAYED);
+			PlayerDataManager.statChanged(LeaderboardType.TIMEPLAYED, this, timeplayed);
+		}
+	}
+
+	/**
+	 * Takes the dirty columns, leaving none dirty. A change made after this
+	 * hands the player to the manager again.
+	 * 
+	 * @return the dirty mask
+	 */
+	int takeDirty() {
+		return dirty.getAndSet(0);
+	}
+
+	/**
+	 * Records a lookup of the player.
+	 */
+	void touch() {
+		lastAccess = System.currentTimeMillis();
 	}
 }
@@ -27,27 +27,247 @@
 package info.nordbyen.survivalheaven.subplugins.playerdata;
 
 import info.nordbyen.survivalheaven.SH;
+import info.nordbyen.survivalheaven.api.mysql.IColumnCodec;
+import info.nordbyen.survivalheaven.api.mysql.IWriteQueueStats;
+import info.nordbyen.survivalheaven.api.mysql.RowHandler;
 import info.nordbyen.survivalheaven.api.playerdata.IPlayerData;
 import info.nordbyen.survivalheaven.api.playerdata.IPlayerDataManager;
+import info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot;
+import info.nordbyen.survivalheaven.api.playerdata.LeaderboardEntry;
+import info.nordbyen.survivalheaven.api.playerdata.LeaderboardType;
+import info.nordbyen.survivalheaven.api.playerdata.PlayerDataUpdate;
+import info.nordbyen.survivalheaven.api.util.IpAddress;
 import info.nordbyen.survivalheaven.api.util.Translator;
+import info.nordbyen.survivalheaven.subplugins.playerdata.PlayerData.Column;
 
+import java.io.File;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
 
 /**
  * The Class PlayerDataManager.
+ * 
+ * Players are loaded from the database the first time they are looked up and
+ * kept in an access ordered cache. {@link #evict()} drops offline players
+ * that have been idle for {@link #IDLE_TIME}, or for {@link #MIN_IDLE} while
+ * more than {@link #MAX_CACHED} players are cached, least recently used
+ * first. Online players and players with unsaved changes are never evicted.
+ * 
+ * Names are looked up in a {@link NameIndex} that holds every known player,
+ * loaded at enable and kept up to date by {@link PlayerData#setName(String)}.
+ * Addresses are looked up the same way in an {@link IpIndex}, kept up to date
+ * by {@link PlayerData#addIp(String)}.
+ * 
+ * Money, time played and level are ranked in a {@link Leaderboard} each,
+ * holding every known player, loaded at enable and moved in place by the
+ * setters.
+ * 
+ * Player data is written by the server thread only; other threads hand their
+ * changes to {@link #update(String, PlayerDataUpdate)}. Every change publishes
+ * an immutable {@link PlayerSnapshot} into a concurrent map, which is what
+ * {@link #getSnapshot(String)} reads, so async code such as chat handlers
+ * never sees a player half way through a change.
  */
 public final class PlayerDataManager implements IPlayerDataManager {
 
-	/** The playerdatalist. */
-	private static HashMap<String, IPlayerData> playerdatalist = new HashMap<String, IPlayerData>();
+	/** The number of cached players above which idle ones are evicted early. */
+	private static final int MAX_CACHED = 1000;
+	/** How long a player is kept after the last lookup, in milliseconds. */
+	private static final long IDLE_TIME = 1000L * 60 * 10;
+	/**
+	 * How long a player is kept at least, in milliseconds. Longer than the
+	 * save interval, so a change is in the database before its player can be
+	 * evicted and loaded again.
+	 */
+	private static final long MIN_IDLE = 1000L * 60 * 2;
+	/**
+	 * How long a uuid with no player is remembered, in milliseconds, so
+	 * lookups of it do not query the database each time.
+	 */
+	private static final long UNKNOWN_TIME = 1000L * 30;
+	/** The cached players in access order, guarded by itself. */
+	private static final LinkedHashMap<String, PlayerData> playerdatalist = new LinkedHashMap<String, PlayerData>(
+			16, 0.75f, true);
+	/** The players with unsaved changes. */
+	private static final Set<PlayerData> dirty = Collections
+			.newSetFromMap(new ConcurrentHashMap<PlayerData, Boolean>());
+	/** The update statements by dirty mask. */
+	private static final Map<Integer, String> updates = new ConcurrentHashMap<Integer, String>();
+	/** The names of every known player. */
+	private static final NameIndex names = new NameIndex();
+	/** The addresses of every known player. */
+	private static final IpIndex ips = new IpIndex();
+	/** The leaderboard of each ranked stat. */
+	private static final EnumMap<LeaderboardType, Leaderboard> leaderboards = new EnumMap<LeaderboardType, Leaderboard>(
+			LeaderboardType.class);
+	static {
+		for (final LeaderboardType type : LeaderboardType.values()) {
+			leaderboards.put(type, new Leaderboard());
+		}
+	}
+	/** When each uuid known to have no player is forgotten. */
+	private static final ConcurrentHashMap<String, Long> unknown = new ConcurrentHashMap<String, Long>();
+	/** The latest snapshot of every cached player. */
+	private static final ConcurrentHashMap<String, PlayerSnapshot> snapshots = new ConcurrentHashMap<String, PlayerSnapshot>();
+
+	/**
+	 * Publishes a new snapshot of a cached player after a change.
+	 * 
+	 * @param pd
+	 *            the pd
+	 */
+	static void publish(final PlayerData pd) {
+		synchronized (pd) {
+			snapshots.replace(pd.getUUID(), new PlayerSnapshot(pd));
+		}
+	}
+
+	/**
+	 * Moves a player on a leaderboard after a change.
+	 * 
+	 * @param type
+	 *            the type
+	 * @param pd
+	 *            the pd
+	 * @param value
+	 *            the new value
+	 */
+	static void statChanged(final LeaderboardType type, final PlayerData pd,
+			final long value) {
+		leaderboards.get(type).set(pd.getUUID(), value);
+	}
+
+	/**
+	 * Records that a player has used an address, adding it to the address
+	 * index and updating when it was last seen.
+	 * 
+	 * @param pd
+	 *            the pd
+	 * @param ip
+	 *            the address
+	 */
+	static void ipSeen(final PlayerData pd, final String ip) {
+		final IpAddress address = IpAddress.parse(ip);
+		if (address == null)
+			return;
+		ips.add(address, pd.getUUID());
+		final long now = System.currentTimeMillis();
+		SH.getManager()
+				.getMysqlManager()
+				.enqueue(
+						"player_ips:" + pd.getUUID() + ":" + address,
+						"INSERT INTO `player_ips` ( `ip_high`, `ip_low`, "
+								+ "`playeruuid`, `first_seen`, `last_seen` ) "
+								+ "VALUES ( ?, ?, ?, ?, ? ) ON DUPLICATE KEY "
+								+ "UPDATE `last_seen` = VALUES(`last_seen`)",
+						address.getHigh(), address.getLow(), pd.getUUID(),
+						now, now);
+	}
+
+	/**
+	 * Remembers a player with unsaved changes until the next save.
+	 * 
+	 * @param pd
+	 *            the pd
+	 */
+	static void markDirty(final PlayerData pd) {
+		dirty.add(pd);
+	}
+
+	/**
+	 * Updates the name index and records the new name in the name history.
+	 * 
+	 * @param pd
+	 *            the pd
+	 * @param oldName
+	 *            the old name, or null for a new player
+	 */
+	static void nameChanged(final PlayerData pd, final String oldName) {
+		names.setName(pd.getUUID(), oldName, pd.getName());
+		names.addHistory(pd.getUUID(), pd.getName());
+		SH.getManager()
+				.getMysqlManager()
+				.enqueue(null,
+						"INSERT INTO `name_history` ( `uuid`, `name`, `since` ) "
+								+ "VALUES ( ?, ?, ? )", pd.getUUID(),
+						pd.getName(), System.currentTimeMillis());
+	}
+
+	/**
+	 * Inserts a new player and caches it, using the generated key instead of
+	 * reading the row back.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @param name
+	 *            the name
+	 * @param ip
+	 *            the ip
+	 * @param gamemode
+	 *            the gamemode
+	 * @return the player data, or null if the insert failed
+	 */
+	private PlayerData create(final String uuid, final String name,
+			final String ip, final int gamemode) {
+		final long now = System.currentTimeMillis();
+		final long id;
+		try {
+			id = SH.getManager()
+					.getMysqlManager()
+					.insertAndGetKey(
+							"INSERT INTO `players` ( `uuid`, `name`, `ips`, "
+									+ "`gamemode`, `firstlogin`, `lastlogin` ) "
+									+ "VALUES ( ?, ?, ?, ?, ?, ? )", uuid,
+							name, ip, gamemode, now, now);
+		} catch (final SQLException e) {
+			e.printStackTrace();
+			return null;
+		}
+		if (id < 0)
+			return null;
+		final ArrayList<String> ips = new ArrayList<String>();
+		ips.add(ip);
+		final PlayerData created = new PlayerData((int) id, name, ips, uuid,
+				new Date(now), new Date(now), 0, 1, new ArrayList<Integer>(),
+				SH.getManager().getMysqlManager().getCodec()
+						.decodeLocation(null), Translator.NORSK, 1, 300,
+				gamemode);
+		synchronized (playerdatalist) {
+			final PlayerData cached = playerdatalist.get(uuid);
+			if (cached != null) {
+				cached.touch();
+				return cached;
+			}
+			playerdatalist.put(uuid, created);
+			snapshots.put(uuid, new PlayerSnapshot(created));
+		}
+		unknown.remove(uuid);
+		nameChanged(created, null);
+		statChanged(LeaderboardType.MONEY, created, created.getMoney());
+		statChanged(LeaderboardType.TIMEPLAYED, created,
+				created.getTimeplayed());
+		statChanged(LeaderboardType.LEVEL, created, created.getLevel());
+		return created;
+	}
 
 	/*
 	 * (non-Javadoc)
@@ -61,152 +281,155 @@ public final class PlayerDataManager implements IPlayerDataManager {
 		/* Is the data exists, return */
 		if (getPlayerData(p.getUniqueId().toString()) != null)
 			return;
-		SH.getManager()
-				.getMysqlManager()
-				.insert("players",
-						new Object[] { "uuid", "name", "ips", "gamemode",
-								"firstlogin", "lastlogin" },
-						new Object[] {
-								p.getUniqueId().toString(),
-								p.getName(),
-								p.getAddress().toString().replace("/", "")
-										.split(":")[0],
-								p.getGameMode().getValue(),
-								SH.getManager().getMysqlManager()
-										.getDate(new Date()),
-								SH.getManager().getMysqlManager()
-										.getDate(new Date()) });
-		try {
-			final ResultSet rs = SH
-					.getManager()
-					.getMysqlManager()
-					.query("SELECT * FROM `players` WHERE `uuid` = \""
-							+ p.getUniqueId().toString() + "\"");
-			if (rs.next()) {
-				final int id = rs.getInt("id");
-				final ArrayList<String> ips = new ArrayList<String>();
-				for (final String ip : rs.getString("ips").split(";")) {
-					ips.add(ip);
-				}
-				final String name = rs.getString("name");
-				final String uuid = rs.getString("uuid");
-				final Date firstlogin = SH.getManager().getMysqlManager()
-						.getDate(rs.getString("firstlogin"));
-				final Date lastlogin = SH.getManager().getMysqlManager()
-						.getDate(rs.getString("lastlogin"));
-				final long timeplayed = rs.getLong("timeplayed");
-				final int rank = rs.getInt("rank");
-				final ArrayList<Integer> badges = new ArrayList<Integer>();
-				final String[] ba = rs.getString("badges").split(",");
-				for (final String badge : ba) {
-					try {
-						badges.add(Integer.parseInt(badge));
-					} catch (final Exception e) {
-					} // Ignorere errorer her
-				}
-				final Location lastlocation = SH.getManager().getMysqlManager()
-						.getLocation(rs.getString("lastlocation"));
-				Translator language;
-				final String ling = rs.getString("language");
-				if (ling.equalsIgnoreCase("norsk")) {
-					language = Translator.NORSK;
-				} else if (ling.equalsIgnoreCase("engelsk")) {
-					language = Translator.ENGELSK;
-				} else {
-					language = Translator.NORSK;
-				}
-				final int level = rs.getInt("level");
-				final long money = rs.getInt("bank");
-				final int gamemode = rs.getInt("gamemode");
-				final PlayerData data = new PlayerData(id, name, ips, uuid,
-						firstlogin, lastlogin, timeplayed, rank, badges,
-						lastlocation, language, level, money, gamemode);
-				playerdatalist.put(data.getUUID(), data);
+		final PlayerData data = create(p.getUniqueId().toString(),
+				p.getName(), p.getAddress().toString().replace("/", "")
+						.split(":")[0], p.getGameMode().getValue());
+		if (data != null) {
+			for (final String ip : data.getIps()) {
+				ipSeen(data, ip);
 			}
-		} catch (final SQLException e) {
-			e.printStackTrace();
 		}
 	}
 
 	/**
-	 * Creates the table.
+	 * Drops idle offline players from the cache. Must run on the server
+	 * thread, before {@link #saveDataToDatabase()} in the same tick, so a
+	 * player is only evicted once its last save had a whole interval to
+	 * reach the database. Nothing is evicted while writes are held back in
+	 * the journal, since the database would hand back stale rows.
+	 * 
+	 * @return the number of players evicted
 	 */
-	void createTable() {
-		try {
-			SH.getManager()
-					.getMysqlManager()
-					.query("CREATE TABLE IF NOT EXISTS `players` ("
-							+ "`id` INT(11) NOT NULL AUTO_INCREMENT, "
-							+ "`uuid` VARCHAR(255) NOT NULL, "
-							+ "`name` VARCHAR(255) NOT NULL, "
-							+ "`ips` LONGTEXT NOT NULL, "
-							+ "`gamemode` INT(2) NOT NULL DEFAULT 0, "
-							+ "`firstlogin` VARCHAR(255) NOT NULL, "
-							+ "`lastlogin` VARCHAR(255) NOT NULL, "
-							+ "`timeplayed` BIGINT(11) DEFAULT 0 NOT NULL, "
-							+ "`bank` INT(11) DEFAULT 300, "
-							+ "`rank` INT(11) DEFAULT 1, "
-							+ "`badges` VARCHAR(255) DEFAULT \"\", "
-							+ "`level` INT(11) DEFAULT 1, "
-							+ "`language` VARCHAR(255) DEFAULT \"norsk\", "
-							+ "`lastlocation` VARCHAR(255) DEFAULT \"NO\" NOT NULL, "
-							+ "PRIMARY KEY (`id`) );");
-		} catch (final SQLException e) {
-			e.printStackTrace();
+	int evict() {
+		final IWriteQueueStats queue = SH.getManager().getMysqlManager()
+				.getWriteQueueStats();
+		if ((queue == null) || !queue.isDatabaseAvailable()
+				|| (queue.getJournaledWrites() > 0))
+			return 0;
+		final long now = System.currentTimeMillis();
+		int evicted = 0;
+		synchronized (playerdatalist) {
+			final Iterator<PlayerData> it = playerdatalist.values().iterator();
+			while (it.hasNext()) {
+				final PlayerData pd = it.next();
+				final long idle = now - pd.getLastAccess();
+				if (idle < MIN_IDLE) {
+					break;
+				}
+				if ((idle < IDLE_TIME)
+						&& (playerdatalist.size() <= MAX_CACHED)) {
+					continue;
+				}
+				if (pd.isDirty()
+						|| (Bukkit.getPlayer(UUID.fromString(pd.getUUID())) != null)) {
+					continue;
+				}
+				it.remove();
+				snapshots.remove(pd.getUUID());
+				evicted++;
+			}
 		}
+		return evicted;
 	}
 
 	/**
-	 * Update data from database.
+	 * Gets the statement that updates the dirty columns of one player. Rows
+	 * with the same dirty columns share a statement, so the write-behind
+	 * queue sends them as one batch.
+	 * 
+	 * @param mask
+	 *            the dirty mask
+	 * @return the sql
 	 */
-	void updateDataFromDatabase() {
-		try {
-			final ResultSet rs = SH.getManager().getMysqlManager()
-					.query("SELECT * FROM `players`");
-			while (rs.next()) {
-				final int id = rs.getInt("id");
-				final ArrayList<String> ips = new ArrayList<String>();
-				for (final String ip : rs.getString("ips").split(";")) {
-					ips.add(ip);
-				}
-				final String name = rs.getString("name");
-				final String uuid = rs.getString("uuid");
-				final Date firstlogin = SH.getManager().getMysqlManager()
-						.getDate(rs.getString("firstlogin"));
-				final Date lastlogin = SH.getManager().getMysqlManager()
-						.getDate(rs.getString("lastlogin"));
-				final long timeplayed = rs.getLong("timeplayed");
-				final int rank = rs.getInt("rank");
-				final ArrayList<Integer> badges = new ArrayList<Integer>();
-				final String[] ba = rs.getString("badges").split(",");
-				for (final String badge : ba) {
-					try {
-						badges.add(Integer.parseInt(badge));
-					} catch (final Exception e) {
-					} // Ignorere errorer her
+	private String getUpdateSql(final int mask) {
+		String sql = updates.get(mask);
+		if (sql == null) {
+			final StringBuilder sb = new StringBuilder("UPDATE players SET ");
+			boolean first = true;
+			for (final Column column : Column.values()) {
+				if ((mask & column.bit) == 0) {
+					continue;
 				}
-				final Location lastlocation = SH.getManager().getMysqlManager()
-						.getLocation(rs.getString("lastlocation"));
-				Translator language;
-				final String ling = rs.getString("language");
-				if (ling.equalsIgnoreCase("norsk")) {
-					language = Translator.NORSK;
-				} else if (ling.equalsIgnoreCase("engelsk")) {
-					language = Translator.ENGELSK;
-				} else {
-					language = Translator.NORSK;
+				if (!first) {
+					sb.append(", ");
 				}
-				final int level = rs.getInt("level");
-				final long money = rs.getInt("bank");
-				final int gamemode = rs.getInt("gamemode");
-				final PlayerData data = new PlayerData(id, name, ips, uuid,
-						firstlogin, lastlogin, timeplayed, rank, badges,
-						lastlocation, language, level, money, gamemode);
-				playerdatalist.put(data.getUUID(), data);
+				sb.append('`').append(column.column).append("` = ?");
+				first = false;
 			}
-		} catch (final SQLException e) {
-			e.printStackTrace();
+			sql = sb.append(" WHERE `uuid` = ?").toString();
+			updates.put(mask, sql);
 		}
+		return sql;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.IPlayerDataManager#getAlts(info
+	 * .nordbyen.survivalheaven.api.playerdata.IPlayerData)
+	 */
+	@Override
+	public List<IPlayerData> getAlts(final IPlayerData pd) {
+		final Set<String> uuids = new LinkedHashSet<String>();
+		for (final String ip : pd.getIps()) {
+			final IpAddress address = IpAddress.parse(ip);
+			if (address != null) {
+				uuids.addAll(ips.get(address));
+			}
+		}
+		uuids.remove(pd.getUUID());
+		return getPlayerData(uuids);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.IPlayerDataManager#getLeaderboard
+	 * (info.nordbyen.survivalheaven.api.playerdata.LeaderboardType, int, int)
+	 */
+	@Override
+	public List<LeaderboardEntry> getLeaderboard(final LeaderboardType type,
+			final int offset, final int limit) {
+		return leaderboards.get(type).get(offset, limit, names);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.playerdata.IPlayerDataManager#
+	 * getLeaderboardRank
+	 * (info.nordbyen.survivalheaven.api.playerdata.LeaderboardType,
+	 * java.lang.String)
+	 */
+	@Override
+	public int getLeaderboardRank(final LeaderboardType type, final String uuid) {
+		return leaderboards.get(type).rank(uuid);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.IPlayerDataManager#getNameHistory
+	 * (java.lang.String)
+	 */
+	@Override
+	public List<String> getNameHistory(final String uuid) {
+		return names.getHistory(uuid);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.playerdata.IPlayerDataManager#
+	 * getNamesStartingWith(java.lang.String, int)
+	 */
+	@Override
+	public List<String> getNamesStartingWith(final String prefix,
+			final int limit) {
+		return names.complete(prefix, limit);
 	}
 
 	/*
@@ -218,7 +441,53 @@ public final class PlayerDataManager implements IPlayerDataManager {
 	 */
 	@Override
 	public IPlayerData getPlayerData(final String uuid) {
-		return playerdatalist.get(uuid);
+		if (uuid == null)
+			return null;
+		synchronized (playerdatalist) {
+			final PlayerData pd = playerdatalist.get(uuid);
+			if (pd != null) {
+				pd.touch();
+				return pd;
+			}
+		}
+		final Long forget = unknown.get(uuid);
+		if ((forget != null) && (forget > System.currentTimeMillis()))
+			return null;
+		return load(uuid);
+	}
+
+	/**
+	 * Gets the players with the given uuids, skipping unknown ones.
+	 * 
+	 * @param uuids
+	 *            the uuids
+	 * @return the players
+	 */
+	private List<IPlayerData> getPlayerData(final Collection<String> uuids) {
+		final List<IPlayerData> result = new ArrayList<IPlayerData>(
+				uuids.size());
+		for (final String uuid : uuids) {
+			final IPlayerData pd = getPlayerData(uuid);
+			if (pd != null) {
+				result.add(pd);
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.IPlayerDataManager#
+	 * getPlayerDataFromIp(java.lang.String)
+	 */
+	@Override
+	public List<IPlayerData> getPlayerDataFromIp(final String ip) {
+		final IpAddress address = IpAddress.parse(ip);
+		if (address == null)
+			return new ArrayList<IPlayerData>();
+		return getPlayerData(ips.get(address));
 	}
 
 	/*
@@ -231,12 +500,252 @@ public final class PlayerDataManager implements IPlayerDataManager {
 	public IPlayerData getPlayerDataFromName(final String name) {
 		if (name == null)
 			return null;
-		for (final Entry<String, IPlayerData> entry : playerdatalist.entrySet()) {
-			final IPlayerData data = entry.getValue();
-			if (data.getName().equalsIgnoreCase(name))
-				return data;
+		final String uuid = names.getUuid(name);
+		return (uuid == null) ? null : getPlayerData(uuid);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.playerdata.IPlayerDataManager#
+	 * getPlayerDataFromPreviousName(java.lang.String)
+	 */
+	@Override
+	public List<IPlayerData> getPlayerDataFromPreviousName(final String name) {
+		if (name == null)
+			return new ArrayList<IPlayerData>();
+		return getPlayerData(names.getPreviousUsers(name));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.IPlayerDataManager#getSnapshot
+	 * (java.lang.String)
+	 */
+	@Override
+	public IPlayerSnapshot getSnapshot(final String uuid) {
+		if (uuid == null)
+			return null;
+		final PlayerSnapshot snapshot = snapshots.get(uuid);
+		if ((snapshot != null) || (getPlayerData(uuid) == null))
+			return snapshot;
+		return snapshots.get(uuid);
+	}
+
+	/**
+	 * Loads a player into the cache, or returns the cached one if another
+	 * thread loaded it first. A uuid with no player is remembered for
+	 * {@link #UNKNOWN_TIME}.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 * @return the player data, or null if there is no such player
+	 */
+	private PlayerData load(final String uuid) {
+		final PlayerData loaded;
+		try {
+			final ResultSet rs = SH.getManager().getMysqlManager()
+					.select("SELECT * FROM `players` WHERE `uuid` = ?", uuid);
+			if (rs == null)
+				return null;
+			if (!rs.next()) {
+				final long now = System.currentTimeMillis();
+				if (unknown.size() >= MAX_CACHED) {
+					final Iterator<Long> it = unknown.values().iterator();
+					while (it.hasNext()) {
+						if (it.next() <= now) {
+							it.remove();
+						}
+					}
+				}
+				unknown.put(uuid, now + UNKNOWN_TIME);
+				return null;
+			}
+			loaded = readPlayerData(rs);
+		} catch (final SQLException e) {
+			e.printStackTrace();
+			return null;
+		}
+		synchronized (playerdatalist) {
+			final PlayerData cached = playerdatalist.get(loaded.getUUID());
+			if (cached != null) {
+				cached.touch();
+				return cached;
+			}
+			playerdatalist.put(loaded.getUUID(), loaded);
+			snapshots.put(loaded.getUUID(), new PlayerSnapshot(loaded));
+		}
+		return loaded;
+	}
+
+	/**
+	 * Fills the address index from the player_ips table.
+	 */
+	void loadIps() {
+		ips.clear();
+		try {
+			SH.getManager()
+					.getMysqlManager()
+					.stream("SELECT `ip_high`, `ip_low`, `playeruuid` "
+							+ "FROM `player_ips`", new RowHandler() {
+
+						@Override
+						public void handleRow(final ResultSet row)
+								throws SQLException {
+							ips.add(new IpAddress(row.getLong(1), row
+									.getLong(2)), row.getString(3));
+						}
+					});
+		} catch (final SQLException e) {
+			e.printStackTrace();
 		}
-		return null;
+	}
+
+	/**
+	 * Fills the leaderboards from the players table.
+	 */
+	void loadLeaderboards() {
+		for (final Leaderboard leaderboard : leaderboards.values()) {
+			leaderboard.clear();
+		}
+		try {
+			SH.getManager()
+					.getMysqlManager()
+					.stream("SELECT `uuid`, `bank`, `timeplayed`, `level` "
+							+ "FROM `players`", new RowHandler() {
+
+						@Override
+						public void handleRow(final ResultSet row)
+								throws SQLException {
+							final String uuid = row.getString(1);
+							leaderboards.get(LeaderboardType.MONEY).set(uuid,
+									row.getLong(2));
+							leaderboards.get(LeaderboardType.TIMEPLAYED).set(
+									uuid, row.getLong(3));
+							leaderboards.get(LeaderboardType.LEVEL).set(uuid,
+									row.getLong(4));
+						}
+					});
+		} catch (final SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Fills the name index with the current and previous names of every
+	 * known player. Only the uuid and name columns are read.
+	 */
+	void loadNames() {
+		names.clear();
+		try {
+			SH.getManager()
+					.getMysqlManager()
+					.stream("SELECT `uuid`, `name` FROM `players` "
+							+ "ORDER BY `lastlogin`", new RowHandler() {
+
+						@Override
+						public void handleRow(final ResultSet row)
+								throws SQLException {
+							names.setName(row.getString(1), null,
+									row.getString(2));
+						}
+					});
+			SH.getManager()
+					.getMysqlManager()
+					.stream("SELECT `uuid`, `name` FROM `name_history` "
+							+ "ORDER BY `since`", new RowHandler() {
+
+						@Override
+						public void handleRow(final ResultSet row)
+								throws SQLException {
+							names.addHistory(row.getString(1),
+									row.getString(2));
+						}
+					});
+		} catch (final SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Fills the indexes from a warm start file written by
+	 * {@link #saveWarmStart(File)}, and deletes the file.
+	 * 
+	 * @param file
+	 *            the file
+	 * @return true, if the indexes were loaded; false if they must be loaded
+	 *         from the database
+	 */
+	boolean loadWarmStart(final File file) {
+		return new WarmStart(names, ips, leaderboards).load(file);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.playerdata.IPlayerDataManager#
+	 * preparePlayerData(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	@SuppressWarnings("deprecation")
+	public IPlayerData preparePlayerData(final String uuid, final String name,
+			final String ip) {
+		synchronized (playerdatalist) {
+			final PlayerData cached = playerdatalist.get(uuid);
+			if (cached != null) {
+				cached.touch();
+				return cached;
+			}
+		}
+		final PlayerData loaded = load(uuid);
+		if (loaded != null)
+			return loaded;
+		/* A new player joins in the server's default game mode */
+		return create(uuid, name, ip, Bukkit.getDefaultGameMode().getValue());
+	}
+
+	/**
+	 * Reads a player from the current row of the players table.
+	 * 
+	 * @param row
+	 *            the row
+	 * @return the player data
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	private PlayerData readPlayerData(final ResultSet row) throws SQLException {
+		final IColumnCodec codec = SH.getManager().getMysqlManager()
+				.getCodec();
+		final int id = row.getInt("id");
+		final ArrayList<String> ips = new ArrayList<String>(
+				codec.decodeStringList(row.getString("ips")));
+		final String name = row.getString("name");
+		final String uuid = row.getString("uuid");
+		final Date firstlogin = codec.decodeDate(row.getLong("firstlogin"));
+		final Date lastlogin = codec.decodeDate(row.getLong("lastlogin"));
+		final long timeplayed = row.getLong("timeplayed");
+		final int rank = row.getInt("rank");
+		final ArrayList<Integer> badges = new ArrayList<Integer>(
+				codec.decodeIntList(row.getString("badges")));
+		final Location lastlocation = codec.decodeLocation(row
+				.getString("lastlocation"));
+		Translator language;
+		final String ling = row.getString("language");
+		if (ling.equalsIgnoreCase("norsk")) {
+			language = Translator.NORSK;
+		} else if (ling.equalsIgnoreCase("engelsk")) {
+			language = Translator.ENGELSK;
+		} else {
+			language = Translator.NORSK;
+		}
+		final int level = row.getInt("level");
+		final long money = row.getLong("bank");
+		final int gamemode = row.getInt("gamemode");
+		return new PlayerData(id, name, ips, uuid, firstlogin, lastlogin,
+				timeplayed, rank, badges, lastlocation, language, level, money,
+				gamemode);
 	}
 
 	/*
@@ -247,33 +756,115 @@ public final class PlayerDataManager implements IPlayerDataManager {
 	 */
 	@Override
 	public void saveDataToDatabase() {
-		for (final Entry<String, IPlayerData> entry : playerdatalist.entrySet()) {
-			final IPlayerData pd = entry.getValue();
-			try {
+		if (dirty.isEmpty())
+			return;
+		final IColumnCodec codec = SH.getManager().getMysqlManager()
+				.getCodec();
+		final TreeMap<Integer, List<Object[]>> rows = new TreeMap<Integer, List<Object[]>>();
+		final Iterator<PlayerData> it = dirty.iterator();
+		while (it.hasNext()) {
+			final PlayerData pd = it.next();
+			it.remove();
+			final int mask = pd.takeDirty();
+			if (mask == 0) {
+				continue;
+			}
+			final List<Object> params = new ArrayList<Object>();
+			for (final Column column : Column.values()) {
+				if ((mask & column.bit) == 0) {
+					continue;
+				}
+				switch (column) {
+				case NAME:
+					params.add(pd.getName());
+					break;
+				case IPS:
+					params.add(pd.getIpsAsString());
+					break;
+				case GAMEMODE:
+					params.add(pd.getGamemode());
+					break;
+				case LASTLOGIN:
+					params.add(codec.encodeDate(pd.getLastlogin()));
+					break;
+				case TIMEPLAYED:
+					params.add(pd.getTimeplayed());
+					break;
+				case RANK:
+					params.add(pd.getRank());
+					break;
+				case BADGES:
+					params.add(pd.getBadgesAsString());
+					break;
+				case LEVEL:
+					params.add(pd.getLevel());
+					break;
+				case LANGUAGE:
+					params.add(String.valueOf(pd.getLanguage()));
+					break;
+				}
+			}
+			params.add(pd.getUUID());
+			List<Object[]> group = rows.get(mask);
+			if (group == null) {
+				group = new ArrayList<Object[]>();
+				rows.put(mask, group);
+			}
+			group.add(params.toArray());
+		}
+		for (final Entry<Integer, List<Object[]>> entry : rows.entrySet()) {
+			final String sql = getUpdateSql(entry.getKey());
+			for (final Object[] params : entry.getValue()) {
 				SH.getManager()
 						.getMysqlManager()
-						.query("UPDATE players SET " + "`name` = \""
-								+ pd.getName()
-								+ "\", "
-								+ "`ips` = \""
-								+ pd.getIpsAsString()
-								+ "\", "
-								+ "`gamemode` = "
-								+ pd.getGamemode()
-								+ ", "
-								+ "`lastlogin` = \""
-								+ SH.getManager().getMysqlManager()
-										.getDate(pd.getLastlogin()) + "\", "
-								+ "`timeplayed` = " + pd.getTimeplayed() + ", "
-								+ "`bank` = " + pd.getMoney() + ", "
-								+ "`rank` = " + pd.getRank() + ", "
-								+ "`badges` = \"" + pd.getBadgesAsString()
-								+ "\", " + "`level` = " + pd.getLevel() + ", "
-								+ "`language` = \"" + pd.getLanguage()
-								+ "\" WHERE `uuid` = \"" + pd.getUUID() + "\";");
-			} catch (final SQLException e) {
-				e.printStackTrace();
+						.enqueue(
+								"players:" + params[params.length - 1] + ":"
+										+ entry.getKey(), sql, params);
+			}
+		}
+	}
+
+	/**
+	 * Writes the indexes to a warm start file for the next start. Must run
+	 * on shutdown, after the last save.
+	 * 
+	 * @param file
+	 *            the file
+	 * @return true, if the file was written
+	 */
+	boolean saveWarmStart(final File file) {
+		return new WarmStart(names, ips, leaderboards).save(file);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.IPlayerDataManager#update(java
+	 * .lang.String,
+	 * info.nordbyen.survivalheaven.api.playerdata.PlayerDataUpdate)
+	 */
+	@Override
+	public void update(final String uuid, final PlayerDataUpdate update) {
+		final Runnable task = new Runnable() {
+
+			@Override
+			public void run() {
+				final IPlayerData pd = getPlayerData(uuid);
+				if (pd != null) {
+					update.update(pd);
+				}
 			}
+		};
+		if (Bukkit.isPrimaryThread()) {
+			task.run();
+			return;
+		}
+		try {
+			Bukkit.getScheduler().runTask(SH.getPlugin(), task);
+		} catch (final RuntimeException e) {
+			/* Disabling; the scheduler takes no new tasks */
+			task.run();
 		}
 	}
 }
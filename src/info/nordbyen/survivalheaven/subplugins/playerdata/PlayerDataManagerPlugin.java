@@ -30,7 +30,10 @@ import info.nordbyen.survivalheaven.SH;
 import info.nordbyen.survivalheaven.api.subplugin.SubPlugin;
 import info.nordbyen.survivalheaven.subplugins.playerdata.listenere.PlayerDatalistener;
 
+import java.io.File;
+
 import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitRunnable;
 
 /**
@@ -40,6 +43,12 @@ public class PlayerDataManagerPlugin extends SubPlugin {
 
 	/**
 	 * The Class PlayerDataTask.
+	 * 
+	 * Runs on the server thread, but only copies the changed columns of the
+	 * players that changed into the write-behind queue; the database writes
+	 * happen on its next flush. The open sessions are saved first, so their
+	 * rows and the playtime go out together, then idle players are evicted
+	 * from the cache, see {@link PlayerDataManager#evict()}.
 	 */
 	private class PlayerDataTask extends BukkitRunnable {
 
@@ -50,13 +59,45 @@ public class PlayerDataManagerPlugin extends SubPlugin {
 		 */
 		@Override
 		public void run() {
-			SH.getManager().getPlayerDataManager().saveDataToDatabase();
+			final PlayerDataManager manager = (PlayerDataManager) SH
+					.getManager().getPlayerDataManager();
+			sessions.saveAll();
+			manager.evict();
+			manager.saveDataToDatabase();
 		}
 	}
 
+	/**
+	 * The Class SessionTask.
+	 * 
+	 * Checkpoints the open sessions in memory, see {@link SessionTracker}.
+	 */
+	private class SessionTask extends BukkitRunnable {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			sessions.checkpointAll();
+		}
+	}
+
+	/** The warm start file, see {@link WarmStart}. */
+	private static final File WARM_START_FILE = new File(
+			SH.PATH_TO_CONFIG_FOLDER + "playerdata.snapshot");
+
+	/** The ticks between session checkpoints. */
+	private static final long SESSION_CHECKPOINT_INTERVAL = 20 * 5L;
+
 	/** The scheduler_running. */
 	private boolean scheduler_running = false;
 
+	/** The sessions. */
+	private final SessionTracker sessions = new SessionTracker();
+
 	/**
 	 * Instantiates a new player data manager plugin.
 	 * 
@@ -74,7 +115,11 @@ public class PlayerDataManagerPlugin extends SubPlugin {
 	 */
 	@Override
 	public void disable() {
-		SH.getManager().getPlayerDataManager().saveDataToDatabase();
+		sessions.endAll();
+		final PlayerDataManager manager = (PlayerDataManager) SH.getManager()
+				.getPlayerDataManager();
+		manager.saveDataToDatabase();
+		manager.saveWarmStart(WARM_START_FILE);
 	}
 
 	/*
@@ -84,13 +129,21 @@ public class PlayerDataManagerPlugin extends SubPlugin {
 	 */
 	@Override
 	public void enable() {
-		((PlayerDataManager) SH.getManager().getPlayerDataManager())
-				.createTable();
-		((PlayerDataManager) SH.getManager().getPlayerDataManager())
-				.updateDataFromDatabase();
+		final PlayerDataManager manager = (PlayerDataManager) SH.getManager()
+				.getPlayerDataManager();
+		if (!manager.loadWarmStart(WARM_START_FILE)) {
+			manager.loadNames();
+			manager.loadIps();
+			manager.loadLeaderboards();
+		}
+		for (final Player p : Bukkit.getOnlinePlayers()) {
+			SH.getManager().getPlayerDataManager()
+					.getPlayerData(p.getUniqueId().toString());
+			sessions.start(p.getUniqueId().toString());
+		}
 		startScheduler();
-		Bukkit.getPluginManager().registerEvents(new PlayerDatalistener(),
-				getPlugin());
+		Bukkit.getPluginManager().registerEvents(
+				new PlayerDatalistener(sessions), getPlugin());
 	}
 
 	/**
@@ -104,6 +157,11 @@ public class PlayerDataManagerPlugin extends SubPlugin {
 		Bukkit.getServer()
 				.getScheduler()
 				.scheduleSyncRepeatingTask(getPlugin(), new PlayerDataTask(),
-						20 * 60 * 5L, 20 * 60 * 5L);
+						20 * 60L, 20 * 60L);
+		Bukkit.getServer()
+				.getScheduler()
+				.scheduleSyncRepeatingTask(getPlugin(), new SessionTask(),
+						SESSION_CHECKPOINT_INTERVAL,
+						SESSION_CHECKPOINT_INTERVAL);
 	}
 }
@@ -0,0 +1,251 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.playerdata;
+
+import info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot;
+import info.nordbyen.survivalheaven.api.util.Translator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.bukkit.Location;
+
+/**
+ * The Class PlayerSnapshot.
+ * 
+ * Every field is final and copied from the player when the snapshot is
+ * taken; dates and the location are copied again on the way out, since
+ * those types are mutable.
+ */
+final class PlayerSnapshot implements IPlayerSnapshot {
+
+	/** The id. */
+	private final int id;
+	/** The ips. */
+	private final List<String> ips;
+	/** The name. */
+	private final String name;
+	/** The uuid. */
+	private final String uuid;
+	/** The firstlogin in milliseconds. */
+	private final long firstlogin;
+	/** The lastlogin in milliseconds. */
+	private final long lastlogin;
+	/** The timeplayed. */
+	private final long timeplayed;
+	/** The rank. */
+	private final int rank;
+	/** The badges. */
+	private final List<Integer> badges;
+	/** The gamemode. */
+	private final int gamemode;
+	/** The lastlocation. */
+	private final Location lastlocation;
+	/** The language. */
+	private final Translator language;
+	/** The level. */
+	private final int level;
+	/** The money. */
+	private final long money;
+
+	/**
+	 * Takes a snapshot of a player. Must run on the thread that writes it.
+	 * 
+	 * @param pd
+	 *            the pd
+	 */
+	PlayerSnapshot(final PlayerData pd) {
+		id = pd.getId();
+		ips = Collections.unmodifiableList(new ArrayList<String>(pd.getIps()));
+		name = pd.getName();
+		uuid = pd.getUUID();
+		firstlogin = pd.getFirstlogin().getTime();
+		lastlogin = pd.getLastlogin().getTime();
+		timeplayed = pd.getTimeplayed();
+		rank = pd.getRank();
+		badges = Collections.unmodifiableList(new ArrayList<Integer>(pd
+				.getBadges()));
+		gamemode = pd.getGamemode();
+		lastlocation = (pd.getLastlocation() == null) ? null : pd
+				.getLastlocation().clone();
+		language = pd.getLanguage();
+		level = pd.getLevel();
+		money = pd.getMoney();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot#getBadges()
+	 */
+	@Override
+	public List<Integer> getBadges() {
+		return badges;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot#getFirstlogin
+	 * ()
+	 */
+	@Override
+	public Date getFirstlogin() {
+		return new Date(firstlogin);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot#getGamemode()
+	 */
+	@Override
+	public int getGamemode() {
+		return gamemode;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot#getId()
+	 */
+	@Override
+	public int getId() {
+		return id;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot#getIps()
+	 */
+	@Override
+	public List<String> getIps() {
+		return ips;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot#getLanguage()
+	 */
+	@Override
+	public Translator getLanguage() {
+		return language;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot#getLastlocation
+	 * ()
+	 */
+	@Override
+	public Location getLastlocation() {
+		return (lastlocation == null) ? null : lastlocation.clone();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot#getLastlogin()
+	 */
+	@Override
+	public Date getLastlogin() {
+		return new Date(lastlogin);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot#getLevel()
+	 */
+	@Override
+	public int getLevel() {
+		return level;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot#getMoney()
+	 */
+	@Override
+	public long getMoney() {
+		return money;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot#getName()
+	 */
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot#getRank()
+	 */
+	@Override
+	public int getRank() {
+		return rank;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot#getTimeplayed
+	 * ()
+	 */
+	@Override
+	public long getTimeplayed() {
+		return timeplayed;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot#getUUID()
+	 */
+	@Override
+	public String getUUID() {
+		return uuid;
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.playerdata;
+
+import info.nordbyen.survivalheaven.SH;
+import info.nordbyen.survivalheaven.api.playerdata.IPlayerData;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Tracks the play sessions of online players. Every checkpoint adds the time
+ * since the last one to the player's playtime in memory. The session rows in
+ * the {@code sessions} table are only written when a session ends and by
+ * {@link #saveAll()}, which runs right before the players are saved, so the
+ * rows and the playtime are queued together. A crash loses at most the time
+ * since that save, and the session row then ends where it was saved. Must be
+ * used from the server thread.
+ */
+public final class SessionTracker {
+
+	/**
+	 * The Class Session.
+	 */
+	private static final class Session {
+
+		/** The uuid. */
+		private final String uuid;
+
+		/** The joined. */
+		private final long joined;
+
+		/** The checkpoint. */
+		private long checkpoint;
+
+		/**
+		 * Instantiates a new session.
+		 * 
+		 * @param uuid
+		 *            the uuid
+		 * @param joined
+		 *            the joined
+		 */
+		private Session(final String uuid, final long joined) {
+			this.uuid = uuid;
+			this.joined = joined;
+			checkpoint = joined;
+		}
+	}
+
+	/** The open sessions, by uuid. */
+	private final HashMap<String, Session> sessions = new HashMap<String, Session>();
+
+	/**
+	 * Adds the time since the last checkpoint to a player's playtime.
+	 * 
+	 * @param session
+	 *            the session
+	 * @param now
+	 *            the now
+	 */
+	private void checkpoint(final Session session, final long now) {
+		final IPlayerData pd = SH.getManager().getPlayerDataManager()
+				.getPlayerData(session.uuid);
+		if (pd != null) {
+			pd.setTimeplayed(pd.getTimeplayed() + (now - session.checkpoint));
+		}
+		session.checkpoint = now;
+	}
+
+	/**
+	 * Queues the session row, up to the last checkpoint.
+	 * 
+	 * @param session
+	 *            the session
+	 */
+	private void save(final Session session) {
+		SH.getManager()
+				.getMysqlManager()
+				.enqueue(
+						"sessions:" + session.uuid + ":" + session.joined,
+						"INSERT INTO `sessions` ( `uuid`, `joined`, `quit`, "
+								+ "`duration` ) VALUES ( ?, ?, ?, ? ) "
+								+ "ON DUPLICATE KEY UPDATE "
+								+ "`quit` = VALUES(`quit`), "
+								+ "`duration` = VALUES(`duration`)",
+						session.uuid, session.joined, session.checkpoint,
+						session.checkpoint - session.joined);
+	}
+
+	/**
+	 * Checkpoints every open session and queues its row.
+	 */
+	void saveAll() {
+		final long now = System.currentTimeMillis();
+		for (final Session session : sessions.values()) {
+			checkpoint(session, now);
+			save(session);
+		}
+	}
+
+	/**
+	 * Checkpoints every open session.
+	 */
+	void checkpointAll() {
+		final long now = System.currentTimeMillis();
+		for (final Session session : sessions.values()) {
+			checkpoint(session, now);
+		}
+	}
+
+	/**
+	 * Ends a player's session.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 */
+	public void end(final String uuid) {
+		final Session session = sessions.remove(uuid);
+		if (session != null) {
+			checkpoint(session, System.currentTimeMillis());
+			save(session);
+		}
+	}
+
+	/**
+	 * Ends every open session.
+	 */
+	void endAll() {
+		for (final String uuid : new ArrayList<String>(sessions.keySet())) {
+			end(uuid);
+		}
+	}
+
+	/**
+	 * Starts a player's session, unless one is already open.
+	 * 
+	 * @param uuid
+	 *            the uuid
+	 */
+	public void start(final String uuid) {
+		if (!sessions.containsKey(uuid)) {
+			sessions.put(uuid, new Session(uuid, System.currentTimeMillis()));
+		}
+	}
+}
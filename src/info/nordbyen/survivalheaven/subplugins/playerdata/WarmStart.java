@@ -0,0 +1,584 @@
+/**
+ * This file is part of survivalheaven.org, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) SurvivalHeaven.org <http://www.survivalheaven.org>
+ * Copyright (c) NordByen.info <http://www.nordbyen.info>
+ * Copyright (c) l0lkj.info <http://www.l0lkj.info>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package info.nordbyen.survivalheaven.subplugins.playerdata;
+
+import info.nordbyen.survivalheaven.SH;
+import info.nordbyen.survivalheaven.api.mysql.IMysqlManager;
+import info.nordbyen.survivalheaven.api.mysql.IWriteQueueStats;
+import info.nordbyen.survivalheaven.api.mysql.RowHandler;
+import info.nordbyen.survivalheaven.api.playerdata.LeaderboardType;
+import info.nordbyen.survivalheaven.api.util.IpAddress;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A binary copy of the player indexes, written on a clean shutdown so the
+ * next start does not have to read and parse the players, name_history and
+ * player_ips tables again.
+ * 
+ * The file is only written once every write has reached the database and
+ * the indexes agree with it. It records the highest player and name history
+ * ids, and the count and stat sums of the players up to that id. On load the
+ * file is memory mapped and checked against its CRC and those numbers. Only
+ * rows added since are read from the database. Any mismatch falls back to a
+ * full load. The file is deleted once read, so a crash never reuses it.
+ */
+final class WarmStart {
+
+	/**
+	 * The numbers the database must still agree with.
+	 */
+	private static final class Header {
+
+		/** When the file was written. */
+		private long created;
+		/** The highest player id. */
+		private long playersMaxId;
+		/** The number of players. */
+		private long players;
+		/** The sum of the money. */
+		private long money;
+		/** The sum of the time played. */
+		private long timeplayed;
+		/** The sum of the levels. */
+		private long level;
+		/** The highest name history id. */
+		private long historyMaxId;
+		/** The number of name history rows. */
+		private long history;
+		/** The number of player addresses. */
+		private long ips;
+	}
+
+	/** The magic number, "SHWS". */
+	private static final int MAGIC = 0x53485753;
+	/** The file format version. */
+	private static final int VERSION = 1;
+	/** The charset of the strings. */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Computes the CRC of a buffer up to its limit, leaving its position
+	 * alone.
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 * @return the crc
+	 */
+	private static long crc(final ByteBuffer buffer) {
+		final CRC32 crc = new CRC32();
+		final ByteBuffer copy = buffer.duplicate();
+		final byte[] chunk = new byte[64 * 1024];
+		while (copy.hasRemaining()) {
+			final int n = Math.min(chunk.length, copy.remaining());
+			copy.get(chunk, 0, n);
+			crc.update(chunk, 0, n);
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Runs a query returning one row of numbers.
+	 * 
+	 * @param sql
+	 *            the sql
+	 * @param params
+	 *            the params
+	 * @return the numbers
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	private static long[] queryNumbers(final String sql,
+			final Object... params) throws SQLException {
+		final ResultSet rs = SH.getManager().getMysqlManager()
+				.select(sql, params);
+		if ((rs == null) || !rs.next())
+			throw new SQLException("No result from " + sql);
+		final long[] numbers = new long[rs.getMetaData().getColumnCount()];
+		for (int i = 0; i < numbers.length; i++) {
+			numbers[i] = rs.getLong(i + 1);
+		}
+		return numbers;
+	}
+
+	/**
+	 * Reads a string.
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 * @return the string
+	 */
+	private static String readString(final ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Writes a string.
+	 * 
+	 * @param out
+	 *            the out
+	 * @param s
+	 *            the s
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static void writeString(final DataOutputStream out, final String s)
+			throws IOException {
+		final byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/** The names. */
+	private final NameIndex names;
+	/** The ips. */
+	private final IpIndex ips;
+	/** The leaderboards. */
+	private final Map<LeaderboardType, Leaderboard> leaderboards;
+
+	/**
+	 * Instantiates a new warm start.
+	 * 
+	 * @param names
+	 *            the names
+	 * @param ips
+	 *            the ips
+	 * @param leaderboards
+	 *            the leaderboards
+	 */
+	WarmStart(final NameIndex names, final IpIndex ips,
+			final Map<LeaderboardType, Leaderboard> leaderboards) {
+		this.names = names;
+		this.ips = ips;
+		this.leaderboards = leaderboards;
+	}
+
+	/**
+	 * Empties the indexes after a failed load.
+	 */
+	private void clear() {
+		names.clear();
+		ips.clear();
+		for (final Leaderboard leaderboard : leaderboards.values()) {
+			leaderboard.clear();
+		}
+	}
+
+	/**
+	 * Fills the indexes from the file, then adds the rows the database got
+	 * since it was written.
+	 * 
+	 * @param file
+	 *            the file
+	 * @return true, if the indexes were loaded; false if they are empty and
+	 *         must be loaded from the database
+	 */
+	boolean load(final File file) {
+		if (!file.exists())
+			return false;
+		try {
+			final ByteBuffer buffer = map(file);
+			if (buffer == null) {
+				System.out.println("[SurvivalHeaven] " + file
+						+ " er skadet, laster spillere fra databasen");
+				return false;
+			}
+			final Header header = readHeader(buffer);
+			if (!matches(header)) {
+				System.out.println("[SurvivalHeaven] " + file
+						+ " er utdatert, laster spillere fra databasen");
+				return false;
+			}
+			clear();
+			readIndexes(buffer);
+			final int added = loadAdded(header);
+			System.out.println("[SurvivalHeaven] Lastet "
+					+ header.players + " spillere fra " + file + " og "
+					+ added + " nye rader fra databasen");
+			return true;
+		} catch (final IOException e) {
+			e.printStackTrace();
+		} catch (final SQLException e) {
+			e.printStackTrace();
+		} catch (final BufferUnderflowException e) {
+			e.printStackTrace();
+		} finally {
+			if (!file.delete()) {
+				System.out.println("[SurvivalHeaven] Kunne ikke slette "
+						+ file);
+			}
+		}
+		clear();
+		return false;
+	}
+
+	/**
+	 * Reads the rows added since the file was written.
+	 * 
+	 * @param header
+	 *            the header
+	 * @return the number of rows
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	private int loadAdded(final Header header) throws SQLException {
+		final IMysqlManager mysql = SH.getManager().getMysqlManager();
+		int rows = mysql.stream(
+				"SELECT `uuid`, `name`, `bank`, `timeplayed`, `level` "
+						+ "FROM `players` WHERE `id` > ? "
+						+ "ORDER BY `lastlogin`", new RowHandler() {
+
+					@Override
+					public void handleRow(final ResultSet row)
+							throws SQLException {
+						final String uuid = row.getString(1);
+						names.setName(uuid, null, row.getString(2));
+						leaderboards.get(LeaderboardType.MONEY).set(uuid,
+								row.getLong(3));
+						leaderboards.get(LeaderboardType.TIMEPLAYED).set(uuid,
+								row.getLong(4));
+						leaderboards.get(LeaderboardType.LEVEL).set(uuid,
+								row.getLong(5));
+					}
+				}, header.playersMaxId);
+		rows += mysql.stream("SELECT `uuid`, `name` FROM `name_history` "
+				+ "WHERE `id` > ? ORDER BY `since`", new RowHandler() {
+
+			@Override
+			public void handleRow(final ResultSet row) throws SQLException {
+				names.addHistory(row.getString(1), row.getString(2));
+			}
+		}, header.historyMaxId);
+		rows += mysql.stream("SELECT `ip_high`, `ip_low`, `playeruuid` "
+				+ "FROM `player_ips` WHERE `first_seen` > ?",
+				new RowHandler() {
+
+					@Override
+					public void handleRow(final ResultSet row)
+							throws SQLException {
+						ips.add(new IpAddress(row.getLong(1), row.getLong(2)),
+								row.getString(3));
+					}
+				}, header.created);
+		return rows;
+	}
+
+	/**
+	 * Maps the file and checks its CRC.
+	 * 
+	 * @param file
+	 *            the file
+	 * @return the contents without the CRC, or null if the file is damaged
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private ByteBuffer map(final File file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final long size = raf.length();
+			if ((size < 16) || (size > Integer.MAX_VALUE))
+				return null;
+			final ByteBuffer mapped = raf.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, 0, size);
+			final long crc = mapped.getLong((int) size - 8);
+			mapped.limit((int) size - 8);
+			if ((crc(mapped) != crc) || (mapped.getInt() != MAGIC)
+					|| (mapped.getInt() != VERSION))
+				return null;
+			return mapped;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Checks that the database still agrees with the file up to the ids it
+	 * recorded.
+	 * 
+	 * @param header
+	 *            the header
+	 * @return true, if nothing the file holds has changed
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	private boolean matches(final Header header) throws SQLException {
+		final long[] players = queryNumbers(
+				"SELECT COUNT(*), COALESCE(SUM(`bank`), 0), "
+						+ "COALESCE(SUM(`timeplayed`), 0), "
+						+ "COALESCE(SUM(`level`), 0) FROM `players` "
+						+ "WHERE `id` <= ?", header.playersMaxId);
+		final long[] history = queryNumbers(
+				"SELECT COUNT(*) FROM `name_history` WHERE `id` <= ?",
+				header.historyMaxId);
+		final long[] addresses = queryNumbers(
+				"SELECT COUNT(*) FROM `player_ips` WHERE `first_seen` <= ?",
+				header.created);
+		return (players[0] == header.players)
+				&& (players[1] == header.money)
+				&& (players[2] == header.timeplayed)
+				&& (players[3] == header.level)
+				&& (history[0] == header.history)
+				&& (addresses[0] == header.ips);
+	}
+
+	/**
+	 * Reads the header.
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 * @return the header
+	 */
+	private Header readHeader(final ByteBuffer buffer) {
+		final Header header = new Header();
+		header.created = buffer.getLong();
+		header.playersMaxId = buffer.getLong();
+		header.players = buffer.getLong();
+		header.money = buffer.getLong();
+		header.timeplayed = buffer.getLong();
+		header.level = buffer.getLong();
+		header.historyMaxId = buffer.getLong();
+		header.history = buffer.getLong();
+		header.ips = buffer.getLong();
+		return header;
+	}
+
+	/**
+	 * Fills the indexes from the file.
+	 * 
+	 * @param buffer
+	 *            the buffer, positioned after the header
+	 */
+	private void readIndexes(final ByteBuffer buffer) {
+		for (int n = buffer.getInt(); n > 0; n--) {
+			final String uuid = readString(buffer);
+			leaderboards.get(LeaderboardType.MONEY).set(uuid, buffer.getLong());
+			leaderboards.get(LeaderboardType.TIMEPLAYED).set(uuid,
+					buffer.getLong());
+			leaderboards.get(LeaderboardType.LEVEL).set(uuid, buffer.getLong());
+		}
+		for (int n = buffer.getInt(); n > 0; n--) {
+			final String uuid = readString(buffer);
+			names.setName(uuid, null, readString(buffer));
+		}
+		for (int n = buffer.getInt(); n > 0; n--) {
+			final String uuid = readString(buffer);
+			for (int k = buffer.getInt(); k > 0; k--) {
+				names.addHistory(uuid, readString(buffer));
+			}
+		}
+		for (int n = buffer.getInt(); n > 0; n--) {
+			final IpAddress address = new IpAddress(buffer.getLong(),
+					buffer.getLong());
+			for (int k = buffer.getInt(); k > 0; k--) {
+				ips.add(address, readString(buffer));
+			}
+		}
+	}
+
+	/**
+	 * Writes the file, unless a write is still on its way to the database or
+	 * the indexes do not agree with it. Must run after the last save.
+	 * 
+	 * @param file
+	 *            the file
+	 * @return true, if the file was written
+	 */
+	boolean save(final File file) {
+		final IMysqlManager mysql = SH.getManager().getMysqlManager();
+		mysql.flushWrites();
+		final IWriteQueueStats queue = mysql.getWriteQueueStats();
+		if ((queue == null) || !queue.isDatabaseAvailable()
+				|| (queue.getJournaledWrites() > 0)
+				|| (queue.getPendingWrites() > 0))
+			return false;
+		final Map<String, Long> money = leaderboards
+				.get(LeaderboardType.MONEY).copy();
+		final Map<String, Long> timeplayed = leaderboards.get(
+				LeaderboardType.TIMEPLAYED).copy();
+		final Map<String, Long> level = leaderboards
+				.get(LeaderboardType.LEVEL).copy();
+		if (!money.keySet().equals(timeplayed.keySet())
+				|| !money.keySet().equals(level.keySet()))
+			return false;
+		final Map<IpAddress, List<String>> addresses = ips.copy();
+		final Header header = new Header();
+		header.created = System.currentTimeMillis();
+		for (final Entry<String, Long> entry : money.entrySet()) {
+			header.money += entry.getValue();
+			header.timeplayed += timeplayed.get(entry.getKey());
+			header.level += level.get(entry.getKey());
+		}
+		for (final List<String> uuids : addresses.values()) {
+			header.ips += uuids.size();
+		}
+		File tmp = null;
+		try {
+			final long[] players = queryNumbers("SELECT COALESCE(MAX(`id`), 0), "
+					+ "COUNT(*), COALESCE(SUM(`bank`), 0), "
+					+ "COALESCE(SUM(`timeplayed`), 0), "
+					+ "COALESCE(SUM(`level`), 0) FROM `players`");
+			final long[] history = queryNumbers("SELECT COALESCE(MAX(`id`), 0), "
+					+ "COUNT(*) FROM `name_history`");
+			final long[] stored = queryNumbers(
+					"SELECT COUNT(*) FROM `player_ips` WHERE `first_seen` <= ?",
+					header.created);
+			if ((players[1] != money.size()) || (players[2] != header.money)
+					|| (players[3] != header.timeplayed)
+					|| (players[4] != header.level) || (stored[0] != header.ips)) {
+				System.out.println("[SurvivalHeaven] Spillerdataene stemmer "
+						+ "ikke med databasen, skriver ikke " + file);
+				return false;
+			}
+			header.playersMaxId = players[0];
+			header.players = players[1];
+			header.historyMaxId = history[0];
+			header.history = history[1];
+			tmp = new File(file.getPath() + ".tmp");
+			final CheckedOutputStream checked = new CheckedOutputStream(
+					new FileOutputStream(tmp), new CRC32());
+			final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(checked, 64 * 1024));
+			try {
+				writeHeader(out, header);
+				writeIndexes(out, money, timeplayed, level, addresses);
+				out.flush();
+				out.writeLong(checked.getChecksum().getValue());
+			} finally {
+				out.close();
+			}
+			if (file.exists() && !file.delete())
+				throw new IOException("Could not replace " + file);
+			if (!tmp.renameTo(file))
+				throw new IOException("Could not rename " + tmp);
+			return true;
+		} catch (final SQLException e) {
+			e.printStackTrace();
+		} catch (final IOException e) {
+			e.printStackTrace();
+		}
+		if (tmp != null) {
+			tmp.delete();
+		}
+		return false;
+	}
+
+	/**
+	 * Writes the header.
+	 * 
+	 * @param out
+	 *            the out
+	 * @param header
+	 *            the header
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void writeHeader(final DataOutputStream out, final Header header)
+			throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(header.created);
+		out.writeLong(header.playersMaxId);
+		out.writeLong(header.players);
+		out.writeLong(header.money);
+		out.writeLong(header.timeplayed);
+		out.writeLong(header.level);
+		out.writeLong(header.historyMaxId);
+		out.writeLong(header.history);
+		out.writeLong(header.ips);
+	}
+
+	/**
+	 * Writes the indexes.
+	 * 
+	 * @param out
+	 *            the out
+	 * @param money
+	 *            the money
+	 * @param timeplayed
+	 *            the timeplayed
+	 * @param level
+	 *            the level
+	 * @param addresses
+	 *            the addresses
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void writeIndexes(final DataOutputStream out,
+			final Map<String, Long> money, final Map<String, Long> timeplayed,
+			final Map<String, Long> level,
+			final Map<IpAddress, List<String>> addresses) throws IOException {
+		out.writeInt(money.size());
+		for (final Entry<String, Long> entry : money.entrySet()) {
+			writeString(out, entry.getKey());
+			out.writeLong(entry.getValue());
+			out.writeLong(timeplayed.get(entry.getKey()));
+			out.writeLong(level.get(entry.getKey()));
+		}
+		final Map<String, String> current = names.copyNames();
+		out.writeInt(current.size());
+		for (final Entry<String, String> entry : current.entrySet()) {
+			writeString(out, entry.getKey());
+			writeString(out, entry.getValue());
+		}
+		final Map<String, List<String>> history = names.copyHistory();
+		out.writeInt(history.size());
+		for (final Entry<String, List<String>> entry : history.entrySet()) {
+			writeString(out, entry.getKey());
+			out.writeInt(entry.getValue().size());
+			for (final String name : entry.getValue()) {
+				writeString(out, name);
+			}
+		}
+		out.writeInt(addresses.size());
+		for (final Entry<IpAddress, List<String>> entry : addresses.entrySet()) {
+			out.writeLong(entry.getKey().getHigh());
+			out.writeLong(entry.getKey().getLow());
+			out.writeInt(entry.getValue().size());
+			for (final String uuid : entry.getValue()) {
+				writeString(out, uuid);
+			}
+		}
+	}
+}
@@ -30,9 +30,7 @@ import info.nordbyen.survivalheaven.SH;
 import info.nordbyen.survivalheaven.api.playerdata.IPlayerData;
 import info.nordbyen.survivalheaven.api.playerdata.warning.IWarningManager.IWarning;
 
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.Date;
 
 /**
@@ -77,19 +75,45 @@ public class Warning implements IWarning {
 		this.setter = setter;
 		this.message = message;
 		this.level = level;
-		final ResultSet rs = SH
+		final long key = SH
 				.getManager()
 				.getMysqlManager()
-				.query("INSERT INTO warnings ( date, playeruuid, setteruuid, message, level ) VALUES ( \""
-						+ SH.getManager().getMysqlManager().getDate(date)
-						+ "\", \""
-						+ player.getUUID()
-						+ "\", \""
-						+ (setter == null ? "NO" : setter.getUUID())
-						+ "\", \""
-						+ message + "\", `" + level.asInt() + "` );",
-						Statement.RETURN_GENERATED_KEYS); // TODO
-		id = rs.getInt("id");
+				.insertAndGetKey(
+						"INSERT INTO warnings ( date, playeruuid, setteruuid, message, level ) VALUES ( ?, ?, ?, ?, ? )",
+						date.getTime(),
+						player.getUUID(),
+						(setter == null ? "NO" : setter.getUUID()), message,
+						level.asInt());
+		if (key == -1)
+			throw new SQLException("Fikk ingen id for advarselen");
+		id = (int) key;
+	}
+
+	/**
+	 * Instantiates a warning that is already stored in the database.
+	 * 
+	 * @param date
+	 *            the date
+	 * @param player
+	 *            the player
+	 * @param setter
+	 *            the setter
+	 * @param message
+	 *            the message
+	 * @param level
+	 *            the level
+	 * @param id
+	 *            the id
+	 */
+	Warning(final Date date, final IPlayerData player,
+			final IPlayerData setter, final String message,
+			final Warning.Level level, final int id) {
+		this.date = date;
+		this.player = player;
+		this.setter = setter;
+		this.message = message;
+		this.level = level;
+		this.id = id;
 	}
 
 	/*
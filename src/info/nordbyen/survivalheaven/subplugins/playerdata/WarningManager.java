@@ -27,6 +27,7 @@
 package info.nordbyen.survivalheaven.subplugins.playerdata;
 
 import info.nordbyen.survivalheaven.SH;
+import info.nordbyen.survivalheaven.api.mysql.RowHandler;
 import info.nordbyen.survivalheaven.api.playerdata.IPlayerData;
 import info.nordbyen.survivalheaven.api.playerdata.warning.IWarningManager;
 import info.nordbyen.survivalheaven.api.playerdata.warning.IWarningManager.IWarning.Level;
@@ -38,7 +39,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -51,21 +54,39 @@ import org.bukkit.plugin.java.JavaPlugin;
 public class WarningManager implements IWarningManager {
 
 	/**
-	 * Creates the table.
-	 * 
-	 * @throws SQLException
-	 *             the SQL exception
+	 * A warning as read from the database, before its players are looked up.
 	 */
-	private static void createTable() throws SQLException {
-		SH.getManager()
-				.getMysqlManager()
-				.query("CREATE TABLE IF NOT EXISTS `warnings` ("
-						+ "`id` INT(11) NOT NULL AUTO_INCREMENT, "
-						+ "`playeruuid` VARCHAR(255) NOT NULL, "
-						+ "`setteruuid` VARCHAR(255) NOT NULL, "
-						+ "`message` VARCHAR(255) NOT NULL, "
-						+ "`date` VARCHAR(255) NOT NULL, `level` INT(11) NOT NULL, "
-						+ "PRIMARY KEY (`id`) );");
+	private static final class Row {
+
+		/** The date. */
+		private final Date date;
+		/** The player's uuid. */
+		private final String player;
+		/** The setter's uuid. */
+		private final String setter;
+		/** The message. */
+		private final String message;
+		/** The level. */
+		private final Level level;
+		/** The id. */
+		private final int id;
+
+		/**
+		 * Reads a row.
+		 * 
+		 * @param row
+		 *            the row
+		 * @throws SQLException
+		 *             the SQL exception
+		 */
+		private Row(final ResultSet row) throws SQLException {
+			date = new Date(row.getLong("date"));
+			player = row.getString("playeruuid");
+			setter = row.getString("setteruuid");
+			message = row.getString("message");
+			level = Level.getLevelFromInt(row.getInt("level"));
+			id = row.getInt("id");
+		}
 	}
 
 	/**
@@ -87,7 +108,6 @@ public class WarningManager implements IWarningManager {
 	@SurvivalHeavenEnable
 	private static void enable(final JavaPlugin plugin) {
 		try {
-			createTable();
 			loadFromMysql();
 		} catch (final SQLException e) {
 			Bukkit.getConsoleSender().sendMessage(
@@ -97,29 +117,52 @@ public class WarningManager implements IWarningManager {
 	}
 
 	/**
-	 * Load from mysql.
+	 * Load from mysql. The players are looked up once the rows are read, so
+	 * the connection is not held while they load.
 	 * 
 	 * @throws SQLException
 	 *             the SQL exception
 	 */
-	@SuppressWarnings("unused")
 	private static void loadFromMysql() throws SQLException {
-		final ResultSet rs = SH.getManager().getMysqlManager()
-				.query("SELECT * FROM warnings");
-		while (rs.next()) {
-			final int id = rs.getInt("id");
-			final String puuid = rs.getString("playeruuid");
-			final String suuid = rs.getString("setteruuid");
-			final String message = rs.getString("message");
-			final Date date = SH.getManager().getMysqlManager()
-					.getDate(rs.getString("date"));
-			final IWarning warning = new Warning(date, SH.getManager()
-					.getPlayerDataManager().getPlayerData(puuid), SH
-					.getManager().getPlayerDataManager().getPlayerData(suuid),
-					message, null);
+		final WarningManager manager = (WarningManager) SH.getManager()
+				.getWarningManager();
+		final List<Row> rows = new ArrayList<Row>();
+		SH.getManager().getMysqlManager()
+				.stream("SELECT * FROM warnings", new RowHandler() {
+
+					@Override
+					public void handleRow(final ResultSet row)
+							throws SQLException {
+						rows.add(new Row(row));
+					}
+				});
+		final Map<String, IPlayerData> players = new HashMap<String, IPlayerData>();
+		for (final Row row : rows) {
+			manager.warnings.add(new Warning(row.date, lookup(players,
+					row.player), lookup(players, row.setter), row.message,
+					row.level, row.id));
 		}
 	}
 
+	/**
+	 * Looks up a player, once per uuid.
+	 * 
+	 * @param players
+	 *            the players looked up so far
+	 * @param uuid
+	 *            the uuid
+	 * @return the player data, or null if there is no such player
+	 */
+	private static IPlayerData lookup(final Map<String, IPlayerData> players,
+			final String uuid) {
+		if (players.containsKey(uuid))
+			return players.get(uuid);
+		final IPlayerData pd = SH.getManager().getPlayerDataManager()
+				.getPlayerData(uuid);
+		players.put(uuid, pd);
+		return pd;
+	}
+
 	/** The warnings. */
 	private final List<IWarning> warnings = new ArrayList<IWarning>();
 
@@ -28,20 +28,40 @@ package info.nordbyen.survivalheaven.subplugins.playerdata.listenere;
 
 import info.nordbyen.survivalheaven.SH;
 import info.nordbyen.survivalheaven.api.playerdata.IPlayerData;
+import info.nordbyen.survivalheaven.subplugins.playerdata.SessionTracker;
 
 import java.util.Date;
 
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent.Result;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
 /**
  * The Class PlayerDatalistener.
+ * 
+ * Player data is loaded, or created for new players, during the async
+ * pre-login, so the join on the server thread only has to update it.
  */
 public class PlayerDatalistener implements Listener {
 
+	/** The sessions. */
+	private final SessionTracker sessions;
+
+	/**
+	 * Instantiates a new player data listener.
+	 * 
+	 * @param sessions
+	 *            the sessions
+	 */
+	public PlayerDatalistener(final SessionTracker sessions) {
+		this.sessions = sessions;
+	}
+
 	/**
 	 * On join.
 	 * 
@@ -60,6 +80,23 @@ public class PlayerDatalistener implements Listener {
 		} else {
 			SH.getManager().getPlayerDataManager().createPlayerData(p);
 		}
+		sessions.start(p.getUniqueId().toString());
+	}
+
+	/**
+	 * On pre login.
+	 * 
+	 * @param e
+	 *            the e
+	 */
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onPreLogin(final AsyncPlayerPreLoginEvent e) {
+		if (e.getLoginResult() != Result.ALLOWED)
+			return;
+		SH.getManager()
+				.getPlayerDataManager()
+				.preparePlayerData(e.getUniqueId().toString(), e.getName(),
+						e.getAddress().getHostAddress());
 	}
 
 	/**
@@ -77,10 +114,9 @@ public class PlayerDatalistener implements Listener {
 		if (pd != null) {
 			pd.setGamemode(p.getGameMode().getValue());
 			pd.setLastlocation(p.getLocation());
-			pd.setTimeplayed((pd.getTimeplayed() + (new Date()).getTime())
-					- pd.getLastlogin().getTime());
 		} else {
 			SH.getManager().getPlayerDataManager().createPlayerData(p);
 		}
+		sessions.end(p.getUniqueId().toString());
 	}
 }
@@ -27,7 +27,7 @@
 package info.nordbyen.survivalheaven.subplugins.rankmanager;
 
 import info.nordbyen.survivalheaven.SH;
-import info.nordbyen.survivalheaven.api.playerdata.IPlayerData;
+import info.nordbyen.survivalheaven.api.playerdata.IPlayerSnapshot;
 import info.nordbyen.survivalheaven.api.rankmanager.BadgeType;
 import info.nordbyen.survivalheaven.api.rankmanager.IRankManager;
 import info.nordbyen.survivalheaven.api.rankmanager.RankType;
@@ -37,6 +37,9 @@ import org.bukkit.entity.Player;
 
 /**
  * The Class RankManager.
+ * 
+ * Ranks and badges are read from player snapshots, since chat handlers call
+ * in from other threads.
  */
 public class RankManager implements IRankManager {
 
@@ -57,8 +60,8 @@ public class RankManager implements IRankManager {
 	 */
 	@Override
 	public BadgeType[] getBadges(final String uuid) {
-		final IPlayerData pd = SH.getManager().getPlayerDataManager()
-				.getPlayerData(uuid);
+		final IPlayerSnapshot pd = SH.getManager().getPlayerDataManager()
+				.getSnapshot(uuid);
 		final BadgeType[] badges = new BadgeType[pd.getBadges().size()];
 		int i = 0;
 		for (final int badge : pd.getBadges()) {
@@ -107,8 +110,8 @@ public class RankManager implements IRankManager {
 	 */
 	@Override
 	public RankType getRank(final String uuid) {
-		final IPlayerData pd = SH.getManager().getPlayerDataManager()
-				.getPlayerData(uuid);
+		final IPlayerSnapshot pd = SH.getManager().getPlayerDataManager()
+				.getSnapshot(uuid);
 		// if ( pd.isBanned() ) return RankType.getRankFromId( 0 ); TODO
 		final RankType rank = RankType.getRankFromId(pd.getRank());
 		return rank;
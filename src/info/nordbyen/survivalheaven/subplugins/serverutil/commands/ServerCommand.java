@@ -29,8 +29,11 @@ package info.nordbyen.survivalheaven.subplugins.serverutil.commands;
 import info.nordbyen.survivalheaven.SH;
 import info.nordbyen.survivalheaven.api.command.AbstractCommand;
 import info.nordbyen.survivalheaven.api.playerdata.IPlayerData;
+import info.nordbyen.survivalheaven.api.playerdata.LeaderboardEntry;
+import info.nordbyen.survivalheaven.api.playerdata.LeaderboardType;
 import info.nordbyen.survivalheaven.api.playerdata.note.INoteManager;
 import info.nordbyen.survivalheaven.api.playerdata.note.INoteManager.INote;
+import info.nordbyen.survivalheaven.api.util.IpAddress;
 
 import java.util.Arrays;
 import java.util.Date;
@@ -79,6 +82,45 @@ public class ServerCommand extends AbstractCommand {
 		register();
 	}
 
+	/**
+	 * Alts.
+	 * 
+	 * @param sender
+	 *            the sender
+	 * @param args
+	 *            the args
+	 * @return true, if successful
+	 */
+	private boolean alts(final CommandSender sender, final String[] args) {
+		if (args.length != 2) {
+			sender.sendMessage(FEIL_SYNTAX);
+			return true;
+		}
+		final List<IPlayerData> alts;
+		if (IpAddress.parse(args[1]) != null) {
+			alts = SH.getManager().getPlayerDataManager()
+					.getPlayerDataFromIp(args[1]);
+		} else {
+			final IPlayerData pd = findPlayer(sender, args[1]);
+			if (pd == null)
+				return true;
+			alts = SH.getManager().getPlayerDataManager().getAlts(pd);
+		}
+		if (alts.isEmpty()) {
+			sender.sendMessage(ChatColor.GRAY + "Fant ingen andre kontoer for "
+					+ args[1]);
+			return true;
+		}
+		sender.sendMessage(ChatColor.AQUA + "Kontoer knyttet til " + args[1]
+				+ ":");
+		for (final IPlayerData alt : alts) {
+			sender.sendMessage(ChatColor.GRAY + " - " + ChatColor.YELLOW
+					+ alt.getName() + ChatColor.GRAY + " ("
+					+ alt.getIpsAsString() + ")");
+		}
+		return true;
+	}
+
 	/**
 	 * Ban.
 	 * 
@@ -154,6 +196,24 @@ public class ServerCommand extends AbstractCommand {
 					+ " er ikke online, sker internt...");
 			pd = SH.getManager().getPlayerDataManager()
 					.getPlayerDataFromName(name);
+			if (pd == null) {
+				final List<IPlayerData> previous = SH.getManager()
+						.getPlayerDataManager()
+						.getPlayerDataFromPreviousName(name);
+				if (previous.size() == 1) {
+					pd = previous.get(0);
+					sender.sendMessage(ChatColor.GRAY + name
+							+ " har byttet navn til " + pd.getName());
+				} else if (previous.size() > 1) {
+					sender.sendMessage(ChatColor.RED + "Flere spillere har hett "
+							+ name + ":");
+					for (final IPlayerData other : previous) {
+						sender.sendMessage(ChatColor.GRAY + " - "
+								+ other.getName());
+					}
+					return null;
+				}
+			}
 			if (pd == null) {
 				sender.sendMessage(ChatColor.RED + "Fant ikke spiller " + name);
 				return null;
@@ -298,6 +358,11 @@ public class ServerCommand extends AbstractCommand {
 					+ " " + ChatColor.GRAY + "Ser notater");
 			sender.sendMessage(ChatColor.YELLOW + "/sh note del <id>" + " "
 					+ ChatColor.GRAY + "Fjerner et notat");
+			sender.sendMessage(ChatColor.YELLOW + "/sh alts <spiller|ip>"
+					+ " " + ChatColor.GRAY + "Viser andre kontoer fra samme ip");
+			sender.sendMessage(ChatColor.YELLOW
+					+ "/sh top <penger|tid|level> [side]" + " "
+					+ ChatColor.GRAY + "Viser topplisten");
 			sender.sendMessage(ChatColor.GOLD
 					+ "**********************************");
 			return true;
@@ -308,6 +373,10 @@ public class ServerCommand extends AbstractCommand {
 			return permban(sender, command, label, args);
 		else if (args[0].equalsIgnoreCase("warn"))
 			return warn(sender, command, label, args);
+		else if (args[0].equalsIgnoreCase("alts"))
+			return alts(sender, args);
+		else if (args[0].equalsIgnoreCase("top"))
+			return top(sender, args);
 		else if (args[0].equalsIgnoreCase("note")) {
 			try {
 				return note(sender, command, label, args);
@@ -322,6 +391,37 @@ public class ServerCommand extends AbstractCommand {
 		return true;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * info.nordbyen.survivalheaven.api.command.AbstractCommand#onTabComplete
+	 * (org.bukkit.command.CommandSender, org.bukkit.command.Command,
+	 * java.lang.String, java.lang.String[])
+	 */
+	@Override
+	public List<String> onTabComplete(final CommandSender sender,
+			final Command command, final String label, final String[] args) {
+		String prefix = null;
+		if ((args.length == 2)
+				&& (args[0].equalsIgnoreCase("ban")
+						|| args[0].equalsIgnoreCase("tempban")
+						|| args[0].equalsIgnoreCase("permban") || args[0]
+							.equalsIgnoreCase("alts"))) {
+			prefix = args[1];
+		} else if ((args.length == 3)
+				&& (args[0].equalsIgnoreCase("note") || args[0]
+						.equalsIgnoreCase("warn"))
+				&& (args[1].equalsIgnoreCase("add") || args[1]
+						.equalsIgnoreCase("see"))) {
+			prefix = args[2];
+		}
+		if ((prefix == null) || !isAuthorized(sender, "sh.server"))
+			return null;
+		return SH.getManager().getPlayerDataManager()
+				.getNamesStartingWith(prefix, 50);
+	}
+
 	/**
 	 * Permban.
 	 * 
@@ -341,6 +441,64 @@ public class ServerCommand extends AbstractCommand {
 		return true;
 	}
 
+	/**
+	 * Top.
+	 * 
+	 * @param sender
+	 *            the sender
+	 * @param args
+	 *            the args
+	 * @return true, if successful
+	 */
+	private boolean top(final CommandSender sender, final String[] args) {
+		if ((args.length < 2) || (args.length > 3)) {
+			sender.sendMessage(FEIL_SYNTAX);
+			return true;
+		}
+		final LeaderboardType type;
+		if (args[1].equalsIgnoreCase("penger")) {
+			type = LeaderboardType.MONEY;
+		} else if (args[1].equalsIgnoreCase("tid")) {
+			type = LeaderboardType.TIMEPLAYED;
+		} else if (args[1].equalsIgnoreCase("level")) {
+			type = LeaderboardType.LEVEL;
+		} else {
+			sender.sendMessage(FEIL_SYNTAX);
+			return true;
+		}
+		int page = 1;
+		if (args.length == 3) {
+			try {
+				page = Integer.parseInt(args[2]);
+			} catch (final Exception e) {
+				sender.sendMessage(ChatColor.RED + args[2] + " m vre et tall");
+				return true;
+			}
+			if (page < 1) {
+				sender.sendMessage(ChatColor.RED + "Feil med tallet " + page);
+				return true;
+			}
+		}
+		final List<LeaderboardEntry> entries = SH.getManager()
+				.getPlayerDataManager()
+				.getLeaderboard(type, (page - 1) * 10, 10);
+		if (entries.isEmpty()) {
+			sender.sendMessage(ChatColor.GRAY + "Side " + page + " er tom");
+			return true;
+		}
+		sender.sendMessage(ChatColor.AQUA + "Toppliste for " + args[1]
+				+ ", side " + page + ":");
+		for (final LeaderboardEntry entry : entries) {
+			final String value = (type == LeaderboardType.TIMEPLAYED) ? (entry
+					.getValue() / (1000L * 60 * 60)) + " timer" : String
+					.valueOf(entry.getValue());
+			sender.sendMessage(ChatColor.GRAY + "#" + entry.getRank() + " "
+					+ ChatColor.YELLOW + entry.getName() + ChatColor.GRAY
+					+ " - " + value);
+		}
+		return true;
+	}
+
 	/**
 	 * Warn.
 	 * 